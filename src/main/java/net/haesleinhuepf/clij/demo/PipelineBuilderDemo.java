@@ -0,0 +1,43 @@
+package net.haesleinhuepf.clij.demo;
+
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import ij.IJ;
+import ij.ImagePlus;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.macro.CLIJPipeline;
+
+/**
+ * PipelineBuilderDemo
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class PipelineBuilderDemo {
+    public static void main(String... args) {
+        ImagePlus imp = IJ.openImage("src/main/resources/droso_crop.tif");
+
+        CLIJ clij = CLIJ.getInstance();
+
+        // conversion
+        ClearCLBuffer input = clij.push(imp);
+
+        // no temporary buffers to manage; scaling and thresholding run fused in one kernel
+        ClearCLBuffer output = CLIJPipeline.of(input)
+                .blurFast(2, 2, 2)
+                .multiplyScalar(2)
+                .threshold(100)
+                .erodeSphere()
+                .dilateSphere()
+                .mask(input)
+                .run();
+
+        // show results
+        clij.show(input, "original");
+        clij.show(output, "masked");
+
+        input.close();
+        output.close();
+    }
+}
@@ -9,6 +9,7 @@ import ij.plugin.filter.PlugInFilter;
 import ij.plugin.frame.Recorder;
 import ij.process.ImageProcessor;
 import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
 import net.haesleinhuepf.clij.macro.documentation.HTMLDocumentationTemplate;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import net.haesleinhuepf.clij.utilities.CLIJUtilities;
@@ -40,6 +41,20 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
         this.args = args;
     }
 
+    // only parsed if the plugin isn't known to the CLIJMacroPluginService, e.g. if it's used from Java
+    private CLIJMacroPluginSignature signature = null;
+    private boolean isDestination(int index) {
+        CLIJMacroPluginService pluginService = CLIJHandler.getInstance().getPluginService();
+        CLIJMacroPluginSignature signature = pluginService == null ? null : pluginService.getCLIJMacroPluginSignature(getName());
+        if (signature == null) {
+            if (this.signature == null) {
+                this.signature = CLIJMacroPluginSignature.parse(getParameterHelpText());
+            }
+            signature = this.signature;
+        }
+        return index < signature.getNumberOfParameters() && signature.isDestination(index);
+    }
+
     protected Object[] imageJArgs() {
         Object[] result = new Object[args.length];
         int i = 0;
@@ -51,7 +66,7 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
             } else if(item instanceof ClearCLImage) {
                 result[i] = clij.convert((ClearCLImage)item, ImagePlus.class);
             } else if(item instanceof ClearCLBuffer) {
-                result[i] = clij.convert((ClearCLBuffer)item, ImagePlus.class);
+                result[i] = CLIJHandler.getInstance().convertToImagePlus((ClearCLBuffer)item, "");
             } else {
                 result[i] = item;
             }
@@ -61,13 +76,17 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
     }
 
     protected Object[] openCLBufferArgs() {
+        if (!needsConversionToBuffers()) {
+            // nothing to convert; releaseBuffers() won't close anything as all items are identical
+            return args;
+        }
         Object[] result = new Object[args.length];
         int i = 0;
         for (Object item : args) {
             if (item instanceof RandomAccessibleInterval) {
                 result[i] = clij.convert((RandomAccessibleInterval)item, ClearCLBuffer.class);
             } else if (item instanceof ImagePlus) {
-                result[i] = clij.convert((ImagePlus)item, ClearCLBuffer.class);
+                result[i] = CLIJHandler.getInstance().convertToBuffer((ImagePlus)item);
             } else if(item instanceof ClearCLImage) {
                 result[i] = clij.convert((ClearCLImage)item, ClearCLBuffer.class);
             } else if(item instanceof ClearCLBuffer) {
@@ -80,6 +99,15 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
         return result;
     }
 
+    private boolean needsConversionToBuffers() {
+        for (Object item : args) {
+            if (item instanceof RandomAccessibleInterval || item instanceof ImagePlus || item instanceof ClearCLImage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected Object[] openCLImageArgs() {
         Object[] result = new Object[args.length];
         int i = 0;
@@ -92,7 +120,8 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
                 result[i] = (ClearCLImage)item;
             } else if(item instanceof ClearCLBuffer) {
                 ClearCLBuffer buffer = (ClearCLBuffer)item;
-                ClearCLImage image = CLIJHandler.getInstance().getChachedImageByBuffer(buffer);
+                // destinations are overwritten; their content doesn't need to be copied
+                ClearCLImage image = CLIJHandler.getInstance().getChachedImageByBuffer(buffer, !isDestination(i));
                 result[i] = image;
             } else {
                 result[i] = item;
@@ -166,40 +195,73 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
     }
 
     protected Float asFloat(Object number) {
-        if (number instanceof Float ) {
-            return (Float)number;
-        } else {
-            return Float.parseFloat(new String("" + number));
+        if (number instanceof Float) {
+            return (Float) number;
         }
+        return asFloatValue(number);
     }
 
-
     protected Boolean asBoolean(Object object) {
-        System.out.println("asBoolean " + object);
-        if (object instanceof Boolean ) {
+        if (object instanceof Boolean) {
             return (Boolean) object;
-        } else if (object instanceof Double) {
-            System.out.println("double " + new String("" + object));
-            return ((Double)object) != 0;
-        } else {
-            System.out.println("convert " + new String("" + object));
-            System.out.println("convert " + Boolean.parseBoolean(new String("" + object)));
-            return Boolean.parseBoolean(new String("" + object));
         }
+        return asBooleanValue(object);
     }
 
     protected Integer asInteger(Object number) {
-        if (number instanceof Integer ) {
-            return (Integer)number;
+        if (number instanceof Integer) {
+            return (Integer) number;
+        }
+        return asIntegerValue(number);
+    }
+
+    /**
+     * Like asFloat, without boxing the result.
+     */
+    protected float asFloatValue(Object number) {
+        if (number instanceof Number) {
+            return ((Number) number).floatValue();
+        } else {
+            return Float.parseFloat(number.toString());
+        }
+    }
+
+    /**
+     * Like asBoolean, without boxing the result.
+     */
+    protected boolean asBooleanValue(Object object) {
+        if (object instanceof Boolean) {
+            return (Boolean) object;
+        } else if (object instanceof Number) {
+            return ((Number) object).doubleValue() != 0;
+        } else {
+            return Boolean.parseBoolean(object.toString());
+        }
+    }
+
+    /**
+     * Like asInteger, without boxing the result.
+     */
+    protected int asIntegerValue(Object number) {
+        if (number instanceof Number) {
+            return ((Number) number).intValue();
         } else {
-            return new Integer((int)Double.parseDouble(new String("" + number)));
+            return (int) Double.parseDouble(number.toString());
         }
     }
 
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        return clij.createCLBuffer(input);
+        return createCLBuffer(input.getDimensions(), input.getNativeType());
+    }
+
+    /**
+     * Creates a destination buffer. Use this instead of clij.createCLBuffer() so that the CLIJHandler can reuse
+     * buffers which are no longer needed.
+     */
+    protected ClearCLBuffer createCLBuffer(long[] dimensions, NativeTypeEnum nativeType) {
+        return CLIJHandler.getInstance().createCLBuffer(clij, dimensions, nativeType);
     }
 
 
@@ -260,6 +322,9 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
         String threadName = Thread.currentThread().getName();
         boolean isMacro = threadName.startsWith("Run$_");
 
+        // operations of a running macro might still be queued
+        CLIJHandler.getInstance().synchronize();
+
         if (!isMacro) {
             // Before we start: Empty the cache:
             CLIJHandler.getInstance().clearGPU();
@@ -277,6 +342,7 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
 
         String firstImageTitle = "";
         String calledParameters = "";
+        Object[] capturedParameters = new Object[args == null ? 0 : args.length];
 
         if (parameters.length > 0 && parameters[0].length() > 0) {
             for (int i = 0; i < parameters.length; i++) {
@@ -288,12 +354,15 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
                         // Creation of output buffers needs to be done after all other parameters have been read.
                         String destinationName = name + "_" + parameterName + "_" + firstImageTitle;
                         calledParameters = calledParameters + "\"" + destinationName + "\"";
+                        capturedParameters[i] = destinationName;
                     } else {
                         ImagePlus imp = gd.getNextImage();
                         if (firstImageTitle.length() == 0) {
                             firstImageTitle = imp.getTitle();
                         }
                         recordIfNotRecorded("// Ext.CLIJ_push", "\"" + imp.getTitle() + "\"");
+                        CLIJHandler.getInstance().recordForCapture("CLIJ_push", new Object[]{imp.getTitle()});
+                        capturedParameters[i] = imp.getTitle();
                         args[i] = CLIJHandler.getInstance().pushToGPU(imp.getTitle());
                                 //clij.convert(imp, ClearCLBuffer.class);
                         allBuffers.add((ClearCLBuffer) args[i]);
@@ -301,13 +370,16 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
                     }
                 } else if (parameterType.compareTo("String") == 0) {
                     args[i] = gd.getNextString();
+                    capturedParameters[i] = args[i];
                     calledParameters = calledParameters + "\"" + args[i] + "\"";
                 } else if (parameterType.compareTo("Boolean") == 0) {
                     boolean value = gd.getNextBoolean();
                     args[i] = value ? 1.0 : 0.0;
+                    capturedParameters[i] = args[i];
                     calledParameters = calledParameters + (value ? "true" : "false");
                 } else { // Number
                     args[i] = gd.getNextNumber();
+                    capturedParameters[i] = args[i];
                     calledParameters = calledParameters + args[i];
                 }
                 if (calledParameters.length() > 0 && i < parameters.length - 1) {
@@ -332,6 +404,13 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
             }
         }
 
+        CLIJMacroPluginSignature signature = CLIJMacroPluginSignature.parse(getParameterHelpText());
+        for (int i = 0; args != null && i < args.length && i < signature.getNumberOfParameters(); i++) {
+            // destinations, or pushed images the plugin writes in place
+            if (args[i] instanceof ClearCLBuffer && CLIJHandler.writesImage(this, signature, i)) {
+                CLIJHandler.getInstance().markBufferModified((ClearCLBuffer) args[i]);
+            }
+        }
         if (this instanceof CLIJOpenCLProcessor) {
             ((CLIJOpenCLProcessor)this).executeCL();
         } else if (this instanceof CLIJImageJProcessor) {
@@ -339,10 +418,14 @@ public abstract class AbstractCLIJPlugin implements PlugInFilter, CLIJMacroPlugi
         }
 
         record("// Ext." + name, calledParameters);
+        CLIJHandler.getInstance().recordForCapture(name, capturedParameters);
 
         for (String destinationName : destinations.keySet()) {
             record("// Ext.CLIJ_pull", "\"" + destinationName + "\"");
-            clij.show(destinations.get(destinationName), destinationName);
+            CLIJHandler.getInstance().recordForCapture("CLIJ_pull", new Object[]{destinationName});
+            ImagePlus result = CLIJHandler.getInstance().convertToImagePlus(destinations.get(destinationName), destinationName);
+            result.resetDisplayRange();
+            result.show();
         }
         
         allBuffers.clear();
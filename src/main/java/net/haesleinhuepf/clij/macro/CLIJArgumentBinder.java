@@ -0,0 +1,97 @@
+package net.haesleinhuepf.clij.macro;
+
+import java.util.Map;
+
+/**
+ * CLIJArgumentBinder translates the arguments of a macro extension call into the argument frame which is handed
+ * over to a CLIJMacroPlugin. It is compiled once from the plugins signature and owns a frame which is reused for
+ * every call. Binding doesn't allocate memory and doesn't do any string processing: Numbers are passed through
+ * as they come from the macro interpreter, image names are replaced by the corresponding images from the given
+ * map.
+ * <p>
+ * Binders are not thread-safe; every plugin instance has its own.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJArgumentBinder {
+    public static final int NONE = -1;
+
+    private final CLIJMacroPluginSignature signature;
+    private final Object[] frame;
+    private int templateIndex = NONE;
+
+    public CLIJArgumentBinder(CLIJMacroPluginSignature signature) {
+        this.signature = signature;
+        this.frame = new Object[signature.getNumberOfParameters()];
+    }
+
+    /**
+     * Fills the frame with the given macro arguments. Image parameters are resolved in the images map; if an
+     * image doesn't exist there, its name stays in the frame.
+     *
+     * @return the reusable frame
+     */
+    public Object[] bind(Object[] macroArguments, Map<String, ?> images) {
+        templateIndex = NONE;
+        int numberOfArguments = macroArguments == null ? 0 : Math.min(macroArguments.length, frame.length);
+        for (int i = 0; i < numberOfArguments; i++) {
+            Object argument = macroArguments[i];
+            if (signature.isImage(i) && argument instanceof String) {
+                Object image = images.get(argument);
+                if (image != null) {
+                    frame[i] = image;
+                    if (templateIndex == NONE) {
+                        templateIndex = i;
+                    }
+                } else {
+                    frame[i] = argument;
+                }
+            } else {
+                frame[i] = argument;
+            }
+        }
+        for (int i = numberOfArguments; i < frame.length; i++) {
+            frame[i] = null;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the index of the first image parameter which could be resolved during the last bind() or NONE.
+     * Missing destination images are created by taking this image as template.
+     */
+    public int getTemplateIndex() {
+        return templateIndex;
+    }
+
+    /**
+     * Returns the index of the first image parameter which is still unresolved (only its name is in the frame)
+     * or NONE if all images are resolved.
+     */
+    public int getFirstUnresolvedImageIndex(Class<?> imageClass) {
+        for (int i = 0; i < frame.length; i++) {
+            if (signature.isImage(i) && !imageClass.isInstance(frame[i])) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    public Object[] getFrame() {
+        return frame;
+    }
+
+    public CLIJMacroPluginSignature getSignature() {
+        return signature;
+    }
+
+    /**
+     * Removes all references from the frame, so that it doesn't keep released images alive.
+     */
+    public void clear() {
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = null;
+        }
+    }
+}
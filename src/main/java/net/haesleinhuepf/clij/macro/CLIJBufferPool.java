@@ -0,0 +1,217 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * CLIJBufferPool keeps released buffers in GPU memory for reuse. Buffers are pooled by size class, which is the
+ * combination of dimensions and pixel type; a buffer is only handed out again for exactly the same size class.
+ * The pool is limited in total size and in the number of buffers per size class. If a released buffer doesn't fit,
+ * the buffers which were pooled first are freed.
+ * <p>
+ * Pooled buffers occupy GPU memory no image is using; so, the pool holds at most an eighth of the global memory of
+ * the device by default, and not more than 1 GB. The maximum can be changed, e.g. with CLIJ_setBufferPoolSize; 0
+ * switches pooling off. The deferred execution mode, CLIJPipeline and CLIJPipelineReplay rely on pooling to reuse
+ * the buffers of intermediate images.
+ * <p>
+ * Pooled buffers keep their old content; operations are expected to overwrite their destinations.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJBufferPool {
+    public static final long DEFAULT_MAXIMUM_BYTES = 1024L * 1024 * 1024;
+    public static final int DEFAULT_SHARE_OF_GLOBAL_MEMORY = 8;
+    public static final int DEFAULT_MAXIMUM_BUFFERS_PER_SIZE_CLASS = 8;
+
+    private static class SizeClass {
+        private final long[] dimensions;
+        private final NativeTypeEnum nativeType;
+        private final int hashCode;
+
+        private SizeClass(long[] dimensions, NativeTypeEnum nativeType) {
+            this.dimensions = dimensions;
+            this.nativeType = nativeType;
+            this.hashCode = 31 * Arrays.hashCode(dimensions) + nativeType.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof SizeClass)) {
+                return false;
+            }
+            SizeClass other = (SizeClass) object;
+            return nativeType == other.nativeType && Arrays.equals(dimensions, other.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final HashMap<SizeClass, ArrayDeque<ClearCLBuffer>> pool = new HashMap<SizeClass, ArrayDeque<ClearCLBuffer>>();
+    // all pooled buffers in the order they were released; the oldest ones are freed first
+    private final ArrayDeque<ClearCLBuffer> releaseOrder = new ArrayDeque<ClearCLBuffer>();
+
+    private CLIJ clij = null;
+    private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+    // the default maximum depends on the device unless a maximum was set
+    private boolean maximumBytesSet = false;
+    private int maximumBuffersPerSizeClass = DEFAULT_MAXIMUM_BUFFERS_PER_SIZE_CLASS;
+    private long pooledBytes = 0;
+    private long reuseCount = 0;
+    private long creationCount = 0;
+
+    /**
+     * Returns a pooled buffer of the given size class or creates a new one.
+     */
+    public synchronized ClearCLBuffer acquire(CLIJ clij, long[] dimensions, NativeTypeEnum nativeType) {
+        if (this.clij != clij) {
+            // buffers of another context can't be used
+            clear();
+            this.clij = clij;
+            if (!maximumBytesSet) {
+                maximumBytes = getDefaultMaximumBytes(clij);
+            }
+        }
+        ArrayDeque<ClearCLBuffer> buffers = pool.get(new SizeClass(dimensions, nativeType));
+        if (buffers != null && !buffers.isEmpty()) {
+            ClearCLBuffer buffer = buffers.pollLast();
+            releaseOrder.remove(buffer);
+            pooledBytes -= buffer.getSizeInBytes();
+            reuseCount++;
+            return buffer;
+        }
+        creationCount++;
+        return clij.createCLBuffer(dimensions, nativeType);
+    }
+
+    /**
+     * Returns true if acquire would hand out a pooled buffer instead of allocating a new one.
+     */
+    public synchronized boolean canReuse(CLIJ clij, long[] dimensions, NativeTypeEnum nativeType) {
+        ArrayDeque<ClearCLBuffer> buffers = pool.get(new SizeClass(dimensions, nativeType));
+        return this.clij == clij && buffers != null && !buffers.isEmpty();
+    }
+
+    /**
+     * Puts a buffer which is no longer used into the pool or frees it if it exceeds the limits.
+     */
+    public synchronized void release(ClearCLBuffer buffer) {
+        long bytes = buffer.getSizeInBytes();
+        if (bytes > maximumBytes || maximumBuffersPerSizeClass <= 0) {
+            // e.g. pooling is switched off
+            buffer.close();
+            return;
+        }
+        SizeClass sizeClass = new SizeClass(buffer.getDimensions(), buffer.getNativeType());
+        ArrayDeque<ClearCLBuffer> buffers = pool.get(sizeClass);
+        if (buffers == null) {
+            buffers = new ArrayDeque<ClearCLBuffer>();
+            pool.put(sizeClass, buffers);
+        }
+        if (buffers.size() >= maximumBuffersPerSizeClass) {
+            ClearCLBuffer oldest = buffers.pollFirst();
+            releaseOrder.remove(oldest);
+            pooledBytes -= oldest.getSizeInBytes();
+            oldest.close();
+        }
+        buffers.addLast(buffer);
+        releaseOrder.addLast(buffer);
+        pooledBytes += bytes;
+        shrinkTo(maximumBytes);
+    }
+
+    private void shrinkTo(long bytes) {
+        while (pooledBytes > bytes && !releaseOrder.isEmpty()) {
+            ClearCLBuffer oldest = releaseOrder.pollFirst();
+            pool.get(new SizeClass(oldest.getDimensions(), oldest.getNativeType())).remove(oldest);
+            pooledBytes -= oldest.getSizeInBytes();
+            oldest.close();
+        }
+        Iterator<ArrayDeque<ClearCLBuffer>> iterator = pool.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Frees pooled buffers, the oldest first, until at least the given number of bytes was freed or the pool is
+     * empty.
+     *
+     * @return the number of freed bytes
+     */
+    public synchronized long free(long bytes) {
+        long pooledBytesBefore = pooledBytes;
+        shrinkTo(Math.max(0, pooledBytes - bytes));
+        return pooledBytesBefore - pooledBytes;
+    }
+
+    /**
+     * Frees all pooled buffers.
+     */
+    public synchronized void clear() {
+        shrinkTo(0);
+    }
+
+    public synchronized long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Returns the maximum size of the pool for the given device if it wasn't set: an eighth of its global memory,
+     * but not more than DEFAULT_MAXIMUM_BYTES.
+     */
+    public static long getDefaultMaximumBytes(CLIJ clij) {
+        long globalMemory = clij.getClearCLContext().getDevice().getGlobalMemorySizeInBytes();
+        return Math.min(DEFAULT_MAXIMUM_BYTES, globalMemory / DEFAULT_SHARE_OF_GLOBAL_MEMORY);
+    }
+
+    public synchronized void setMaximumBytes(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        maximumBytesSet = true;
+        shrinkTo(maximumBytes);
+    }
+
+    public synchronized int getMaximumBuffersPerSizeClass() {
+        return maximumBuffersPerSizeClass;
+    }
+
+    public synchronized void setMaximumBuffersPerSizeClass(int maximumBuffersPerSizeClass) {
+        this.maximumBuffersPerSizeClass = maximumBuffersPerSizeClass;
+        for (ArrayDeque<ClearCLBuffer> buffers : pool.values()) {
+            while (buffers.size() > Math.max(maximumBuffersPerSizeClass, 0)) {
+                ClearCLBuffer oldest = buffers.pollFirst();
+                releaseOrder.remove(oldest);
+                pooledBytes -= oldest.getSizeInBytes();
+                oldest.close();
+            }
+        }
+        shrinkTo(maximumBytes);
+    }
+
+    public synchronized int getNumberOfPooledBuffers() {
+        return releaseOrder.size();
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    public synchronized long getCreationCount() {
+        return creationCount;
+    }
+}
@@ -0,0 +1,152 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.clearcl.ClearCLContext;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_device_id;
+import org.jocl.cl_event;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+import org.jocl.cl_program;
+
+/**
+ * CLIJCachedKernel is a kernel whose program is loaded from a CLIJProgramBinaryCache with clCreateProgramWithBinary,
+ * or compiled from source and stored there if it's not cached yet. ClearCL can't create programs from binaries;
+ * so, the program is created through JOCL on the objects of the ClearCL context. Arguments are set by position.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJCachedKernel {
+    private final ClearCLContext context;
+    private final cl_program program;
+    private final cl_kernel kernel;
+
+    private CLIJCachedKernel(ClearCLContext context, cl_program program, cl_kernel kernel) {
+        this.context = context;
+        this.program = program;
+        this.kernel = kernel;
+    }
+
+    /**
+     * Creates the kernel of the given name from the cached binary of the source or by compiling the source.
+     *
+     * @throws RuntimeException if the program can't be built, e.g. because ClearCL doesn't run on JOCL
+     */
+    public static CLIJCachedKernel create(CLIJProgramBinaryCache cache, ClearCLContext context, String source, String buildOptions, String kernelName) {
+        cl_context clContext = (cl_context) context.getPeerPointer().getPointer();
+        cl_device_id device = (cl_device_id) context.getDevice().getPeerPointer().getPointer();
+        cl_device_id[] devices = new cl_device_id[]{device};
+        String deviceName = getDeviceInfo(device, CL.CL_DEVICE_VENDOR) + " " + getDeviceInfo(device, CL.CL_DEVICE_NAME);
+        String driverVersion = getDeviceInfo(device, CL.CL_DRIVER_VERSION) + " " + getDeviceInfo(device, CL.CL_DEVICE_VERSION);
+        String key = CLIJProgramBinaryCache.createKey(source, buildOptions, deviceName + " " + driverVersion);
+
+        cl_program program = null;
+        byte[] binary = cache.load(deviceName, driverVersion, key);
+        if (binary != null) {
+            try {
+                int[] error = new int[1];
+                program = CL.clCreateProgramWithBinary(clContext, 1, devices, new long[]{binary.length}, new byte[][]{binary}, new int[1], error);
+                check(error[0], "clCreateProgramWithBinary");
+                check(CL.clBuildProgram(program, 1, devices, buildOptions, null, null), "clBuildProgram");
+                if (CLIJ.debug) {
+                    System.out.println("Loaded program binary " + key);
+                }
+            } catch (RuntimeException e) {
+                // e.g. a binary the driver doesn't accept anymore
+                if (CLIJ.debug) {
+                    System.out.println("Program binary " + key + " rejected: " + e.getMessage());
+                }
+                if (program != null) {
+                    CL.clReleaseProgram(program);
+                    program = null;
+                }
+                cache.remove(deviceName, driverVersion, key);
+            }
+        }
+        if (program == null) {
+            if (CLIJ.debug) {
+                System.out.println("Compiling program " + key);
+            }
+            int[] error = new int[1];
+            program = CL.clCreateProgramWithSource(clContext, 1, new String[]{source}, null, error);
+            check(error[0], "clCreateProgramWithSource");
+            try {
+                check(CL.clBuildProgram(program, 1, devices, buildOptions, null, null), "clBuildProgram");
+            } catch (RuntimeException e) {
+                CL.clReleaseProgram(program);
+                throw e;
+            }
+            cache.store(deviceName, driverVersion, key, getBinary(program));
+        }
+        try {
+            int[] error = new int[1];
+            cl_kernel kernel = CL.clCreateKernel(program, kernelName, error);
+            check(error[0], "clCreateKernel");
+            return new CLIJCachedKernel(context, program, kernel);
+        } catch (RuntimeException e) {
+            CL.clReleaseProgram(program);
+            throw e;
+        }
+    }
+
+    // JOCL reports errors by exceptions or by return codes, depending on how the backend configured it
+    private static void check(int error, String function) {
+        if (error != CL.CL_SUCCESS) {
+            throw new CLException(function + " failed with error " + error);
+        }
+    }
+
+    private static String getDeviceInfo(cl_device_id device, int parameter) {
+        long[] size = new long[1];
+        CL.clGetDeviceInfo(device, parameter, 0, null, size);
+        byte[] value = new byte[(int) size[0]];
+        CL.clGetDeviceInfo(device, parameter, value.length, Pointer.to(value), null);
+        // without the terminating zero
+        return new String(value, 0, Math.max(0, value.length - 1)).trim();
+    }
+
+    private static byte[] getBinary(cl_program program) {
+        long[] size = new long[1];
+        CL.clGetProgramInfo(program, CL.CL_PROGRAM_BINARY_SIZES, Sizeof.size_t, Pointer.to(size), null);
+        byte[] binary = new byte[(int) size[0]];
+        CL.clGetProgramInfo(program, CL.CL_PROGRAM_BINARIES, Sizeof.POINTER, Pointer.to(Pointer.to(binary)), null);
+        return binary;
+    }
+
+    public void setArgument(int index, ClearCLBuffer buffer) {
+        CL.clSetKernelArg(kernel, index, Sizeof.cl_mem, Pointer.to((cl_mem) buffer.getPeerPointer().getPointer()));
+    }
+
+    public void setArgument(int index, float value) {
+        CL.clSetKernelArg(kernel, index, Sizeof.cl_float, Pointer.to(new float[]{value}));
+    }
+
+    /**
+     * Enqueues the kernel on the default queue of the context without waiting for it. The queue executes in order;
+     * so, later operations on it see the results. Callers which need them on the host wait for the queue.
+     */
+    public void run(long globalSize) {
+        cl_command_queue queue = (cl_command_queue) context.getDefaultQueue().getPeerPointer().getPointer();
+        check(CL.clEnqueueNDRangeKernel(queue, kernel, 1, null, new long[]{globalSize}, null, 0, null, null), "clEnqueueNDRangeKernel");
+    }
+
+    /**
+     * Enqueues the kernel on the given queue of the context after the events of the wait list. The given event, if
+     * any, completes with the kernel.
+     */
+    public void run(long globalSize, cl_command_queue queue, cl_event[] waitList, cl_event event) {
+        check(CL.clEnqueueNDRangeKernel(queue, kernel, 1, null, new long[]{globalSize}, null, waitList.length, waitList.length == 0 ? null : waitList, event), "clEnqueueNDRangeKernel");
+    }
+
+    public void close() {
+        CL.clReleaseKernel(kernel);
+        CL.clReleaseProgram(program);
+    }
+}
@@ -0,0 +1,233 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.clearcl.ClearCLContext;
+import net.haesleinhuepf.clij.clearcl.ClearCLQueue;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * CLIJCommandQueues distributes the generated kernels of a deferred pipeline over additional command queues of the
+ * context, so that the GPU can overlap independent operations, e.g. the same pointwise chain on several channels,
+ * with each other and with the module kernels on the default queue. Like CLIJTransferQueue, the queues are created
+ * through ClearCL and used through JOCL; order is kept with events instead of waiting on the host.
+ * <p>
+ * Every buffer remembers the event of the operation which wrote it last and of the operations which read it since.
+ * Operations on the default queue are represented by a marker enqueued after them.
+ * <ul>
+ * <li>A kernel on an additional queue waits for the marker enqueued by begin(), for the last writers of the buffers
+ * it reads and writes and for the readers of the buffers it writes. A kernel reading the result of a kernel on an
+ * additional queue is put on the same queue.</li>
+ * <li>Before an operation on the default queue, a barrier waiting for the kernels on additional queues which use its
+ * buffers is enqueued there; afterwards it's marked with markUsed(). join() lets the default queue wait for all
+ * kernels; so, pulls, transfers and later operations see their results.</li>
+ * </ul>
+ * Module kernels are launched by clij-core on the default queue; only generated kernels go to additional queues.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJCommandQueues {
+    private static final int DEFAULT_QUEUE = -1;
+
+    private final ClearCLContext context;
+    private final cl_command_queue defaultQueue;
+    private final ClearCLQueue[] queues;
+    private final cl_command_queue[] queuePointers;
+    private int nextQueue = 0;
+
+    private cl_event start = null;
+    private final HashMap<ClearCLBuffer, cl_event> lastWrites = new HashMap<ClearCLBuffer, cl_event>();
+    private final HashMap<ClearCLBuffer, Integer> lastWritingQueues = new HashMap<ClearCLBuffer, Integer>();
+    private final HashMap<ClearCLBuffer, ArrayList<cl_event>> readsSinceLastWrite = new HashMap<ClearCLBuffer, ArrayList<cl_event>>();
+    // all events since begin(); released by join()
+    private final ArrayList<cl_event> events = new ArrayList<cl_event>();
+
+    /**
+     * Creates numberOfQueues - 1 queues besides the default queue of the context.
+     *
+     * @throws ClassCastException if ClearCL doesn't run on JOCL
+     */
+    public CLIJCommandQueues(ClearCLContext context, int numberOfQueues) {
+        if (numberOfQueues < 2) {
+            throw new IllegalArgumentException("At least two command queues are needed, " + numberOfQueues + " given");
+        }
+        this.context = context;
+        defaultQueue = (cl_command_queue) context.getDefaultQueue().getPeerPointer().getPointer();
+        queues = new ClearCLQueue[numberOfQueues - 1];
+        queuePointers = new cl_command_queue[numberOfQueues - 1];
+        for (int q = 0; q < queues.length; q++) {
+            queues[q] = context.createQueue();
+            queuePointers[q] = (cl_command_queue) queues[q].getPeerPointer().getPointer();
+        }
+    }
+
+    public ClearCLContext getContext() {
+        return context;
+    }
+
+    public int getNumberOfQueues() {
+        return queues.length + 1;
+    }
+
+    /**
+     * Starts distributing kernels. They start after all operations enqueued on the default queue before.
+     */
+    public void begin() {
+        join();
+        start = enqueueMarker();
+    }
+
+    /**
+     * Enqueues a kernel whose arguments are set already on one of the additional queues, after the operations it
+     * depends on.
+     */
+    public void run(CLIJCachedKernel kernel, long globalSize, ClearCLBuffer[] reads, ClearCLBuffer[] writes) {
+        if (start == null) {
+            throw new IllegalStateException("CLIJCommandQueues.begin() wasn't called");
+        }
+        LinkedHashSet<cl_event> waitList = new LinkedHashSet<cl_event>();
+        waitList.add(start);
+        int queue = DEFAULT_QUEUE;
+        for (ClearCLBuffer buffer : reads) {
+            if (lastWrites.containsKey(buffer)) {
+                waitList.add(lastWrites.get(buffer));
+                if (queue == DEFAULT_QUEUE) {
+                    queue = lastWritingQueues.get(buffer);
+                }
+            }
+        }
+        addWriteDependencies(writes, waitList);
+        if (queue == DEFAULT_QUEUE) {
+            queue = nextQueue;
+            nextQueue = (nextQueue + 1) % queues.length;
+        }
+
+        cl_event event = new cl_event();
+        kernel.run(globalSize, queuePointers[queue], waitList.toArray(new cl_event[0]), event);
+        events.add(event);
+        CL.clFlush(queuePointers[queue]);
+        if (CLIJ.debug) {
+            System.out.println("Enqueued kernel on command queue " + (queue + 1) + " after " + waitList.size() + " events");
+        }
+        recordUse(reads, writes, event, queue);
+    }
+
+    /**
+     * Lets the default queue wait for the kernels on additional queues which wrote the given reads or use the given
+     * writes, before an operation on the default queue uses them. Doesn't block the calling thread.
+     */
+    public void waitFor(ClearCLBuffer[] reads, ClearCLBuffer[] writes) {
+        LinkedHashSet<cl_event> waitList = new LinkedHashSet<cl_event>();
+        for (ClearCLBuffer buffer : reads) {
+            if (buffer != null && lastWrites.containsKey(buffer) && lastWritingQueues.get(buffer) != DEFAULT_QUEUE) {
+                waitList.add(lastWrites.get(buffer));
+            }
+        }
+        addWriteDependencies(writes, waitList);
+        if (!waitList.isEmpty()) {
+            check(CL.clEnqueueBarrierWithWaitList(defaultQueue, waitList.size(), waitList.toArray(new cl_event[0]), null), "clEnqueueBarrierWithWaitList");
+        }
+    }
+
+    /**
+     * Records that an operation enqueued on the default queue read and wrote the given buffers; kernels on additional
+     * queues using them later wait for it.
+     */
+    public void markUsed(ClearCLBuffer[] reads, ClearCLBuffer[] writes) {
+        recordUse(reads, writes, enqueueMarker(), DEFAULT_QUEUE);
+    }
+
+    /**
+     * Lets the default queue wait for all kernels enqueued on additional queues and releases all events. Doesn't
+     * block the calling thread.
+     */
+    public void join() {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            check(CL.clEnqueueBarrierWithWaitList(defaultQueue, events.size(), events.toArray(new cl_event[0]), null), "clEnqueueBarrierWithWaitList");
+        } finally {
+            // events stay alive until the commands waiting for them are done
+            for (cl_event event : events) {
+                CL.clReleaseEvent(event);
+            }
+            events.clear();
+            start = null;
+            lastWrites.clear();
+            lastWritingQueues.clear();
+            readsSinceLastWrite.clear();
+        }
+    }
+
+    /**
+     * Waits for all kernels and releases the additional queues.
+     */
+    public void close() {
+        join();
+        for (ClearCLQueue queue : queues) {
+            queue.waitToFinish();
+            queue.close();
+        }
+    }
+
+    // writing waits for the last writer and for all readers since then
+    private void addWriteDependencies(ClearCLBuffer[] writes, LinkedHashSet<cl_event> waitList) {
+        for (ClearCLBuffer buffer : writes) {
+            if (buffer == null) {
+                continue;
+            }
+            if (lastWrites.containsKey(buffer)) {
+                waitList.add(lastWrites.get(buffer));
+            }
+            if (readsSinceLastWrite.containsKey(buffer)) {
+                waitList.addAll(readsSinceLastWrite.get(buffer));
+            }
+        }
+    }
+
+    private void recordUse(ClearCLBuffer[] reads, ClearCLBuffer[] writes, cl_event event, int queue) {
+        for (ClearCLBuffer buffer : reads) {
+            if (buffer == null) {
+                continue;
+            }
+            ArrayList<cl_event> readEvents = readsSinceLastWrite.get(buffer);
+            if (readEvents == null) {
+                readEvents = new ArrayList<cl_event>();
+                readsSinceLastWrite.put(buffer, readEvents);
+            }
+            readEvents.add(event);
+        }
+        for (ClearCLBuffer buffer : writes) {
+            if (buffer == null) {
+                continue;
+            }
+            lastWrites.put(buffer, event);
+            lastWritingQueues.put(buffer, queue);
+            readsSinceLastWrite.remove(buffer);
+        }
+    }
+
+    private cl_event enqueueMarker() {
+        cl_event marker = new cl_event();
+        check(CL.clEnqueueMarkerWithWaitList(defaultQueue, 0, null, marker), "clEnqueueMarkerWithWaitList");
+        events.add(marker);
+        // kernels on other queues may wait for it
+        CL.clFlush(defaultQueue);
+        return marker;
+    }
+
+    private static void check(int error, String function) {
+        if (error != CL.CL_SUCCESS) {
+            throw new CLException(function + " failed with error " + error);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package net.haesleinhuepf.clij.macro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * CLIJDeferredPipeline collects macro calls in deferred execution mode. Every operation is a node in a dependency
+ * graph; edges connect operations which read or write images of the same name. Before execution, the graph is
+ * optimized:
+ * <ul>
+ * <li>Operations whose destination images are released without being read again are dropped.</li>
+ * <li>Independent operations are reordered so that images are released as early as possible. Their memory can
+ * then be reused by later operations and the peak memory consumption goes down.</li>
+ * </ul>
+ * Images which are not released within the pipeline are considered results; operations producing them are always
+ * executed.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJDeferredPipeline {
+
+    public static class Operation {
+        private final String name;
+        private final Object[] args;
+        private final String[] reads;
+        private final String[] writes;
+        private final boolean release;
+
+        private Operation(String name, Object[] args, String[] reads, String[] writes, boolean release) {
+            this.name = name;
+            this.args = args;
+            this.reads = reads;
+            this.writes = writes;
+            this.release = release;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Object[] getArgs() {
+            return args;
+        }
+
+        public String[] getReads() {
+            return reads;
+        }
+
+        public String[] getWrites() {
+            return writes;
+        }
+
+        public boolean isRelease() {
+            return release;
+        }
+
+        // destination images may be written partially; for ordering, writes count as reads, too
+        private boolean touches(String image) {
+            return contains(reads, image) || contains(writes, image);
+        }
+
+        private boolean dependsOn(Operation other) {
+            for (String image : writes) {
+                if (other.touches(image)) {
+                    return true;
+                }
+            }
+            for (String image : other.writes) {
+                if (touches(image)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name + Arrays.toString(args);
+        }
+    }
+
+    private final ArrayList<Operation> operations = new ArrayList<Operation>();
+
+    /**
+     * Adds an operation. The images it reads and writes are determined from the given signature; the arguments
+     * are kept as they are and must not be modified afterwards.
+     */
+    public void addOperation(String name, Object[] args, CLIJMacroPluginSignature signature) {
+        ArrayList<String> reads = new ArrayList<String>();
+        ArrayList<String> writes = new ArrayList<String>();
+        for (int i = 0; i < signature.getNumberOfParameters() && i < args.length; i++) {
+            if (signature.isImage(i) && args[i] instanceof String) {
+                if (signature.isDestination(i)) {
+                    writes.add((String) args[i]);
+                } else {
+                    reads.add((String) args[i]);
+                }
+            }
+        }
+        operations.add(new Operation(name, args, reads.toArray(new String[0]), writes.toArray(new String[0]), false));
+    }
+
+    /**
+     * Adds releasing an image from GPU memory. Releases are modelled as writing the image.
+     */
+    public void addRelease(String name, String image) {
+        operations.add(new Operation(name, new Object[]{image}, new String[0], new String[]{image}, true));
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public void clear() {
+        operations.clear();
+    }
+
+    /**
+     * Returns the optimized list of operations in the order they should be executed.
+     */
+    public ArrayList<Operation> schedule() {
+        ArrayList<Operation> live = removeDeadOperations();
+
+        // list scheduling: releases first, otherwise the operation which allows most releases afterwards
+        int n = live.size();
+        boolean[][] dependencies = new boolean[n][n];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < j; i++) {
+                dependencies[j][i] = live.get(j).dependsOn(live.get(i));
+            }
+        }
+
+        boolean[] scheduled = new boolean[n];
+        ArrayList<Operation> result = new ArrayList<Operation>();
+        while (result.size() < n) {
+            int chosen = -1;
+            int chosenScore = -1;
+            for (int j = 0; j < n; j++) {
+                if (scheduled[j] || !isReady(j, dependencies, scheduled, -1)) {
+                    continue;
+                }
+                if (live.get(j).isRelease()) {
+                    chosen = j;
+                    break;
+                }
+                int score = 0;
+                for (int k = j + 1; k < n; k++) {
+                    if (!scheduled[k] && live.get(k).isRelease() && dependencies[k][j] && isReady(k, dependencies, scheduled, j)) {
+                        score++;
+                    }
+                }
+                if (score > chosenScore) {
+                    chosen = j;
+                    chosenScore = score;
+                }
+            }
+            scheduled[chosen] = true;
+            result.add(live.get(chosen));
+        }
+        return result;
+    }
+
+    private ArrayList<Operation> removeDeadOperations() {
+        // every image which is not released at the end might be pulled later
+        HashSet<String> liveImages = new HashSet<String>();
+        for (Operation operation : operations) {
+            liveImages.addAll(Arrays.asList(operation.reads));
+            liveImages.addAll(Arrays.asList(operation.writes));
+        }
+
+        boolean[] keep = new boolean[operations.size()];
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation operation = operations.get(i);
+            if (operation.isRelease()) {
+                liveImages.remove(operation.writes[0]);
+                keep[i] = true;
+                continue;
+            }
+            for (String image : operation.writes) {
+                if (liveImages.contains(image)) {
+                    keep[i] = true;
+                    break;
+                }
+            }
+            if (keep[i]) {
+                liveImages.addAll(Arrays.asList(operation.reads));
+            }
+        }
+
+        ArrayList<Operation> live = new ArrayList<Operation>();
+        for (int i = 0; i < operations.size(); i++) {
+            if (keep[i]) {
+                live.add(operations.get(i));
+            }
+        }
+        return live;
+    }
+
+    // an operation is ready if everything it depends on is scheduled; 'assumeScheduled' is treated as scheduled
+    private static boolean isReady(int j, boolean[][] dependencies, boolean[] scheduled, int assumeScheduled) {
+        for (int i = 0; i < j; i++) {
+            if (dependencies[j][i] && !scheduled[i] && i != assumeScheduled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(String[] array, String item) {
+        for (String element : array) {
+            if (element.equals(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,224 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * CLIJFileLoader uploads uncompressed TIFF and raw files into GPU buffers without creating an ImagePlus. The file
+ * is memory-mapped chunk by chunk and the mapped memory is handed to OpenCL directly; so, pixels are neither copied
+ * into Java arrays nor into the heap. Slices which are stored one after another are transferred as one chunk.
+ * <p>
+ * If the byte order of the file differs from the native one, e.g. for big-endian TIFFs, every chunk is swapped into a
+ * reusable direct buffer on the way.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJFileLoader {
+    private static final long MAXIMUM_CHUNK_BYTES = 256L * 1024L * 1024L;
+
+    private ByteBuffer staging = null;
+
+    /**
+     * Reads the image file directories of a TIFF file and checks that it can be loaded by this class: it must be
+     * uncompressed, have 8, 16 (unsigned) or 32 bit (float) pixels and all planes must have the same size.
+     */
+    public static FileInfo[] describeTiff(String path) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new IllegalArgumentException("File " + path + " doesn't exist");
+        }
+        String directory = file.getAbsoluteFile().getParent() + File.separator;
+        FileInfo[] info = new TiffDecoder(directory, file.getName()).getTiffInfo();
+        if (info == null || info.length == 0) {
+            throw new IllegalArgumentException(path + " is not a TIFF file");
+        }
+        for (FileInfo fileInfo : info) {
+            if (fileInfo.compression != FileInfo.COMPRESSION_NONE) {
+                throw new IllegalArgumentException(path + " is compressed; only uncompressed TIFF files can be pushed directly");
+            }
+            if (nativeTypeOf(fileInfo.fileType) == null) {
+                throw new IllegalArgumentException(path + " has an unsupported pixel type; supported are 8, 16 and 32 bit");
+            }
+            if (fileInfo.width != info[0].width || fileInfo.height != info[0].height || fileInfo.fileType != info[0].fileType) {
+                throw new IllegalArgumentException("The planes of " + path + " differ in size or pixel type");
+            }
+            if (fileInfo.stripOffsets != null) {
+                for (int i = 0; i + 1 < fileInfo.stripOffsets.length; i++) {
+                    if ((long) fileInfo.stripOffsets[i] + fileInfo.stripLengths[i] != fileInfo.stripOffsets[i + 1]) {
+                        throw new IllegalArgumentException("The strips of " + path + " are not stored one after another");
+                    }
+                }
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Describes a raw file containing the given number of slices after a header of the given size.
+     */
+    public static FileInfo[] describeRaw(int width, int height, int depth, int bitDepth, long headerBytes, boolean littleEndian) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.width = width;
+        fileInfo.height = height;
+        fileInfo.nImages = depth;
+        fileInfo.longOffset = headerBytes;
+        fileInfo.offset = (int) Math.min(headerBytes, Integer.MAX_VALUE);
+        fileInfo.intelByteOrder = littleEndian;
+        switch (bitDepth) {
+            case 8:
+                fileInfo.fileType = FileInfo.GRAY8;
+                break;
+            case 16:
+                fileInfo.fileType = FileInfo.GRAY16_UNSIGNED;
+                break;
+            case 32:
+                fileInfo.fileType = FileInfo.GRAY32_FLOAT;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported bit depth: " + bitDepth + "; supported are 8, 16 and 32 bit");
+        }
+        if (width <= 0 || height <= 0 || depth <= 0 || headerBytes < 0) {
+            throw new IllegalArgumentException("Invalid raw file description: " + width + "x" + height + "x" + depth + ", header " + headerBytes);
+        }
+        return new FileInfo[]{fileInfo};
+    }
+
+    public static NativeTypeEnum nativeTypeOf(int fileType) {
+        switch (fileType) {
+            case FileInfo.GRAY8:
+                return NativeTypeEnum.UnsignedByte;
+            case FileInfo.GRAY16_UNSIGNED:
+                return NativeTypeEnum.UnsignedShort;
+            case FileInfo.GRAY32_FLOAT:
+                return NativeTypeEnum.Float;
+            default:
+                return null;
+        }
+    }
+
+    public static long[] dimensionsOf(FileInfo[] info) {
+        long depth = getSliceOffsets(info).length;
+        if (depth > 1) {
+            return new long[]{info[0].width, info[0].height, depth};
+        }
+        return new long[]{info[0].width, info[0].height};
+    }
+
+    /**
+     * Returns the position of every slice in the file. ImageJ TIFFs and raw files have one description with the
+     * number of images and the gap between them; other multi-page TIFFs have one description per page.
+     */
+    static long[] getSliceOffsets(FileInfo[] info) {
+        if (info.length == 1) {
+            FileInfo fileInfo = info[0];
+            long sliceBytes = getSliceSizeInBytes(fileInfo);
+            long gap = fileInfo.gapBetweenImages;
+            long[] offsets = new long[Math.max(1, fileInfo.nImages)];
+            for (int z = 0; z < offsets.length; z++) {
+                offsets[z] = fileInfo.getOffset() + z * (sliceBytes + gap);
+            }
+            return offsets;
+        }
+        long[] offsets = new long[info.length];
+        for (int z = 0; z < info.length; z++) {
+            offsets[z] = info[z].getOffset();
+        }
+        return offsets;
+    }
+
+    /**
+     * Groups slices which follow each other in the file into chunks of at most the given size. Every chunk is
+     * returned as {first slice, number of slices}.
+     */
+    static ArrayList<int[]> getChunks(long[] sliceOffsets, long sliceBytes, long maximumChunkBytes) {
+        int maximumSlicesPerChunk = (int) Math.max(1, maximumChunkBytes / sliceBytes);
+        ArrayList<int[]> chunks = new ArrayList<int[]>();
+        int first = 0;
+        for (int z = 1; z <= sliceOffsets.length; z++) {
+            if (z == sliceOffsets.length ||
+                    sliceOffsets[z] != sliceOffsets[z - 1] + sliceBytes ||
+                    z - first >= maximumSlicesPerChunk) {
+                chunks.add(new int[]{first, z - first});
+                first = z;
+            }
+        }
+        return chunks;
+    }
+
+    private static long getSliceSizeInBytes(FileInfo fileInfo) {
+        return (long) fileInfo.width * fileInfo.height * nativeTypeOf(fileInfo.fileType).getSizeInBytes();
+    }
+
+    /**
+     * Uploads the pixels of the described file into the buffer, which has the dimensions and pixel type returned
+     * by dimensionsOf and nativeTypeOf.
+     */
+    public synchronized void upload(String path, FileInfo[] info, ClearCLBuffer buffer) throws IOException {
+        long[] sliceOffsets = getSliceOffsets(info);
+        long sliceBytes = getSliceSizeInBytes(info[0]);
+        long sliceElements = (long) info[0].width * info[0].height;
+        ByteOrder fileOrder = info[0].intelByteOrder ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        boolean swap = fileOrder != ByteOrder.nativeOrder() && info[0].fileType != FileInfo.GRAY8;
+
+        long startTime = System.nanoTime();
+        FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+        try {
+            long end = sliceOffsets[sliceOffsets.length - 1] + sliceBytes;
+            if (channel.size() < end) {
+                throw new IllegalArgumentException(path + " is too short: " + channel.size() + " bytes instead of at least " + end);
+            }
+            for (int[] chunk : getChunks(sliceOffsets, sliceBytes, MAXIMUM_CHUNK_BYTES)) {
+                long bytes = chunk[1] * sliceBytes;
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, sliceOffsets[chunk[0]], bytes);
+                ByteBuffer source = swap ? swap(mapped.order(fileOrder), info[0].fileType, bytes) : mapped;
+                // blocking, because the mapping and the staging buffer are reused right afterwards
+                buffer.readFrom(source, chunk[0] * sliceElements, chunk[1] * sliceElements, true);
+            }
+        } finally {
+            channel.close();
+        }
+        if (CLIJ.debug) {
+            double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+            long bytes = sliceOffsets.length * sliceBytes;
+            System.out.println("Pushed " + path + (swap ? " (byte order swapped)" : "") + ": " + bytes + " bytes in " +
+                    String.format("%.3f", seconds * 1000) + " ms (" +
+                    String.format("%.2f", seconds > 0 ? bytes / seconds / 1024 / 1024 / 1024 : 0) + " GB/s)");
+        }
+    }
+
+    // copies the pixels into the staging buffer in native byte order
+    private ByteBuffer swap(ByteBuffer source, int fileType, long bytes) {
+        if (staging == null || staging.capacity() < bytes) {
+            staging = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        }
+        staging.clear();
+        staging.limit((int) bytes);
+        if (fileType == FileInfo.GRAY16_UNSIGNED) {
+            staging.asShortBuffer().put(source.asShortBuffer());
+        } else {
+            // as integers, so that all bit patterns are kept
+            staging.asIntBuffer().put(source.asIntBuffer());
+        }
+        return staging;
+    }
+
+    /**
+     * Frees the staging buffer used for swapping the byte order; it's allocated again when needed.
+     */
+    public synchronized void clear() {
+        staging = null;
+    }
+}
@@ -0,0 +1,276 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CLIJFileSaver writes GPU buffers into raw or uncompressed TIFF files without creating an ImagePlus. The buffer is
+ * downloaded chunk by chunk into two direct buffers which a writer thread writes through a FileChannel; so,
+ * downloading the next chunk overlaps writing the current one and host memory is limited to two chunks. Saving
+ * returns as soon as the last chunk is downloaded; writing the last chunks overlaps the next operations.
+ * <p>
+ * TIFF files are written in native byte order with one directory per slice and the pixels of all slices stored one
+ * after another, which ImageJ and other readers open without conversion.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJFileSaver {
+    private static final long CHUNK_BYTES = 64L * 1024L * 1024L;
+    // offsets in TIFF files are 32 bit
+    private static final long MAXIMUM_TIFF_BYTES = 0xffffffffL;
+
+    private final ExecutorService writer = createWriter();
+    private final ByteBuffer[] staging = new ByteBuffer[2];
+    private final Future<?>[] pendingWrites = new Future<?>[2];
+    private final ConcurrentHashMap<String, Future<?>> pendingFiles = new ConcurrentHashMap<String, Future<?>>();
+
+    // the thread isn't a daemon, so that files are completed before the JVM exits; it ends when it has been idle for
+    // a second, so that it doesn't keep the JVM alive afterwards
+    private static ExecutorService createWriter() {
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "CLIJ file writer");
+            }
+        });
+        writer.allowCoreThreadTimeOut(true);
+        return writer;
+    }
+
+    /**
+     * Writes the buffer into a raw file.
+     */
+    public synchronized void saveRaw(ClearCLBuffer buffer, String path) throws IOException {
+        save(buffer, path, null);
+    }
+
+    /**
+     * Writes a 2D or 3D buffer with 8, 16 or 32 bit (float) pixels into an uncompressed TIFF file.
+     */
+    public synchronized void saveTiff(ClearCLBuffer buffer, String path) throws IOException {
+        if (!CLIJStagingArea.canDownload(buffer)) {
+            throw new IllegalArgumentException("TIFF files can be written from 2D and 3D images with 8, 16 or 32 bit only");
+        }
+        int depth = buffer.getDimension() > 2 ? (int) buffer.getDepth() : 1;
+        ByteBuffer header = createTiffHeader((int) buffer.getWidth(), (int) buffer.getHeight(), depth, buffer.getNativeType(), ByteOrder.nativeOrder());
+        if (header.capacity() + buffer.getSizeInBytes() > MAXIMUM_TIFF_BYTES) {
+            throw new IllegalArgumentException("Images larger than 4 GB can't be saved as TIFF; save them as raw files instead");
+        }
+        save(buffer, path, header);
+    }
+
+    private void save(ClearCLBuffer buffer, String path, final ByteBuffer header) throws IOException {
+        final String key = new File(path).getAbsolutePath();
+        // a file is written by one save at a time
+        waitFor(pendingFiles.get(key));
+        final FileChannel channel = FileChannel.open(new File(path).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        long startTime = System.nanoTime();
+        final ArrayList<Future<?>> writes = new ArrayList<Future<?>>();
+        long position = 0;
+        if (header != null) {
+            writes.add(write(channel, header, 0));
+            position = header.capacity();
+        }
+        long elementSize = buffer.getNativeType().getSizeInBytes();
+        long elements = buffer.getSizeInBytes() / elementSize;
+        long elementsPerChunk = Math.max(1, CHUNK_BYTES / elementSize);
+        int chunk = 0;
+        try {
+            for (long offset = 0; offset < elements; offset += elementsPerChunk, chunk++) {
+                long length = Math.min(elementsPerChunk, elements - offset);
+                int i = chunk % 2;
+                // this staging buffer must be written before it's refilled
+                waitUntilDone(pendingWrites[i]);
+                if (staging[i] == null) {
+                    staging[i] = ByteBuffer.allocateDirect((int) (elementsPerChunk * elementSize)).order(ByteOrder.nativeOrder());
+                }
+                staging[i].clear();
+                staging[i].limit((int) (length * elementSize));
+                buffer.writeTo(staging[i], offset, length, true);
+                pendingWrites[i] = write(channel, staging[i], position);
+                writes.add(pendingWrites[i]);
+                position += length * elementSize;
+            }
+        } finally {
+            final long bytes = position;
+            final long start = startTime;
+            pendingFiles.put(key, writer.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    try {
+                        // the writes ran before on this thread; report their errors for this file
+                        for (Future<?> write : writes) {
+                            write.get();
+                        }
+                    } finally {
+                        channel.close();
+                    }
+                    if (CLIJ.debug) {
+                        double seconds = (System.nanoTime() - start) / 1000000000.0;
+                        System.out.println("Saved " + key + ": " + bytes + " bytes in " + String.format("%.3f", seconds * 1000) + " ms (" +
+                                String.format("%.2f", seconds > 0 ? bytes / seconds / 1024 / 1024 / 1024 : 0) + " GB/s)");
+                    }
+                    return null;
+                }
+            }));
+        }
+    }
+
+    private Future<?> write(final FileChannel channel, final ByteBuffer data, final long position) {
+        return writer.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                data.rewind();
+                long written = 0;
+                while (data.hasRemaining()) {
+                    written += channel.write(data, position + written);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates the header of an uncompressed TIFF file with one image file directory per slice. The pixels of the
+     * slices follow the header one after another. The first directory carries an ImageJ description, so that ImageJ
+     * opens the file as stack.
+     */
+    static ByteBuffer createTiffHeader(int width, int height, int depth, NativeTypeEnum type, ByteOrder byteOrder) {
+        int bitsPerSample = (int) type.getSizeInBytes() * 8;
+        int sampleFormat = type == NativeTypeEnum.Float ? 3 : 1;
+        long sliceBytes = (long) width * height * type.getSizeInBytes();
+
+        byte[] description = ("ImageJ=1.52a\n" + (depth > 1 ? "images=" + depth + "\nslices=" + depth + "\n" : "") + "\0").getBytes();
+        int descriptionBytes = description.length + description.length % 2;
+        int entries = 10;
+        int firstDirectoryBytes = 2 + (entries + 1) * 12 + 4;
+        int directoryBytes = 2 + entries * 12 + 4;
+        int descriptionOffset = 8 + firstDirectoryBytes;
+        int headerBytes = descriptionOffset + descriptionBytes + (depth - 1) * directoryBytes;
+
+        ByteBuffer header = ByteBuffer.allocateDirect(headerBytes).order(byteOrder);
+        header.put((byte) (byteOrder == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        header.put((byte) (byteOrder == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        header.putShort((short) 42);
+        header.putInt(8);
+
+        int directoryOffset = 8;
+        for (int z = 0; z < depth; z++) {
+            boolean first = z == 0;
+            int nextDirectoryOffset = first ? descriptionOffset + descriptionBytes : directoryOffset + directoryBytes;
+            header.position(directoryOffset);
+            header.putShort((short) (first ? entries + 1 : entries));
+            putEntry(header, 256, 4, width);
+            putEntry(header, 257, 4, height);
+            putEntry(header, 258, 3, bitsPerSample);
+            putEntry(header, 259, 3, 1);
+            putEntry(header, 262, 3, 1);
+            if (first) {
+                header.putShort((short) 270);
+                header.putShort((short) 2);
+                header.putInt(description.length);
+                header.putInt(descriptionOffset);
+            }
+            putEntry(header, 273, 4, headerBytes + z * sliceBytes);
+            putEntry(header, 277, 3, 1);
+            putEntry(header, 278, 4, height);
+            putEntry(header, 279, 4, sliceBytes);
+            putEntry(header, 339, 3, sampleFormat);
+            header.putInt(z + 1 < depth ? nextDirectoryOffset : 0);
+            if (first) {
+                header.put(description);
+            }
+            directoryOffset = nextDirectoryOffset;
+        }
+        header.clear();
+        return header;
+    }
+
+    // type 3 is SHORT, 4 is LONG; single values are stored in the entry itself
+    private static void putEntry(ByteBuffer header, int tag, int type, long value) {
+        header.putShort((short) tag);
+        header.putShort((short) type);
+        header.putInt(1);
+        if (type == 3) {
+            header.putShort((short) value);
+            header.putShort((short) 0);
+        } else {
+            header.putInt((int) value);
+        }
+    }
+
+    /**
+     * Waits until the given file is written completely, e.g. before reading it.
+     */
+    public void waitFor(String path) throws IOException {
+        waitFor(pendingFiles.get(new File(path).getAbsolutePath()));
+    }
+
+    /**
+     * Waits until all files are written completely.
+     *
+     * @return an error message if writing failed or null
+     */
+    public String waitForAll() {
+        String error = null;
+        for (String key : pendingFiles.keySet()) {
+            try {
+                waitFor(pendingFiles.remove(key));
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e.getMessage();
+                }
+            }
+        }
+        return error;
+    }
+
+    // waits without reporting errors; they're reported for the file which was written
+    private static void waitUntilDone(Future<?> future) {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // reported by the future of the file
+        }
+    }
+
+    private static void waitFor(Future<?> future) throws IOException {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+            throw new IOException("Writing failed: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -2,24 +2,46 @@ package net.haesleinhuepf.clij.macro;
 
 import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
 import net.haesleinhuepf.clij.clearcl.ClearCLImage;
-import net.haesleinhuepf.clij.clearcl.util.ElapsedTime;
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.Macro;
 import ij.WindowManager;
 import ij.gui.GenericDialog;
+import ij.io.FileInfo;
 import ij.macro.ExtensionDescriptor;
 import ij.macro.MacroExtension;
 import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
 import net.haesleinhuepf.clij.kernels.Kernels;
+import net.haesleinhuepf.clij.macro.metrics.CLIJMetrics;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * CLIJHandler
  * <p>
+ * The handler may be used by several threads at a time, e.g. by macros running in parallel. Operations on the GPU
+ * are executed one after another; methods touching images synchronize on the handler. Image names are global by
+ * default. To prevent parallel macros from colliding on image names, every thread can use its own namespace, either
+ * automatically (setPerThreadNamespaces) or explicitly by a session name (setNamespace).
+ * <p>
  * Author: @haesleinhuepf
  * December 2018
  */
@@ -27,7 +49,86 @@ public class CLIJHandler implements MacroExtension {
     static CLIJHandler instance = null;
     private CLIJMacroPluginService pluginService = null;
 
-    public static CLIJHandler getInstance() {
+    /**
+     * In SYNCHRONOUS mode, every Ext.CLIJ_* call returns after the GPU finished processing. In ASYNCHRONOUS mode,
+     * operations which only write to destination images are handed over to a worker thread and the macro continues
+     * immediately. Operations which hand results back to ImageJ (pull, reductions, reportMemory, ...) wait until
+     * all operations before have finished. In DEFERRED mode, operations which only write to destination images and
+     * releases are collected in a CLIJDeferredPipeline. It is optimized and executed when the next other operation
+     * is called.
+     */
+    public enum ExecutionMode {
+        SYNCHRONOUS,
+        ASYNCHRONOUS,
+        DEFERRED
+    }
+
+    private static final String RELEASE = "CLIJ_release";
+    private static final String CLEAR = "CLIJ_clear";
+    private static final String PUSH_ASYNC = "CLIJ_pushAsync";
+    private static final String PULL_ASYNC = "CLIJ_pullAsync";
+
+    private volatile ExecutionMode executionMode = ExecutionMode.SYNCHRONOUS;
+    private ExecutorService asynchronousExecutor = null;
+    // operations handed over to the asynchronous executor and their errors, by the thread which called them
+    private final ThreadLocal<Future<?>> lastAsynchronousOperation = new ThreadLocal<Future<?>>();
+    private final ConcurrentHashMap<Long, String> asynchronousErrors = new ConcurrentHashMap<Long, String>();
+    private final ThreadLocal<CLIJDeferredPipeline> deferredPipeline = new ThreadLocal<CLIJDeferredPipeline>() {
+        @Override
+        protected CLIJDeferredPipeline initialValue() {
+            return new CLIJDeferredPipeline();
+        }
+    };
+
+    private static final String NAMESPACE_SEPARATOR = "::";
+    private final ThreadLocal<String> namespace = new ThreadLocal<String>();
+    private volatile boolean perThreadNamespaces = false;
+    // namespace prefix of the thread which handed over the operation the asynchronous executor executes; "" is global
+    private final ThreadLocal<String> delegatedNamespacePrefix = new ThreadLocal<String>();
+
+    private final CLIJBufferPool bufferPool = new CLIJBufferPool();
+
+    // images which were moved to host memory because the memory budget was exceeded
+    private static class SpilledImage {
+        private final long[] dimensions;
+        private final NativeTypeEnum nativeType;
+        private final ByteBuffer content;
+
+        private SpilledImage(long[] dimensions, NativeTypeEnum nativeType, ByteBuffer content) {
+            this.dimensions = dimensions;
+            this.nativeType = nativeType;
+            this.content = content;
+        }
+    }
+
+    private long memoryBudget = 0;
+    private final HashMap<String, SpilledImage> spilledImages = new HashMap<String, SpilledImage>();
+    // names of images in GPU memory, least recently used first
+    private final LinkedHashMap<String, Boolean> recentlyUsedImages = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+    private long spillCount = 0;
+    private long reloadCount = 0;
+    // names and buffers of the images of the operation which is executed; they stay in GPU memory
+    private final ArrayList<Object> protectedImages = new ArrayList<Object>();
+    // names of images the transfer queue pushes or pulls at the moment; they stay in GPU memory as well
+    private final HashSet<String> transferringImages = new HashSet<String>();
+    private CLIJPointwiseFusion pointwiseFusion = null;
+    private boolean programBinaryCacheEnabled = true;
+    private int numberOfCommandQueues = 1;
+    private boolean commandQueuesAvailable = true;
+    private CLIJCommandQueues commandQueues = null;
+    // the command queues of the deferred pipeline which is executed at the moment, if any
+    private CLIJCommandQueues activeCommandQueues = null;
+    private final CLIJStagingArea stagingArea = new CLIJStagingArea();
+    private CLIJTransferQueue transferQueue = null;
+    private CLIJStackStreamer stackStreamer = null;
+    private CLIJFileLoader fileLoader = null;
+    private CLIJFileSaver fileSaver = null;
+    private volatile CLIJPipelineDescription pipelineCapture = null;
+    private final HashMap<String, CLIJPipelineReplay> pipelineReplays = new HashMap<String, CLIJPipelineReplay>();
+    private final HashMap<String, Long> pipelineReplayModificationTimes = new HashMap<String, Long>();
+    private CLIJWarmUp warmUp = null;
+
+    public static synchronized CLIJHandler getInstance() {
         if (instance == null) {
             instance = new CLIJHandler();
         }
@@ -35,7 +136,7 @@ public class CLIJHandler implements MacroExtension {
     }
 
     // CLIJ clij;
-    HashMap<String, ClearCLBuffer> bufferMap = new HashMap<String, ClearCLBuffer>();
+    ConcurrentHashMap<String, ClearCLBuffer> bufferMap = new ConcurrentHashMap<String, ClearCLBuffer>();
 
     //public void setCLIJ(CLIJ clij) {
     //    this.clij = clij;
@@ -58,132 +159,677 @@ public class CLIJHandler implements MacroExtension {
 
     @Override
     public String handleExtension(String name, Object[] args) {
-
-        ElapsedTime.measureForceOutput("Whole extension handling", () -> {
-            ArrayList<Integer> existingImageIndices = new ArrayList<Integer>();
-            HashMap<Integer, String> missingImageIndices = new HashMap<Integer, String>();
-            HashMap<Integer, String> missingImageIndicesDescriptions = new HashMap<Integer, String>();
-
-            CLIJMacroPlugin plugin = null;
-            //System.out.println("Handle Ext " + name);
+        if (pipelineCapture != null) {
             try {
-                plugin = pluginService.getCLIJMacroPlugin(name);
+                recordForCapture(name, args);
+            } catch (IllegalArgumentException e) {
+                abortWithError(name, e.getMessage());
+                return null;
+            }
+        }
+        if (perThreadNamespaces || namespace.get() != null) {
+            args = qualifyImageArguments(args, pluginService.getCLIJMacroPluginSignature(name));
+        }
+        ExecutionMode executionMode = this.executionMode;
+        if (executionMode != ExecutionMode.SYNCHRONOUS) {
+            CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(name);
+            boolean writesImagesOnly = signature != null && signature.producesImages() && !(pluginService.getCLIJMacroPlugin(name) instanceof CLIJSynchronousProcessor);
+            // the interpreter may reuse its argument array
+            if (executionMode == ExecutionMode.ASYNCHRONOUS && writesImagesOnly) {
+                enqueue(name, args.clone());
+                return null;
+            }
+            if (executionMode == ExecutionMode.DEFERRED) {
+                if (writesImagesOnly) {
+                    deferredPipeline.get().addOperation(name, args.clone(), signature);
+                    return null;
+                }
+                if (name.compareTo(RELEASE) == 0) {
+                    deferredPipeline.get().addRelease(name, qualify((String) args[0]));
+                    return null;
+                }
+            }
+        }
+        String error = waitForTransfers(name, args);
+        if (error == null && name.compareTo(CLEAR) == 0 && fileSaver != null) {
+            // saved files are complete when the macro is done
+            error = fileSaver.waitForAll();
+        }
+        if (error != null) {
+            abortWithError(name, error);
+            return null;
+        }
+        synchronize();
+        error = measuredExecuteExtension(name, args);
+        if (error != null) {
+            abortWithError(name, error);
+        }
+        return null;
+    }
 
-                //System.out.println("plugins " + CLIJHandler.getInstance().pluginService.getCLIJMethodNames().size());
+    /**
+     * Waits for asynchronous pushes and pulls of the images named in the arguments. Must not be called by a
+     * thread holding the lock of the handler.
+     */
+    private String waitForTransfers(String name, Object[] args) {
+        CLIJTransferQueue transferQueue = this.transferQueue;
+        if (transferQueue == null || !transferQueue.hasPendingTransfers() ||
+                name.compareTo(PUSH_ASYNC) == 0 || name.compareTo(PULL_ASYNC) == 0) {
+            // asynchronous transfers are ordered by the transfer queue
+            return null;
+        }
+        if (name.compareTo(CLEAR) == 0) {
+            return transferQueue.waitForAll();
+        }
+        String error = null;
+        for (Object arg : args) {
+            if (arg instanceof String) {
+                String transferError = transferQueue.waitFor(qualify((String) arg));
+                if (error == null) {
+                    error = transferError;
+                }
+            }
+        }
+        return error;
+    }
+
+    private String measuredExecuteExtension(String name, Object[] args) {
+        CLIJMetrics metrics = CLIJMetrics.getInstance();
+        boolean measure = metrics.isEnabled();
+        long startTime = measure ? System.nanoTime() : 0;
+        String error = null;
+        try {
+            error = executeExtension(name, args);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (measure) {
+            metrics.record(name, System.nanoTime() - startTime);
+        }
+        return error;
+    }
 
-                if (plugin == null) {
-                    // this should never happen, because Macro extensions do a similar check before calling this method
-                    System.out.println("Method not found: " + name);
+    private void enqueue(final String name, final Object[] args) {
+        final Long callingThread = Thread.currentThread().getId();
+        lastAsynchronousOperation.set(submitAsynchronously(new Runnable() {
+            @Override
+            public void run() {
+                if (asynchronousErrors.containsKey(callingThread)) {
+                    // the macro will be aborted at the next synchronization point; skip everything until then
                     return;
                 }
+                String error = waitForTransfers(name, args);
+                if (error == null) {
+                    error = measuredExecuteExtension(name, args);
+                }
+                if (error != null) {
+                    asynchronousErrors.put(callingThread, error);
+                }
+            }
+        }));
+    }
 
-                //System.out.println("Check method: " + name);
-                String[] pluginParameters = plugin.getParameterHelpText().split(",");
-                Object[] parsedArguments = new Object[0];
-                if (args != null) {
-                    parsedArguments = new Object[args.length];
-                    for (int i = 0; i < args.length; i++) {
-                        //System.out.println("Parsing args: " + args[i] + " " + args[i].getClass());
-                        if (args[i] instanceof Double) {
-                            //System.out.println("numeric");
-                            parsedArguments[i] = args[i];
-                        } else {
-                            if (pluginParameters[i].trim().startsWith("Image")) {
-                                //System.out.println("not numeric");
-                                ClearCLBuffer bufferImage = bufferMap.get(args[i]);
-                                if (bufferImage == null) {
-                                    //IJ.log("Warning: Image \"" + args[i] + "\" doesn't exist in GPU memory. Try this:");
-                                    //IJ.log("Ext.CLIJ_push(\"" + args[i] + "\");");
-                                    missingImageIndices.put(i, (String) args[i]);
-                                    missingImageIndicesDescriptions.put(i, pluginParameters[i]);
-                                    parsedArguments[i] = (String) args[i];
-                                } else {
-                                    existingImageIndices.add(i);
-                                    parsedArguments[i] = bufferImage;
-                                }
-                            } else {
-                                parsedArguments[i] = args[i];
-                            }
-                        }
-                        //System.out.println("Parsed args: " + parsedArguments[i + 1]);
-                    }
+    /**
+     * Hands an operation over to the asynchronous executor, which executes it in the namespace of the calling
+     * thread instead of its own one.
+     */
+    Future<?> submitAsynchronously(final Runnable operation) {
+        String prefix = getNamespacePrefix();
+        final String callerPrefix = prefix == null ? "" : prefix;
+        return getAsynchronousExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                delegatedNamespacePrefix.set(callerPrefix);
+                try {
+                    operation.run();
+                } finally {
+                    delegatedNamespacePrefix.remove();
                 }
-                // create missing images by making images as given images
-            /*if (existingImageIndices.size() > 0) {
-                for (int i : missingImageIndices.keySet()) {
-                    String nameInCache = missingImageIndices.get(i);
-                    if (bufferMap.keySet().contains(nameInCache)) {
-                        parsedArguments[i] = bufferMap.get(nameInCache);
-                    } else {
-                        parsedArguments[i] = clij.createCLBuffer((ClearCLBuffer) parsedArguments[existingImageIndices.get(0)]);
-                        bufferMap.put(nameInCache, (ClearCLBuffer) parsedArguments[i]);
-                    }
+            }
+        });
+    }
+
+    private synchronized ExecutorService getAsynchronousExecutor() {
+        if (asynchronousExecutor == null) {
+            asynchronousExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CLIJ asynchronous executor");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-            }*/
+            });
+        }
+        return asynchronousExecutor;
+    }
 
-                if (CLIJ.debug) {
-                    System.out.println("Invoking plugin " + name + " " + Arrays.toString(args));
-                }
-                plugin.setClij(CLIJ.getInstance());
-
-                // fill missing images
-                if (existingImageIndices.size() > 0) {
-                    for (int i : missingImageIndices.keySet()) {
-                        String nameInCache = missingImageIndices.get(i);
-                        String parameterDescription = missingImageIndicesDescriptions.get(i);
-                        if (parameterDescription.toLowerCase().contains("destination")) { // only generate destination images
-                            if (bufferMap.keySet().contains(nameInCache)) {
-                                parsedArguments[i] = bufferMap.get(nameInCache);
-                            } else {
-                                // copy first to hand over all parameters as they came
-                                plugin.setArgs(parsedArguments);
-                                parsedArguments[i] = CLIJHandler.getInstance().getFromCacheOrCreateByPlugin(nameInCache, plugin, (ClearCLBuffer) parsedArguments[existingImageIndices.get(0)]);
-                            }
-                        }
+    /**
+     * Executes all deferred operations of the calling thread and waits until all operations it handed over to the
+     * asynchronous executor and all fused kernels on the GPU are finished. If one of them failed, the error is shown
+     * and the macro is aborted.
+     * Must not be called by a thread holding the lock of the handler.
+     */
+    public void synchronize() {
+        executeDeferredPipeline();
+        waitForAsynchronousOperations();
+        synchronized (this) {
+            // fused kernels are enqueued without waiting for them
+            if (pointwiseFusion != null) {
+                pointwiseFusion.finish();
+            }
+        }
+    }
+
+    private void waitForAsynchronousOperations() {
+        Future<?> lastOperation = lastAsynchronousOperation.get();
+        if (lastOperation == null) {
+            return;
+        }
+        lastAsynchronousOperation.remove();
+        try {
+            // the executor runs operations in order; if the last one is done, all are done
+            lastOperation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        String error = asynchronousErrors.remove(Thread.currentThread().getId());
+        if (error != null) {
+            abortWithError("CLIJ", error);
+        }
+    }
+
+    private void executeDeferredPipeline() {
+        CLIJDeferredPipeline deferredPipeline = this.deferredPipeline.get();
+        if (deferredPipeline.isEmpty()) {
+            return;
+        }
+        int numberOfCollectedOperations = deferredPipeline.size();
+        ArrayList<CLIJDeferredPipeline.Operation> operations = deferredPipeline.schedule();
+        deferredPipeline.clear();
+        if (CLIJ.debug) {
+            System.out.println("Executing " + operations.size() + " of " + numberOfCollectedOperations + " deferred operations");
+        }
+
+        String error = transferQueue == null ? null : transferQueue.waitForAll();
+        if (error == null) {
+            error = executeDeferredOperations(operations);
+        }
+        if (error != null) {
+            abortWithError("CLIJ", error);
+        }
+    }
+
+    private synchronized String executeDeferredOperations(ArrayList<CLIJDeferredPipeline.Operation> operations) {
+        activeCommandQueues = numberOfCommandQueues > 1 ? getCommandQueues(CLIJ.getInstance()) : null;
+        if (activeCommandQueues != null) {
+            activeCommandQueues.begin();
+        }
+        try {
+            int i = 0;
+            while (i < operations.size()) {
+                int numberOfFusedOperations;
+                try {
+                    numberOfFusedOperations = executeFusedPointwiseChain(operations, i);
+                } finally {
+                    protectedImages.clear();
+                }
+                if (numberOfFusedOperations > 0) {
+                    i += numberOfFusedOperations;
+                    continue;
+                }
+                CLIJDeferredPipeline.Operation operation = operations.get(i);
+                if (operation.isRelease()) {
+                    // image names of deferred operations are qualified already
+                    releaseQualifiedBuffer(operation.getWrites()[0]);
+                } else {
+                    ClearCLBuffer[][] readsAndWrites = activeCommandQueues == null ? null : getBuffersReadAndWritten(operation);
+                    if (readsAndWrites != null) {
+                        activeCommandQueues.waitFor(readsAndWrites[0], readsAndWrites[1]);
+                    }
+                    String error = measuredExecuteExtension(operation.getName(), operation.getArgs());
+                    if (error != null) {
+                        return error;
+                    }
+                    if (readsAndWrites != null) {
+                        // destinations exist now
+                        readsAndWrites = getBuffersReadAndWritten(operation);
+                        activeCommandQueues.markUsed(readsAndWrites[0], readsAndWrites[1]);
                     }
                 }
+                i++;
+            }
+            return null;
+        } finally {
+            if (activeCommandQueues != null) {
+                activeCommandQueues.join();
+                activeCommandQueues = null;
+            }
+        }
+    }
+
+    // the buffers a deferred operation on the default queue reads and writes, including images written in place
+    private ClearCLBuffer[][] getBuffersReadAndWritten(CLIJDeferredPipeline.Operation operation) {
+        CLIJMacroPlugin plugin = pluginService.getCLIJMacroPlugin(operation.getName());
+        CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(operation.getName());
+        Object[] args = operation.getArgs();
+        ArrayList<ClearCLBuffer> reads = new ArrayList<ClearCLBuffer>();
+        ArrayList<ClearCLBuffer> writes = new ArrayList<ClearCLBuffer>();
+        for (int i = 0; i < args.length && i < signature.getNumberOfParameters(); i++) {
+            if (signature.isImage(i) && args[i] instanceof String && bufferMap.containsKey(args[i])) {
+                if (writesImage(plugin, signature, i)) {
+                    writes.add(bufferMap.get(args[i]));
+                } else {
+                    reads.add(bufferMap.get(args[i]));
+                }
+            }
+        }
+        return new ClearCLBuffer[][]{reads.toArray(new ClearCLBuffer[0]), writes.toArray(new ClearCLBuffer[0])};
+    }
+
+    // returns null if all operations are executed on the default queue
+    private CLIJCommandQueues getCommandQueues(CLIJ clij) {
+        if (numberOfCommandQueues < 2 || memoryBudget > 0 || !commandQueuesAvailable) {
+            return null;
+        }
+        if (commandQueues == null || commandQueues.getContext() != clij.getClearCLContext()) {
+            closeCommandQueues();
+            try {
+                commandQueues = new CLIJCommandQueues(clij.getClearCLContext(), numberOfCommandQueues);
+            } catch (ClassCastException e) {
+                // ClearCL doesn't run on JOCL
+                commandQueuesAvailable = false;
+            } catch (LinkageError e) {
+                // JOCL isn't on the class path
+                commandQueuesAvailable = false;
+            }
+        }
+        return commandQueues;
+    }
+
+    private void closeCommandQueues() {
+        if (commandQueues != null) {
+            commandQueues.close();
+            commandQueues = null;
+        }
+    }
+
+    /**
+     * Sets the number of command queues the generated kernels of deferred pipelines are distributed on, see
+     * CLIJCommandQueues. 1, the default, executes all operations on the default queue. Queues aren't used together
+     * with a memory budget, because moving images between host and GPU memory isn't ordered with them.
+     */
+    public synchronized void setNumberOfCommandQueues(int numberOfCommandQueues) {
+        if (numberOfCommandQueues < 1) {
+            throw new IllegalArgumentException("At least one command queue is needed, " + numberOfCommandQueues + " given");
+        }
+        if (this.numberOfCommandQueues != numberOfCommandQueues) {
+            this.numberOfCommandQueues = numberOfCommandQueues;
+            // created again with the new number of queues
+            closeCommandQueues();
+        }
+    }
+
+    public int getNumberOfCommandQueues() {
+        return numberOfCommandQueues;
+    }
+
+    private CLIJPointwiseFusion getPointwiseFusion(CLIJ clij) {
+        if (pointwiseFusion == null || pointwiseFusion.getCLIJ() != clij) {
+            if (pointwiseFusion != null) {
+                pointwiseFusion.close();
+            }
+            CLIJProgramBinaryCache binaryCache = programBinaryCacheEnabled ? new CLIJProgramBinaryCache(CLIJProgramBinaryCache.getDefaultDirectory()) : null;
+            pointwiseFusion = new CLIJPointwiseFusion(clij, binaryCache);
+        }
+        return pointwiseFusion;
+    }
+
+    /**
+     * Switches storing generated kernels on disk on or off, see CLIJProgramBinaryCache. It's on by default.
+     */
+    public synchronized void setProgramBinaryCacheEnabled(boolean programBinaryCacheEnabled) {
+        if (this.programBinaryCacheEnabled != programBinaryCacheEnabled) {
+            this.programBinaryCacheEnabled = programBinaryCacheEnabled;
+            // created again with or without cache
+            if (pointwiseFusion != null) {
+                pointwiseFusion.close();
+                pointwiseFusion = null;
+            }
+        }
+    }
+
+    public boolean isProgramBinaryCacheEnabled() {
+        return programBinaryCacheEnabled;
+    }
+
+    /**
+     * Compiles the kernels of the modules called in the given macro in the background, for the pixel types of the
+     * open images and the images in GPU memory; see CLIJWarmUp.
+     */
+    public synchronized Future<?> warmUp(String macroText) {
+        if (warmUp == null) {
+            warmUp = new CLIJWarmUp(this);
+        }
+        LinkedHashSet<NativeTypeEnum> nativeTypes = new LinkedHashSet<NativeTypeEnum>();
+        int[] imageIds = WindowManager.getIDList();
+        if (imageIds != null) {
+            for (int imageId : imageIds) {
+                ImagePlus imp = WindowManager.getImage(imageId);
+                NativeTypeEnum nativeType = imp == null ? null : CLIJStagingArea.nativeTypeOf(imp.getBitDepth());
+                if (nativeType != null) {
+                    nativeTypes.add(nativeType);
+                }
+            }
+        }
+        for (ClearCLBuffer buffer : bufferMap.values()) {
+            nativeTypes.add(buffer.getNativeType());
+        }
+        if (nativeTypes.isEmpty()) {
+            nativeTypes.add(NativeTypeEnum.Float);
+        }
+        return warmUp.start(macroText, nativeTypes);
+    }
+
+    /**
+     * Executes the chain of CLIJPointwiseOperations starting at the given position in one generated kernel. Releases
+     * in between are executed afterwards. Intermediate images which are only read by the next operation of the
+     * chain and released later are not written at all.
+     *
+     * @return the number of executed operations or 0 if no chain of at least two operations starts there
+     */
+    private int executeFusedPointwiseChain(ArrayList<CLIJDeferredPipeline.Operation> operations, int start) {
+        ArrayList<CLIJDeferredPipeline.Operation> chain = new ArrayList<CLIJDeferredPipeline.Operation>();
+        ArrayList<CLIJDeferredPipeline.Operation> releases = new ArrayList<CLIJDeferredPipeline.Operation>();
+        ArrayList<String> releasedImages = new ArrayList<String>();
+        int end = start;
+        for (int j = start; j < operations.size(); j++) {
+            CLIJDeferredPipeline.Operation operation = operations.get(j);
+            if (operation.isRelease() && chain.size() > 0) {
+                releasedImages.add(operation.getWrites()[0]);
+                continue;
+            }
+            if (!isFusable(operation) ||
+                    (chain.size() > 0 && operation.getReads()[0].compareTo(chain.get(chain.size() - 1).getWrites()[0]) != 0) ||
+                    releasedImages.contains(operation.getReads()[0]) ||
+                    releasedImages.contains(operation.getWrites()[0])) {
+                break;
+            }
+            chain.add(operation);
+            end = j + 1;
+        }
+        if (chain.size() < 2) {
+            return 0;
+        }
+        // releases in between are executed after the fused kernel
+        for (int j = start; j < end; j++) {
+            if (operations.get(j).isRelease()) {
+                releases.add(operations.get(j));
+            }
+        }
+
+        if (memoryBudget > 0) {
+            for (CLIJDeferredPipeline.Operation operation : chain) {
+                protectedImages.add(operation.getReads()[0]);
+                protectedImages.add(operation.getWrites()[0]);
+            }
+        }
+        for (CLIJDeferredPipeline.Operation operation : chain) {
+            makeImageResident(operation.getReads()[0]);
+            makeImageResident(operation.getWrites()[0]);
+        }
+        ClearCLBuffer input = bufferMap.get(chain.get(0).getReads()[0]);
+        if (input == null || !CLIJPointwiseFusion.isSupported(input.getNativeType())) {
+            return 0;
+        }
+        long[] dimensions = input.getDimensions();
+
+        // determine pixel types the operations would produce one by one and which results need to be written
+        NativeTypeEnum[] outputTypes = new NativeTypeEnum[chain.size()];
+        boolean[] written = new boolean[chain.size()];
+        NativeTypeEnum type = input.getNativeType();
+        for (int k = 0; k < chain.size(); k++) {
+            String outputName = chain.get(k).getWrites()[0];
+            ClearCLBuffer existing = bufferMap.get(outputName);
+            if (existing != null) {
+                if (!Arrays.equals(existing.getDimensions(), dimensions) || !CLIJPointwiseFusion.isSupported(existing.getNativeType())) {
+                    return 0;
+                }
+                type = existing.getNativeType();
+            }
+            outputTypes[k] = type;
+            written[k] = k == chain.size() - 1 || !isOnlyReadByNextAndReleased(outputName, operations, chain.get(k), chain.get(k + 1));
+        }
+
+        ArrayList<CLIJPointwiseFusion.Step> steps = new ArrayList<CLIJPointwiseFusion.Step>();
+        for (int k = 0; k < chain.size(); k++) {
+            steps.add(createFusionStep(chain.get(k), outputTypes[k], written[k]));
+        }
+        CLIJ clij = CLIJ.getInstance();
+        CLIJPointwiseFusion pointwiseFusion = getPointwiseFusion(clij);
+        CLIJPointwiseFusion.Kernel kernel;
+        try {
+            kernel = pointwiseFusion.prepare(input.getNativeType(), steps);
+        } catch (Exception e) {
+            if (CLIJ.debug) {
+                e.printStackTrace();
+            }
+            return 0;
+        }
 
-                // hand over complete parameters again
-                plugin.setArgs(parsedArguments);
-
-                // check if all requested images are set.
-                boolean allImagesSet = true;
-                int i = 0;
-                for(String parameter : pluginParameters) {
-                    if (parameter.startsWith("Image")) {
-                        if (!(parsedArguments[i] instanceof ClearCLBuffer)) {
-                            String parameterName = parameter.split(" ")[1];
-                            GenericDialog gd = new GenericDialog(plugin.getName() + " Error");
-                            gd.addMessage("Error when calling " + plugin.getName() + ": " +
-                                    "The image parameter " + parameterName+ "('" + parsedArguments[i] + "') doesn't exist in GPUs memory. Consider calling\n\n" +
-                                    "Ext.CLIJ_push(\"" + parsedArguments[i] + "\");");
-                            gd.showDialog();
-
-                            if (CLIJ.debug) {
-                                System.out.println("Couldn't execute CLIJ plugin: Image '" + parameterName+ "' not found in GPU memory!");
-                            }
-                            Macro.abort();
-                            allImagesSet = false;
-                            break;
-                        }
+        // allocate the results which are written
+        ClearCLBuffer[] outputs = new ClearCLBuffer[chain.size()];
+        StringBuilder name = new StringBuilder();
+        for (int k = 0; k < chain.size(); k++) {
+            if (written[k]) {
+                String outputName = chain.get(k).getWrites()[0];
+                outputs[k] = bufferMap.get(outputName);
+                if (outputs[k] == null) {
+                    outputs[k] = createCLBuffer(clij, dimensions, outputTypes[k]);
+                    bufferMap.put(outputName, outputs[k]);
+                }
+            }
+            name.append(k == 0 ? "" : " > ").append(chain.get(k).getName());
+        }
+        if (CLIJ.debug) {
+            System.out.println("Executing fused " + name);
+        }
+
+        CLIJMetrics metrics = CLIJMetrics.getInstance();
+        boolean measure = metrics.isEnabled();
+        long startTime = measure ? System.nanoTime() : 0;
+        synchronizeBuffer(input);
+        for (ClearCLBuffer output : outputs) {
+            if (output != null) {
+                markBufferModified(output);
+            }
+        }
+        pointwiseFusion.execute(kernel, input, steps, outputs, activeCommandQueues);
+        if (measure) {
+            metrics.record(name.toString(), System.nanoTime() - startTime);
+        }
+
+        for (CLIJDeferredPipeline.Operation release : releases) {
+            releaseQualifiedBuffer(release.getWrites()[0]);
+        }
+        return end - start;
+    }
+
+    private boolean isFusable(CLIJDeferredPipeline.Operation operation) {
+        return !operation.isRelease() &&
+                operation.getReads().length == 1 &&
+                operation.getWrites().length == 1 &&
+                pluginService.getCLIJMacroPlugin(operation.getName()) instanceof CLIJPointwiseOperation;
+    }
+
+    private boolean isOnlyReadByNextAndReleased(String image, ArrayList<CLIJDeferredPipeline.Operation> operations, CLIJDeferredPipeline.Operation writer, CLIJDeferredPipeline.Operation reader) {
+        boolean released = false;
+        boolean afterReader = false;
+        for (CLIJDeferredPipeline.Operation operation : operations) {
+            afterReader = afterReader || operation == reader;
+            if (operation.isRelease()) {
+                if (operation.getWrites()[0].compareTo(image) == 0) {
+                    if (!afterReader) {
+                        // released before and created again by the writer; keep it to be safe
+                        return false;
                     }
-                    i++;
+                    released = true;
                 }
+                continue;
+            }
+            if (operation != reader && Arrays.asList(operation.getReads()).contains(image)) {
+                return false;
+            }
+            if (operation != writer && Arrays.asList(operation.getWrites()).contains(image)) {
+                return false;
+            }
+        }
+        return released;
+    }
 
-                if (allImagesSet) {
-                    if (plugin instanceof CLIJOpenCLProcessor) {
-                        ((CLIJOpenCLProcessor) plugin).executeCL();
-                    } else {
+    private CLIJPointwiseFusion.Step createFusionStep(CLIJDeferredPipeline.Operation operation, NativeTypeEnum outputType, boolean written) {
+        CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(operation.getName());
+        Object[] args = operation.getArgs();
+        int numberOfParameters = 0;
+        for (int i = 0; i < signature.getNumberOfParameters(); i++) {
+            if (!signature.isImage(i) && signature.getType(i) != CLIJMacroPluginSignature.ParameterType.STRING) {
+                numberOfParameters++;
+            }
+        }
+        float[] parameters = new float[numberOfParameters];
+        int p = 0;
+        for (int i = 0; i < signature.getNumberOfParameters() && i < args.length; i++) {
+            if (!signature.isImage(i) && signature.getType(i) != CLIJMacroPluginSignature.ParameterType.STRING) {
+                parameters[p++] = args[i] instanceof Number ? ((Number) args[i]).floatValue() : Float.parseFloat(args[i].toString());
+            }
+        }
+        String expression = ((CLIJPointwiseOperation) pluginService.getCLIJMacroPlugin(operation.getName())).getPointwiseExpression();
+        return new CLIJPointwiseFusion.Step(operation.getName(), expression, parameters, outputType, written);
+    }
+
+    /**
+     * Creates a buffer for a plugins destination image. Buffers which were released before are reused from the
+     * buffer pool if they have the same size and type. If a memory budget is set, other images are moved to host
+     * memory before, so that the new buffer fits into the budget.
+     */
+    public synchronized ClearCLBuffer createCLBuffer(CLIJ clij, long[] dimensions, NativeTypeEnum nativeType) {
+        if (memoryBudget > 0 && !bufferPool.canReuse(clij, dimensions, nativeType)) {
+            long bytes = nativeType.getSizeInBytes();
+            for (long dimension : dimensions) {
+                bytes *= dimension;
+            }
+            enforceMemoryBudget(bytes);
+        }
+        return bufferPool.acquire(clij, dimensions, nativeType);
+    }
+
+    public CLIJBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
 
-                        if (CLIJ.debug) {
-                            System.out.println("Couldn't execute CLIJ plugin!");
-                        }
+    /**
+     * Executes the deferred operations of the calling thread and waits for the operations it handed over to the
+     * asynchronous executor before switching; otherwise, they would only be executed at its next synchronization
+     * point, if there is one. Must not be called by a thread holding the lock of the handler, except by
+     * Ext.CLIJ_setExecutionMode, which is called after the handler synchronized anyway.
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        if (!Thread.holdsLock(this)) {
+            synchronize();
+        }
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Returns the number of operations the calling thread deferred and which weren't executed yet.
+     */
+    int getNumberOfDeferredOperations() {
+        return deferredPipeline.get().size();
+    }
+
+    private void abortWithError(String name, String message) {
+        GenericDialog gd = new GenericDialog(name + " Error");
+        gd.addMessage(message);
+        gd.showDialog();
+        Macro.abort();
+    }
+
+    /**
+     * Executes a plugin and returns null or an error message which should be shown to the user before the macro is
+     * aborted.
+     */
+    private synchronized String executeExtension(String name, Object[] args) {
+        CLIJMacroPlugin plugin = pluginService.getCLIJMacroPlugin(name);
+        if (plugin == null) {
+            // this should never happen, because Macro extensions do a similar check before calling this method
+            System.out.println("Method not found: " + name);
+            return null;
+        }
+        CLIJArgumentBinder binder = pluginService.getCLIJArgumentBinder(name);
+        CLIJMacroPluginSignature signature = binder.getSignature();
+
+        if (CLIJ.debug) {
+            System.out.println("Invoking plugin " + name + " " + Arrays.toString(args));
+        }
+        plugin.setClij(CLIJ.getInstance());
+
+        try {
+            if (memoryBudget > 0) {
+                protectedImages.addAll(Arrays.asList(args));
+            }
+            makeImagesResident(args, signature);
+            Object[] parsedArguments = binder.bind(args, bufferMap);
+            if (memoryBudget > 0) {
+                protectedImages.addAll(Arrays.asList(parsedArguments));
+            }
+
+            // fill missing images by making images as given images
+            int templateIndex = binder.getTemplateIndex();
+            if (templateIndex != CLIJArgumentBinder.NONE) {
+                for (int i = 0; i < parsedArguments.length; i++) {
+                    if (signature.isDestination(i) && parsedArguments[i] instanceof String) { // only generate destination images
+                        // hand over all parameters as they came
+                        plugin.setArgs(parsedArguments);
+                        parsedArguments[i] = getFromCacheOrCreateByPlugin((String) parsedArguments[i], plugin, (ClearCLBuffer) parsedArguments[templateIndex]);
                     }
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
-        });
+
+            // hand over complete parameters again
+            plugin.setArgs(parsedArguments);
+            prepareImageTwins(parsedArguments, signature, plugin);
+
+            // check if all requested images are set.
+            int missingImageIndex = binder.getFirstUnresolvedImageIndex(ClearCLBuffer.class);
+            if (missingImageIndex != CLIJArgumentBinder.NONE) {
+                String parameterName = signature.getName(missingImageIndex);
+                if (CLIJ.debug) {
+                    System.out.println("Couldn't execute CLIJ plugin: Image '" + parameterName + "' not found in GPU memory!");
+                }
+                return "Error when calling " + plugin.getName() + ": " +
+                        "The image parameter " + parameterName + "('" + parsedArguments[missingImageIndex] + "') doesn't exist in GPUs memory. Consider calling\n\n" +
+                        "Ext.CLIJ_push(\"" + parsedArguments[missingImageIndex] + "\");";
+            }
+
+            if (plugin instanceof CLIJOpenCLProcessor) {
+                ((CLIJOpenCLProcessor) plugin).executeCL();
+            } else {
+                if (CLIJ.debug) {
+                    System.out.println("Couldn't execute CLIJ plugin!");
+                }
+            }
+            // images which weren't created by the handler, e.g. converted ones, are only known afterwards
+            enforceMemoryBudget(0);
+        } finally {
+            // don't keep images alive which might be released before the next call
+            binder.clear();
+            protectedImages.clear();
+        }
         return null;
     }
 
@@ -193,7 +839,8 @@ public class CLIJHandler implements MacroExtension {
         bufferMap.put(nameInCache, buffer);
     }
 
-    ClearCLBuffer getFromCacheOrCreateByPlugin(String nameInCache, CLIJMacroPlugin plugin, ClearCLBuffer template) {
+    synchronized ClearCLBuffer getFromCacheOrCreateByPlugin(String nameInCache, CLIJMacroPlugin plugin, ClearCLBuffer template) {
+        nameInCache = qualify(nameInCache);
         if (bufferMap.containsKey(nameInCache)) {
             return bufferMap.get(nameInCache);
         } else {
@@ -203,69 +850,909 @@ public class CLIJHandler implements MacroExtension {
         }
     }
 
-    public void releaseBufferInGPU(String arg) {
-        System.out.println("Releasing buffer " + arg);
+    public synchronized void releaseBufferInGPU(String arg) {
+        releaseQualifiedBuffer(qualify(arg));
+    }
+
+    private synchronized void releaseQualifiedBuffer(String arg) {
         if (CLIJ.debug) {
             System.out.println("Releasing " + arg);
         }
+        recentlyUsedImages.remove(arg);
+        if (spilledImages.remove(arg) != null) {
+            return;
+        }
         ClearCLBuffer buffer = bufferMap.get(arg);
+        if (buffer == null) {
+            // deferred pipelines may have dropped the operation which would have created it
+            if (CLIJ.debug) {
+                System.out.println("Image " + arg + " doesn't exist in GPU memory");
+            }
+            return;
+        }
         if (bufferAsImageMap.containsKey(buffer)) {
-            System.out.println("Releasing image " + arg);
+            if (CLIJ.debug) {
+                System.out.println("Releasing image " + arg);
+            }
             ClearCLImage image = bufferAsImageMap.get(buffer);
             image.close();
             bufferAsImageMap.remove(buffer);
         }
+        staleImages.remove(buffer);
+        staleBuffers.remove(buffer);
+        pushedFingerprints.remove(buffer);
 
-
-        buffer.close();
+        releaseAfterCommandQueues(buffer);
         bufferMap.remove(arg);
     }
 
-    public void clearGPU() {
-        System.out.println("Clearing ");
+    /**
+     * Releases all images of the current namespace, or all images and the buffer pool if the calling thread doesn't
+     * use a namespace.
+     */
+    public synchronized void clearGPU() {
+        if (CLIJ.debug) {
+            System.out.println("Clearing ");
+        }
+        String prefix = getNamespacePrefix();
         ArrayList<String> keysToRelease = new ArrayList<String>();
         for (String key : bufferMap.keySet()) {
-            keysToRelease.add(key);
+            if (prefix == null || key.startsWith(prefix)) {
+                keysToRelease.add(key);
+            }
+        }
+        for (String key : spilledImages.keySet()) {
+            if (prefix == null || key.startsWith(prefix)) {
+                keysToRelease.add(key);
+            }
         }
         for (String key : keysToRelease) {
-            releaseBufferInGPU(key);
+            releaseQualifiedBuffer(key);
+        }
+        if (prefix == null) {
+            // pooled buffers are shared by all namespaces
+            bufferPool.clear();
         }
-        bufferMap.clear();
     }
 
-    public void pullFromGPU(String arg) {
-        ClearCLBuffer buffer = bufferMap.get(arg);
+    /**
+     * Sets the namespace of image names used by the calling thread. Threads using the same namespace share images;
+     * null switches back to the global namespace.
+     */
+    public void setNamespace(String namespace) {
+        if (namespace == null || namespace.length() == 0) {
+            this.namespace.remove();
+        } else {
+            this.namespace.set(namespace);
+        }
+    }
+
+    public String getNamespace() {
+        return namespace.get();
+    }
+
+    /**
+     * If switched on, every thread without explicitly set namespace uses its own namespace.
+     */
+    public void setPerThreadNamespaces(boolean perThreadNamespaces) {
+        this.perThreadNamespaces = perThreadNamespaces;
+    }
+
+    public boolean isPerThreadNamespaces() {
+        return perThreadNamespaces;
+    }
+
+    private String getNamespacePrefix() {
+        String delegatedPrefix = delegatedNamespacePrefix.get();
+        if (delegatedPrefix != null) {
+            return delegatedPrefix.length() == 0 ? null : delegatedPrefix;
+        }
+        String namespace = this.namespace.get();
+        if (namespace == null && perThreadNamespaces) {
+            namespace = "thread" + Thread.currentThread().getId();
+        }
+        return namespace == null ? null : namespace + NAMESPACE_SEPARATOR;
+    }
+
+    /**
+     * Returns the name under which the given image is stored for the calling thread.
+     */
+    String qualify(String name) {
+        String prefix = getNamespacePrefix();
+        if (prefix == null || name.startsWith(prefix)) {
+            return name;
+        }
+        return prefix + name;
+    }
+
+    private Object[] qualifyImageArguments(Object[] args, CLIJMacroPluginSignature signature) {
+        if (signature == null) {
+            return args;
+        }
+        Object[] qualifiedArgs = args.clone();
+        for (int i = 0; i < qualifiedArgs.length && i < signature.getNumberOfParameters(); i++) {
+            if (signature.isImage(i) && qualifiedArgs[i] instanceof String) {
+                qualifiedArgs[i] = qualify((String) qualifiedArgs[i]);
+            }
+        }
+        return qualifiedArgs;
+    }
+
+    /**
+     * Sets the maximum number of bytes images may occupy in GPU memory. If it is exceeded, the least recently used
+     * images are moved to host memory and moved back when they are accessed again. 0 means unlimited.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        if (activeCommandQueues != null && bytes > 0) {
+            // the rest of the deferred pipeline runs on the default queue; moving images is ordered with it
+            activeCommandQueues.join();
+            activeCommandQueues = null;
+        }
+        memoryBudget = bytes;
+        enforceMemoryBudget(0);
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    private void makeImagesResident(Object[] args, CLIJMacroPluginSignature signature) {
+        for (int i = 0; i < args.length && i < signature.getNumberOfParameters(); i++) {
+            if (signature.isImage(i) && args[i] instanceof String) {
+                makeImageResident((String) args[i]);
+            }
+        }
+    }
+
+    private void makeImageResident(String name) {
+        if (!spilledImages.isEmpty()) {
+            SpilledImage spilledImage = spilledImages.remove(name);
+            if (spilledImage != null) {
+                if (CLIJ.debug) {
+                    System.out.println("Reloading " + name + " from host memory");
+                }
+                ClearCLBuffer buffer = createCLBuffer(CLIJ.getInstance(), spilledImage.dimensions, spilledImage.nativeType);
+                spilledImage.content.rewind();
+                buffer.readFrom(spilledImage.content, true);
+                bufferMap.put(name, buffer);
+                reloadCount++;
+            }
+        }
+        if (bufferMap.containsKey(name)) {
+            recentlyUsedImages.put(name, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Frees pooled buffers and moves the least recently used images to host memory until the images in GPU memory
+     * and the given number of bytes, which are going to be allocated, fit into the budget. Images of the operation
+     * which is executed stay where they are.
+     */
+    private void enforceMemoryBudget(long additionalBytes) {
+        if (memoryBudget <= 0) {
+            return;
+        }
+        long excess = getBytesInGPUMemory() + additionalBytes - memoryBudget;
+        if (excess <= 0) {
+            return;
+        }
+        excess -= bufferPool.free(excess);
+
+        ArrayList<String> candidates = new ArrayList<String>(recentlyUsedImages.keySet());
+        for (String name : candidates) {
+            if (excess <= 0) {
+                break;
+            }
+            ClearCLBuffer buffer = bufferMap.get(name);
+            if (buffer == null || protectedImages.contains(name) || protectedImages.contains(buffer) || transferringImages.contains(name) || buffer.getSizeInBytes() > Integer.MAX_VALUE) {
+                // direct byte buffers are limited to 2 GB
+                continue;
+            }
+            excess -= buffer.getSizeInBytes();
+            if (bufferAsImageMap.containsKey(buffer)) {
+                excess -= bufferAsImageMap.get(buffer).getSizeInBytes();
+            }
+            spill(name, buffer);
+        }
+    }
+
+    private void spill(String name, ClearCLBuffer buffer) {
+        if (CLIJ.debug) {
+            System.out.println("Spilling " + name + " to host memory");
+        }
+        synchronizeBuffer(buffer);
+        ByteBuffer content = ByteBuffer.allocateDirect((int) buffer.getSizeInBytes()).order(ByteOrder.nativeOrder());
+        buffer.writeTo(content, true);
+        spilledImages.put(name, new SpilledImage(buffer.getDimensions(), buffer.getNativeType(), content));
+
+        ClearCLImage image = bufferAsImageMap.remove(buffer);
+        if (image != null) {
+            image.close();
+        }
+        staleImages.remove(buffer);
+        pushedFingerprints.remove(buffer);
+        bufferMap.remove(name);
+        recentlyUsedImages.remove(name);
+        buffer.close();
+        spillCount++;
+    }
+
+    private long getBytesInGPUMemory() {
+        long bytes = bufferPool.getPooledBytes();
+        for (ClearCLBuffer buffer : bufferMap.values()) {
+            bytes += buffer.getSizeInBytes();
+        }
+        for (ClearCLImage image : bufferAsImageMap.values()) {
+            bytes += image.getSizeInBytes();
+        }
+        return bytes;
+    }
+
+    public synchronized void pullFromGPU(String arg) {
+        String key = qualify(arg);
+        makeImageResident(key);
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer != null) {
+            synchronizeBuffer(buffer);
+            if (CLIJStagingArea.canDownload(buffer)) {
+                ImagePlus imp = stagingArea.download(buffer, arg);
+                imp.resetDisplayRange();
+                imp.show();
+                return;
+            }
+        }
         CLIJ.getInstance().show(buffer, arg);
     }
 
-    public ClearCLBuffer pushToGPU(String arg) {
+    public synchronized ClearCLBuffer pushToGPU(String arg) {
+        return pushToGPU(WindowManager.getImage(arg), arg);
+    }
+
+    /**
+     * Pushes the given image under the given name. Unchanged images and slices pushed under the same name before
+     * aren't uploaded again, unless the buffer was written on the GPU since.
+     */
+    public synchronized ClearCLBuffer pushToGPU(ImagePlus imp, String arg) {
+        if (imp.getStack().isVirtual() && CLIJStagingArea.canUpload(imp)) {
+            // don't load the whole stack from disk before uploading it
+            return pushStreamed(imp, arg, CLIJStackStreamer.DEFAULT_SLICES_PER_BATCH);
+        }
+        String key = qualify(arg);
+        imp.changes = false;
+
+        CLIJImageFingerprint fingerprint = CLIJImageFingerprint.of(imp);
+        ClearCLBuffer pushedBefore = bufferMap.get(key);
+        if (pushedBefore != null && CLIJStagingArea.canUploadDirectly(imp, pushedBefore)) {
+            // write into the existing buffer instead of allocating a temporary one
+            int[] changedSlices = getChangedSlices(fingerprint, pushedBefore);
+            if (changedSlices == null) {
+                stagingArea.upload(imp, pushedBefore);
+                markBufferModified(pushedBefore);
+            } else if (changedSlices.length > 0) {
+                stagingArea.upload(imp, pushedBefore, changedSlices);
+                markBufferModified(pushedBefore);
+            }
+            if (CLIJ.debug) {
+                System.out.println("Uploaded " + (changedSlices == null ? "all" : "" + changedSlices.length) + " slices of " + arg + " into existing buffer");
+            }
+            if (fingerprint != null) {
+                pushedFingerprints.put(pushedBefore, fingerprint);
+            }
+            recentlyUsedImages.put(key, Boolean.TRUE);
+            return pushedBefore;
+        }
+
+        if (pushedBefore != null) {
+            if (CLIJ.debug) {
+                System.out.println("Dropping image in cache.");
+            }
+            releaseQualifiedBuffer(key);
+        }
+        // the pushed image replaces an image in host memory
+        spilledImages.remove(key);
+        recentlyUsedImages.put(key, Boolean.TRUE);
+        ClearCLBuffer buffer = convertToBuffer(imp);
+        bufferMap.put(key, buffer);
+        if (fingerprint != null) {
+            pushedFingerprints.put(buffer, fingerprint);
+        }
+        return buffer;
+    }
+
+    /**
+     * Pushes a stack batch by batch of slices; reading the next batch, e.g. from disk in case of a virtual stack,
+     * overlaps the upload of the current one. Thus, the stack is never loaded into the Java heap as a whole. An
+     * existing buffer of the same size and type is overwritten.
+     */
+    public synchronized ClearCLBuffer pushStreamed(String arg, int slicesPerBatch) {
         ImagePlus imp = WindowManager.getImage(arg);
+        if (imp == null) {
+            throw new IllegalArgumentException("Image " + arg + " doesn't exist");
+        }
+        return pushStreamed(imp, arg, slicesPerBatch);
+    }
+
+    private ClearCLBuffer pushStreamed(ImagePlus imp, String arg, int slicesPerBatch) {
+        if (!CLIJStagingArea.canUpload(imp)) {
+            throw new IllegalArgumentException("Streaming supports 2D and 3D images with 8, 16 or 32 bit only: " + arg);
+        }
         imp.changes = false;
+        ClearCLBuffer buffer = getBufferForUpload(qualify(arg), CLIJStagingArea.dimensionsOf(imp), CLIJStagingArea.nativeTypeOf(imp.getBitDepth()));
+        if (stackStreamer == null) {
+            stackStreamer = new CLIJStackStreamer();
+        }
+        stackStreamer.upload(imp, buffer, slicesPerBatch);
+        markBufferModified(buffer);
+        return buffer;
+    }
+
+    // returns the buffer of the image if it has the given size and type, a new one otherwise
+    private ClearCLBuffer getBufferForUpload(String key, long[] dimensions, NativeTypeEnum nativeType) {
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer != null && (!Arrays.equals(buffer.getDimensions(), dimensions) || buffer.getNativeType() != nativeType)) {
+            releaseQualifiedBuffer(key);
+            buffer = null;
+        }
+        // the pushed image replaces an image in host memory
+        spilledImages.remove(key);
+        if (buffer == null) {
+            buffer = createCLBuffer(CLIJ.getInstance(), dimensions, nativeType);
+            bufferMap.put(key, buffer);
+        }
+        recentlyUsedImages.put(key, Boolean.TRUE);
+        return buffer;
+    }
+
+    /**
+     * Pushes an uncompressed TIFF file to GPU memory under the given name without opening it in ImageJ. The file is
+     * memory-mapped and transferred from there, see CLIJFileLoader.
+     */
+    public synchronized ClearCLBuffer pushFile(String path, String arg) throws IOException {
+        return pushFile(path, CLIJFileLoader.describeTiff(path), arg);
+    }
+
+    /**
+     * Pushes a raw file to GPU memory under the given name without opening it in ImageJ.
+     */
+    public synchronized ClearCLBuffer pushRawFile(String path, String arg, int width, int height, int depth, int bitDepth, long headerBytes, boolean littleEndian) throws IOException {
+        return pushFile(path, CLIJFileLoader.describeRaw(width, height, depth, bitDepth, headerBytes, littleEndian), arg);
+    }
+
+    private ClearCLBuffer pushFile(String path, FileInfo[] info, String arg) throws IOException {
+        if (fileSaver != null) {
+            // the file might still be written
+            fileSaver.waitFor(path);
+        }
+        ClearCLBuffer buffer = getBufferForUpload(qualify(arg), CLIJFileLoader.dimensionsOf(info), CLIJFileLoader.nativeTypeOf(info[0].fileType));
+        if (fileLoader == null) {
+            fileLoader = new CLIJFileLoader();
+        }
+        fileLoader.upload(path, info, buffer);
+        markBufferModified(buffer);
+        return buffer;
+    }
+
+    /**
+     * Writes an image into a raw file without pulling it into ImageJ. Writing the file finishes in the background,
+     * see CLIJFileSaver.
+     */
+    public synchronized void saveRaw(String arg, String path) throws IOException {
+        getFileSaver().saveRaw(getBufferForSaving(arg), path);
+    }
+
+    /**
+     * Writes an image into an uncompressed TIFF file without pulling it into ImageJ. Writing the file finishes in
+     * the background, see CLIJFileSaver.
+     */
+    public synchronized void saveTiff(String arg, String path) throws IOException {
+        getFileSaver().saveTiff(getBufferForSaving(arg), path);
+    }
+
+    private ClearCLBuffer getBufferForSaving(String arg) {
+        String key = qualify(arg);
+        makeImageResident(key);
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer == null) {
+            throw new IllegalArgumentException("Image " + arg + " doesn't exist in GPU memory");
+        }
+        synchronizeBuffer(buffer);
+        recentlyUsedImages.put(key, Boolean.TRUE);
+        return buffer;
+    }
+
+    /**
+     * Starts recording all calls into a CLIJPipelineDescription, until stopPipelineCapture is called. Calls from
+     * macros and from the menu are recorded.
+     */
+    public void startPipelineCapture() {
+        pipelineCapture = new CLIJPipelineDescription();
+    }
+
+    /**
+     * Stops recording calls and returns the validated description. Images which were written and not released are
+     * outputs of the pipeline, together with the pulled and saved ones.
+     */
+    public CLIJPipelineDescription stopPipelineCapture() {
+        CLIJPipelineDescription capture = pipelineCapture;
+        if (capture == null) {
+            throw new IllegalArgumentException("No pipeline is captured; call CLIJ_startPipelineCapture first");
+        }
+        pipelineCapture = null;
+        synchronized (capture) {
+            capture.addRemainingImagesToOutputs(pluginService);
+            capture.validate(pluginService);
+        }
+        return capture;
+    }
 
-        ClearCLBuffer temp = CLIJ.getInstance().convert(imp, ClearCLBuffer.class);
-        if (bufferMap.containsKey(arg)) {
-            ClearCLBuffer preExistingBuffer = bufferMap.get(arg);
-
-            if (
-                    temp.getWidth() == preExistingBuffer.getWidth() &&
-                            temp.getHeight() == preExistingBuffer.getHeight() &&
-                            temp.getDepth() == preExistingBuffer.getDepth() &&
-                            temp.getNativeType() == preExistingBuffer.getNativeType()
-            ) {
-                System.out.println("Overwriting image in cache.");
-                Kernels.copy(CLIJ.getInstance(), temp, preExistingBuffer);
-                temp.close();
+    /**
+     * Adds a call to the captured pipeline, if a pipeline is captured. Image names are the ones the caller used.
+     * Pushed images are inputs, pulled and saved images are outputs and every call writing images is an operation.
+     */
+    public void recordForCapture(String name, Object[] args) {
+        CLIJPipelineDescription capture = pipelineCapture;
+        if (capture == null || args == null) {
+            return;
+        }
+        synchronized (capture) {
+            if (name.compareTo("CLIJ_push") == 0 || name.compareTo(PUSH_ASYNC) == 0 || name.compareTo("CLIJ_pushStreamed") == 0) {
+                // results which are pulled and pushed again, e.g. between calls from the menu, are no inputs
+                if (!capture.getOutputs().contains(args[0])) {
+                    capture.addInput((String) args[0]);
+                }
+            } else if (name.compareTo("CLIJ_pushFile") == 0 || name.compareTo("CLIJ_pushRawFile") == 0) {
+                capture.addInput((String) args[1]);
+            } else if (name.compareTo("CLIJ_pushBatch") == 0) {
+                for (String image : ((String) args[0]).split(",")) {
+                    capture.addInput(image.trim());
+                }
+            } else if (name.compareTo("CLIJ_pull") == 0 || name.compareTo(PULL_ASYNC) == 0 || name.compareTo("CLIJ_pullTo") == 0 ||
+                    name.compareTo("CLIJ_saveRaw") == 0 || name.compareTo("CLIJ_saveTiff") == 0) {
+                capture.addOutput((String) args[0]);
+            } else if (name.compareTo("CLIJ_pullBatch") == 0) {
+                for (String image : ((String) args[0]).split(",")) {
+                    capture.addOutput(image.trim());
+                }
+            } else if (name.compareTo(RELEASE) == 0) {
+                capture.addOperation(RELEASE, new Object[]{args[0]});
             } else {
-                System.out.println("Dropping image in cache.");
-                releaseBufferInGPU(arg);
+                CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(name);
+                if (signature != null && signature.producesImages() && pluginService.getCLIJMacroPlugin(name) instanceof CLIJOpenCLProcessor) {
+                    capture.addOperation(name, args);
+                }
             }
         }
-        if (!bufferMap.containsKey(arg)) {
-            bufferMap.put(arg, temp);
-            return temp;
-        } else {
-            return bufferMap.get(arg);
+    }
+
+    /**
+     * Replays a pipeline saved by CLIJ_stopPipelineCapture on the images in GPU memory which are named like the
+     * inputs of the pipeline. The outputs are stored under their names; images of these names and the right size are
+     * overwritten. The compiled pipeline is kept until the file changes; so, replaying it again doesn't parse,
+     * validate, plan or allocate anything.
+     */
+    public synchronized void replayPipeline(String fileName) throws IOException {
+        File file = new File(fileName).getAbsoluteFile();
+        if (!file.exists()) {
+            throw new IllegalArgumentException("File " + fileName + " doesn't exist");
+        }
+        String path = file.getPath();
+        CLIJPipelineReplay replay = pipelineReplays.get(path);
+        Long modificationTime = pipelineReplayModificationTimes.get(path);
+        if (replay == null || modificationTime == null || modificationTime != file.lastModified()) {
+            if (replay != null) {
+                replay.close();
+                pipelineReplays.remove(path);
+            }
+            long lastModified = file.lastModified();
+            replay = new CLIJPipelineReplay(this, CLIJPipelineDescription.load(file));
+            pipelineReplays.put(path, replay);
+            pipelineReplayModificationTimes.put(path, lastModified);
+        }
+
+        HashMap<String, ClearCLBuffer> inputs = new HashMap<String, ClearCLBuffer>();
+        ArrayList<String> protectedNames = new ArrayList<String>();
+        try {
+            for (String input : replay.getDescription().getInputs()) {
+                String qualifiedInput = qualify(input);
+                makeImageResident(qualifiedInput);
+                if (!bufferMap.containsKey(qualifiedInput)) {
+                    throw new IllegalArgumentException("The pipeline reads the image " + input + " which doesn't exist in GPU memory. Consider calling\n\n" +
+                            "Ext.CLIJ_push(\"" + input + "\");");
+                }
+                inputs.put(input, bufferMap.get(qualifiedInput));
+                if (memoryBudget > 0) {
+                    protectedImages.add(qualifiedInput);
+                    protectedNames.add(qualifiedInput);
+                }
+            }
+            // the outputs of the replay before are overwritten instead of allocated again
+            HashMap<String, ClearCLBuffer> previousOutputs = new HashMap<String, ClearCLBuffer>();
+            for (String output : replay.getDescription().getOutputs()) {
+                String qualifiedOutput = qualify(output);
+                ClearCLBuffer buffer = bufferMap.get(qualifiedOutput);
+                if (buffer != null && !inputs.containsValue(buffer)) {
+                    previousOutputs.put(output, buffer);
+                    if (memoryBudget > 0) {
+                        protectedImages.add(qualifiedOutput);
+                        protectedNames.add(qualifiedOutput);
+                    }
+                }
+            }
+            HashMap<String, ClearCLBuffer> outputs = replay.replay(inputs, previousOutputs);
+            for (String output : outputs.keySet()) {
+                String key = qualify(output);
+                ClearCLBuffer buffer = outputs.get(output);
+                if (bufferMap.containsKey(key) && bufferMap.get(key) != buffer) {
+                    releaseQualifiedBuffer(key);
+                }
+                spilledImages.remove(key);
+                bufferMap.put(key, buffer);
+                recentlyUsedImages.put(key, Boolean.TRUE);
+                markBufferModified(buffer);
+            }
+        } finally {
+            // images protected by an enclosing macro extension call stay protected
+            for (String name : protectedNames) {
+                protectedImages.remove(name);
+            }
+        }
+    }
+
+    public synchronized CLIJFileSaver getFileSaver() {
+        if (fileSaver == null) {
+            fileSaver = new CLIJFileSaver();
+        }
+        return fileSaver;
+    }
+
+    private synchronized CLIJTransferQueue getTransferQueue() {
+        if (transferQueue == null) {
+            transferQueue = new CLIJTransferQueue(this);
+        }
+        return transferQueue;
+    }
+
+    /**
+     * Starts uploading an image in the background. Later operations using the image wait for the upload; the
+     * returned future can be used for waiting from Java. For overlapping transfers with processing, alternate
+     * between two image names, e.g. one for even and one for odd frames.
+     */
+    public Future<?> pushAsync(String arg) {
+        ImagePlus imp = WindowManager.getImage(arg);
+        if (imp == null) {
+            throw new IllegalArgumentException("Image " + arg + " doesn't exist");
+        }
+        imp.changes = false;
+        return getTransferQueue().push(imp, qualify(arg));
+    }
+
+    /**
+     * Starts downloading an image in the background and shows it when it's done. Later operations overwriting or
+     * releasing the image wait for the download.
+     */
+    public Future<?> pullAsync(String arg) {
+        return getTransferQueue().pull(qualify(arg), arg);
+    }
+
+    // called by the transfer queue before uploading; returns the buffer the image is uploaded into
+    synchronized ClearCLBuffer beginUpload(String key, long[] dimensions, NativeTypeEnum nativeType) {
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer != null && (!Arrays.equals(buffer.getDimensions(), dimensions) || buffer.getNativeType() != nativeType)) {
+            releaseQualifiedBuffer(key);
+            buffer = null;
+        }
+        // the pushed image replaces an image in host memory
+        spilledImages.remove(key);
+        if (buffer == null) {
+            buffer = createCLBuffer(CLIJ.getInstance(), dimensions, nativeType);
+            bufferMap.put(key, buffer);
+        }
+        transferringImages.add(key);
+        recentlyUsedImages.put(key, Boolean.TRUE);
+        return buffer;
+    }
+
+    // called by the transfer queue before downloading; returns the buffer with the content of the image
+    synchronized ClearCLBuffer beginDownload(String key) {
+        makeImageResident(key);
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer == null) {
+            throw new IllegalArgumentException("Image " + key + " doesn't exist in GPU memory");
         }
+        synchronizeBuffer(buffer);
+        transferringImages.add(key);
+        return buffer;
+    }
+
+    // called by the transfer queue when a transfer begun before is done or failed
+    synchronized void endTransfer(String key, ClearCLBuffer buffer, boolean upload) {
+        transferringImages.remove(key);
+        if (upload) {
+            markBufferModified(buffer);
+        }
+    }
+
+    /**
+     * Pulls an image into an existing image, e.g. to update a window in a time-lapse loop without opening a new
+     * one. If no image with the given title is open, a new one is shown.
+     *
+     * @see #pullToImagePlus(String, ImagePlus, int, int, int)
+     */
+    public synchronized void pullTo(String arg, String targetTitle, int channel, int slice, int frame) {
+        ImagePlus target = WindowManager.getImage(targetTitle);
+        if (target == null) {
+            String key = qualify(arg);
+            makeImageResident(key);
+            ClearCLBuffer buffer = bufferMap.get(key);
+            if (buffer == null) {
+                throw new IllegalArgumentException("Image " + arg + " doesn't exist in GPU memory");
+            }
+            ImagePlus imp = convertToImagePlus(buffer, targetTitle);
+            imp.resetDisplayRange();
+            imp.show();
+            return;
+        }
+        pullToImagePlus(arg, target, channel, slice, frame);
+    }
+
+    /**
+     * Writes an image into the pixel arrays of an existing ImagePlus at the given (one-based) channel and frame.
+     * A 3D image fills all slices of that position; a 2D image fills the given slice. No windows are created; an
+     * existing window is repainted. Thus, this method can be used headless.
+     */
+    public synchronized void pullToImagePlus(String arg, ImagePlus target, int channel, int slice, int frame) {
+        String key = qualify(arg);
+        makeImageResident(key);
+        ClearCLBuffer buffer = bufferMap.get(key);
+        if (buffer == null) {
+            throw new IllegalArgumentException("Image " + arg + " doesn't exist in GPU memory");
+        }
+        synchronizeBuffer(buffer);
+        int depth = buffer.getDimension() > 2 ? (int) buffer.getDepth() : 1;
+        if (buffer.getWidth() != target.getWidth() || buffer.getHeight() != target.getHeight() ||
+                buffer.getNativeType() != CLIJStagingArea.nativeTypeOf(target.getBitDepth()) ||
+                (depth > 1 && depth != target.getNSlices())) {
+            throw new IllegalArgumentException("Image " + arg + " doesn't fit into " + target.getTitle() + ": size or pixel type differ");
+        }
+        if (depth > 1) {
+            slice = 1;
+        }
+        checkPosition(target, channel, slice, frame, depth);
+
+        ImageStack stack = target.getStack();
+        int[] indices = new int[depth];
+        Object[] slicePixels = new Object[depth];
+        for (int z = 0; z < depth; z++) {
+            indices[z] = target.getStackIndex(channel, slice + z, frame);
+            slicePixels[z] = stack.getPixels(indices[z]);
+        }
+        stagingArea.download(buffer, slicePixels, target.getTitle());
+        for (int z = 0; z < depth; z++) {
+            // virtual stacks hand out copies
+            stack.setPixels(slicePixels[z], indices[z]);
+        }
+        target.changes = true;
+        if (target.getWindow() != null) {
+            target.updateAndDraw();
+        }
+    }
+
+    // getStackIndex clamps positions which are out of range; the pixels would end up in another plane
+    static void checkPosition(ImagePlus target, int channel, int slice, int frame, int depth) {
+        if (channel < 1 || channel > target.getNChannels() ||
+                slice < 1 || slice + depth - 1 > target.getNSlices() ||
+                frame < 1 || frame > target.getNFrames()) {
+            throw new IllegalArgumentException("Channel " + channel + ", slice " + slice + " and frame " + frame + " are out of range of " + target.getTitle() + ", which has " +
+                    target.getNChannels() + " channels, " + target.getNSlices() + " slices and " + target.getNFrames() + " frames");
+        }
+    }
+
+    /**
+     * Pushes many images at once, e.g. hundreds of tiles. Open images are looked up only once and all images are
+     * packed into one staging transfer, see CLIJStagingArea.uploadBatch. Images which can't be staged are pushed
+     * one by one.
+     */
+    public synchronized ClearCLBuffer[] pushBatch(String[] args) {
+        HashMap<String, ImagePlus> openImages = new HashMap<String, ImagePlus>();
+        int[] ids = WindowManager.getIDList();
+        if (ids != null) {
+            for (int id : ids) {
+                ImagePlus imp = WindowManager.getImage(id);
+                if (imp != null && !openImages.containsKey(imp.getTitle())) {
+                    openImages.put(imp.getTitle(), imp);
+                }
+            }
+        }
+
+        ClearCLBuffer[] result = new ClearCLBuffer[args.length];
+        ArrayList<ImagePlus> stagedImages = new ArrayList<ImagePlus>();
+        ArrayList<ClearCLBuffer> stagedBuffers = new ArrayList<ClearCLBuffer>();
+        ArrayList<ClearCLBuffer> protectedBuffers = new ArrayList<ClearCLBuffer>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                ImagePlus imp = openImages.get(args[i]);
+                if (imp == null) {
+                    throw new IllegalArgumentException("Image " + args[i] + " doesn't exist");
+                }
+                if (!CLIJStagingArea.canUpload(imp) || imp.getStack().isVirtual()) {
+                    // virtual stacks are streamed instead of being packed into host memory
+                    result[i] = pushToGPU(args[i]);
+                    continue;
+                }
+                imp.changes = false;
+                String key = qualify(args[i]);
+                ClearCLBuffer buffer = bufferMap.get(key);
+                if (buffer != null && !CLIJStagingArea.canUploadDirectly(imp, buffer)) {
+                    releaseQualifiedBuffer(key);
+                    buffer = null;
+                }
+                // the pushed image replaces an image in host memory
+                spilledImages.remove(key);
+                if (buffer == null) {
+                    buffer = createCLBuffer(CLIJ.getInstance(), CLIJStagingArea.dimensionsOf(imp), CLIJStagingArea.nativeTypeOf(imp.getBitDepth()));
+                    bufferMap.put(key, buffer);
+                }
+                if (memoryBudget > 0) {
+                    // must not be moved to host memory for making room for the next images of the batch
+                    protectedImages.add(buffer);
+                    protectedBuffers.add(buffer);
+                }
+                recentlyUsedImages.put(key, Boolean.TRUE);
+                stagedImages.add(imp);
+                stagedBuffers.add(buffer);
+                result[i] = buffer;
+            }
+            ClearCLBuffer[] buffers = stagedBuffers.toArray(new ClearCLBuffer[0]);
+            stagingArea.uploadBatch(stagedImages.toArray(new ImagePlus[0]), buffers);
+            for (ClearCLBuffer buffer : buffers) {
+                markBufferModified(buffer);
+            }
+            return result;
+        } finally {
+            // the entries of the batch only; the caller may protect images on its own
+            for (ClearCLBuffer buffer : protectedBuffers) {
+                protectedImages.remove(buffer);
+            }
+        }
+    }
+
+    /**
+     * Pulls many images at once and shows them. All images are packed into one staging transfer, see
+     * CLIJStagingArea.downloadBatch. Images which can't be staged are pulled one by one.
+     */
+    public synchronized void pullBatch(String[] args) {
+        ArrayList<ClearCLBuffer> stagedBuffers = new ArrayList<ClearCLBuffer>();
+        ArrayList<String> stagedTitles = new ArrayList<String>();
+        for (String arg : args) {
+            String key = qualify(arg);
+            makeImageResident(key);
+            ClearCLBuffer buffer = bufferMap.get(key);
+            if (buffer == null || !CLIJStagingArea.canDownload(buffer)) {
+                pullFromGPU(arg);
+                continue;
+            }
+            synchronizeBuffer(buffer);
+            stagedBuffers.add(buffer);
+            stagedTitles.add(arg);
+        }
+        ImagePlus[] images = stagingArea.downloadBatch(stagedBuffers.toArray(new ClearCLBuffer[0]), stagedTitles.toArray(new String[0]));
+        for (ImagePlus imp : images) {
+            imp.resetDisplayRange();
+            imp.show();
+        }
+    }
+
+    /**
+     * Runs a plugin on buffers which aren't registered under a name, e.g. on bricks of an image which doesn't fit
+     * into GPU memory. Written buffers are synchronized with their image twins afterwards.
+     */
+    public synchronized void executeOnBuffers(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, Object[] args) {
+        plugin.setClij(CLIJ.getInstance());
+        plugin.setArgs(args);
+        prepareImageTwins(args, signature, plugin);
+        ((CLIJOpenCLProcessor) plugin).executeCL();
+        for (int i = 0; i < args.length && i < signature.getNumberOfParameters(); i++) {
+            if (args[i] instanceof ClearCLBuffer && writesImage(plugin, signature, i)) {
+                synchronizeBuffer((ClearCLBuffer) args[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs a chain of pointwise operations on buffers which aren't registered under a name in one generated kernel.
+     * Only the result of the last step is written.
+     *
+     * @return false if the chain can't be fused; nothing was executed then
+     */
+    public synchronized boolean executeFusedOnBuffers(ClearCLBuffer input, List<CLIJPointwiseFusion.Step> steps, ClearCLBuffer output) {
+        CLIJ clij = CLIJ.getInstance();
+        if (!CLIJPointwiseFusion.isSupported(input.getNativeType()) || !CLIJPointwiseFusion.isSupported(output.getNativeType())) {
+            return false;
+        }
+        CLIJPointwiseFusion pointwiseFusion = getPointwiseFusion(clij);
+        CLIJPointwiseFusion.Kernel kernel;
+        try {
+            kernel = pointwiseFusion.prepare(input.getNativeType(), steps);
+        } catch (Exception e) {
+            if (CLIJ.debug) {
+                e.printStackTrace();
+            }
+            return false;
+        }
+        ClearCLBuffer[] outputs = new ClearCLBuffer[steps.size()];
+        outputs[steps.size() - 1] = output;
+        synchronizeBuffer(input);
+        markBufferModified(output);
+        pointwiseFusion.execute(kernel, input, steps, outputs);
+        return true;
+    }
+
+    /**
+     * Hands a buffer which isn't registered under a name back to the buffer pool and frees its image twin.
+     */
+    public synchronized void releaseBuffer(ClearCLBuffer buffer) {
+        ClearCLImage image = bufferAsImageMap.remove(buffer);
+        if (image != null) {
+            image.close();
+        }
+        staleImages.remove(buffer);
+        staleBuffers.remove(buffer);
+        pushedFingerprints.remove(buffer);
+        releaseAfterCommandQueues(buffer);
+    }
+
+    private void releaseAfterCommandQueues(ClearCLBuffer buffer) {
+        if (activeCommandQueues != null) {
+            // the pool may hand it to an operation on any queue next; it's ordered like a write of the default queue
+            ClearCLBuffer[] released = new ClearCLBuffer[]{buffer};
+            activeCommandQueues.waitFor(new ClearCLBuffer[0], released);
+            activeCommandQueues.markUsed(new ClearCLBuffer[0], released);
+        }
+        bufferPool.release(buffer);
+    }
+
+    /**
+     * Converts an image to a new buffer. Plain 8, 16 and 32 bit images are uploaded through the staging area into
+     * a buffer from the buffer pool.
+     */
+    public synchronized ClearCLBuffer convertToBuffer(ImagePlus imp) {
+        CLIJ clij = CLIJ.getInstance();
+        if (!CLIJStagingArea.canUpload(imp)) {
+            return clij.convert(imp, ClearCLBuffer.class);
+        }
+        ClearCLBuffer buffer = createCLBuffer(clij, CLIJStagingArea.dimensionsOf(imp), CLIJStagingArea.nativeTypeOf(imp.getBitDepth()));
+        stagingArea.upload(imp, buffer);
+        return buffer;
+    }
+
+    /**
+     * Converts a buffer to a new image. 2D and 3D buffers of 8, 16 and 32 bit pixels are downloaded through the
+     * staging area.
+     */
+    public synchronized ImagePlus convertToImagePlus(ClearCLBuffer buffer, String title) {
+        synchronizeBuffer(buffer);
+        if (!CLIJStagingArea.canDownload(buffer)) {
+            ImagePlus imp = CLIJ.getInstance().convert(buffer, ImagePlus.class);
+            imp.setTitle(title);
+            return imp;
+        }
+        return stagingArea.download(buffer, title);
+    }
+
+    public CLIJStagingArea getStagingArea() {
+        return stagingArea;
+    }
+
+    /**
+     * Returns the slices which changed since the image was pushed into the given buffer or null if that isn't
+     * known.
+     */
+    private int[] getChangedSlices(CLIJImageFingerprint fingerprint, ClearCLBuffer buffer) {
+        CLIJImageFingerprint previous = pushedFingerprints.get(buffer);
+        if (fingerprint == null || previous == null || !previous.hasSameShape(fingerprint)) {
+            return null;
+        }
+        return previous.getChangedSlices(fingerprint);
     }
 
     @Override
@@ -285,7 +1772,7 @@ public class CLIJHandler implements MacroExtension {
         return extensions;
     }
 
-    public String reportGPUMemory() {
+    public synchronized String reportGPUMemory() {
         StringBuilder stringBuilder = new StringBuilder();
         long bytesSum = 0;
         boolean foundBufferAsImage = false;
@@ -303,8 +1790,21 @@ public class CLIJHandler implements MacroExtension {
         }
         stringBuilder.append("= " + humanReadableBytes(bytesSum) +"\n");
         if (foundBufferAsImage) {
-            stringBuilder.append("* some images are stored twice for technical reasons.\n");
+            stringBuilder.append("* some images are stored twice for technical reasons; they were synchronized " + imageTwinCopyCount + " times.\n");
         }
+        if (memoryBudget > 0 || spillCount > 0) {
+            long spilledBytes = 0;
+            for (String key : spilledImages.keySet()) {
+                SpilledImage spilledImage = spilledImages.get(key);
+                stringBuilder.append("- " + key + " (in host memory) " + humanReadableBytes(spilledImage.content.capacity()) + "\n");
+                spilledBytes = spilledBytes + spilledImage.content.capacity();
+            }
+            stringBuilder.append(spilledImages.size() + " images (" + humanReadableBytes(spilledBytes) + ") are in host memory because of the memory budget of " + humanReadableBytes(memoryBudget) + ".\n");
+            stringBuilder.append("Images were moved to host memory " + spillCount + " times and back " + reloadCount + " times.\n");
+        }
+        stringBuilder.append("Buffer pool contains " + bufferPool.getNumberOfPooledBuffers() + " released buffers (" +
+                humanReadableBytes(bufferPool.getPooledBytes()) + " of maximum " + humanReadableBytes(bufferPool.getMaximumBytes()) + "); " +
+                bufferPool.getReuseCount() + " buffers were reused, " + bufferPool.getCreationCount() + " created.\n");
 
         return stringBuilder.toString();
     }
@@ -327,19 +1827,116 @@ public class CLIJHandler implements MacroExtension {
         return bytesSum + " b";
     }
 
-    HashMap<ClearCLBuffer, ClearCLImage> bufferAsImageMap = new HashMap<ClearCLBuffer, ClearCLImage>();
+    ConcurrentHashMap<ClearCLBuffer, ClearCLImage> bufferAsImageMap = new ConcurrentHashMap<ClearCLBuffer, ClearCLImage>();
     //public void cacheImageWithBuffer(ClearCLBuffer buffer, ClearCLImage image) {
     //
     //}
-    public ClearCLImage getChachedImageByBuffer(ClearCLBuffer buffer) {
-        if (bufferAsImageMap.containsKey(buffer)) {
-            ClearCLImage image = bufferAsImageMap.get(buffer);
-            System.out.println("Found the buffer, return its image");
-            Kernels.copy(CLIJ.getInstance(), buffer, image);
+    // buffers whose image twin is older than the buffer and vice versa
+    private final HashSet<ClearCLBuffer> staleImages = new HashSet<ClearCLBuffer>();
+    private final HashSet<ClearCLBuffer> staleBuffers = new HashSet<ClearCLBuffer>();
+    private long imageTwinCopyCount = 0;
+    // content of buffers as they were pushed; buffers written on the GPU afterwards don't have one
+    private final HashMap<ClearCLBuffer, CLIJImageFingerprint> pushedFingerprints = new HashMap<ClearCLBuffer, CLIJImageFingerprint>();
+
+    public synchronized ClearCLImage getChachedImageByBuffer(ClearCLBuffer buffer) {
+        return getChachedImageByBuffer(buffer, true);
+    }
+
+    /**
+     * Returns the ClearCLImage twin of a buffer, e.g. for operations which need image samplers. The buffer content
+     * is only copied into the image if it changed since the last call.
+     *
+     * @param contentRequired false if the image is going to be overwritten anyway, e.g. because it's a destination
+     */
+    public synchronized ClearCLImage getChachedImageByBuffer(ClearCLBuffer buffer, boolean contentRequired) {
+        ClearCLImage image = bufferAsImageMap.get(buffer);
+        if (image != null) {
+            if (CLIJ.debug) {
+                System.out.println("Found the buffer, return its image");
+            }
+            if (staleImages.remove(buffer) && contentRequired) {
+                Kernels.copy(CLIJ.getInstance(), buffer, image);
+                imageTwinCopyCount++;
+            }
             return image;
         }
-        ClearCLImage image = CLIJ.getInstance().convert(buffer, ClearCLImage.class);
+        enforceMemoryBudget(buffer.getSizeInBytes());
+        image = CLIJ.getInstance().convert(buffer, ClearCLImage.class);
         bufferAsImageMap.put(buffer, image);
         return image;
     }
+
+    /**
+     * Tells the handler that the image twin of a buffer was written. The buffer isn't updated immediately but
+     * before it's read by another operation, pulled or spilled. Java code reading the buffer directly calls
+     * synchronizeBuffer before.
+     */
+    public synchronized void markImageModified(ClearCLBuffer buffer) {
+        pushedFingerprints.remove(buffer);
+        if (bufferAsImageMap.containsKey(buffer)) {
+            staleImages.remove(buffer);
+            staleBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * Tells the handler that a buffer was written; its image twin is updated the next time it's requested.
+     */
+    public synchronized void markBufferModified(ClearCLBuffer buffer) {
+        // the buffer doesn't correspond to the pushed image anymore
+        pushedFingerprints.remove(buffer);
+        if (bufferAsImageMap.containsKey(buffer)) {
+            staleBuffers.remove(buffer);
+            staleImages.add(buffer);
+        }
+    }
+
+    /**
+     * Copies the image twin of a buffer back into the buffer if it was written since the last synchronization.
+     */
+    public synchronized void synchronizeBuffer(ClearCLBuffer buffer) {
+        if (staleBuffers.remove(buffer)) {
+            if (CLIJ.debug) {
+                System.out.println("Synchronizing buffer with its image");
+            }
+            ClearCLBuffer[] written = new ClearCLBuffer[]{buffer};
+            if (activeCommandQueues != null) {
+                activeCommandQueues.waitFor(new ClearCLBuffer[0], written);
+            }
+            Kernels.copy(CLIJ.getInstance(), bufferAsImageMap.get(buffer), buffer);
+            if (activeCommandQueues != null) {
+                activeCommandQueues.markUsed(new ClearCLBuffer[0], written);
+            }
+            imageTwinCopyCount++;
+        }
+    }
+
+    /**
+     * Returns true if the plugin writes the image parameter with the given index: its destinations or, if it has
+     * none, all its images unless it's a CLIJReadOnlyProcessor. E.g. CLIJ_set writes its image in place.
+     */
+    static boolean writesImage(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, int index) {
+        if (signature.producesImages()) {
+            return signature.isDestination(index);
+        }
+        return signature.isImage(index) && !(plugin instanceof CLIJReadOnlyProcessor);
+    }
+
+    // source buffers are synchronized unless the plugin reads their image twins; written buffers are marked
+    private void prepareImageTwins(Object[] args, CLIJMacroPluginSignature signature, CLIJMacroPlugin plugin) {
+        if (bufferAsImageMap.isEmpty() && pushedFingerprints.isEmpty()) {
+            return;
+        }
+        boolean usesImageTwins = plugin instanceof CLIJImageTwinProcessor;
+        for (int i = 0; i < args.length && i < signature.getNumberOfParameters(); i++) {
+            if (args[i] instanceof ClearCLBuffer && !signature.isDestination(i) && !usesImageTwins) {
+                synchronizeBuffer((ClearCLBuffer) args[i]);
+            }
+        }
+        for (int i = 0; i < args.length && i < signature.getNumberOfParameters(); i++) {
+            if (args[i] instanceof ClearCLBuffer && writesImage(plugin, signature, i)) {
+                markBufferModified((ClearCLBuffer) args[i]);
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * CLIJImageFingerprint summarizes the content of an ImagePlus by one checksum per slice. The CLIJHandler keeps the
+ * fingerprint of every pushed image; pushing it again only uploads the slices whose checksum changed. Computing the
+ * checksums reads the pixels once in host memory, which is much cheaper than transferring them to the GPU.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJImageFingerprint {
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final long[] sliceChecksums;
+
+    CLIJImageFingerprint(int width, int height, int bitDepth, long[] sliceChecksums) {
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.sliceChecksums = sliceChecksums;
+    }
+
+    /**
+     * Returns the fingerprint of the given image or null if it can't be fingerprinted cheaply, e.g. because it's
+     * a hyperstack or a virtual stack, whose slices are read from disk, or of an unknown pixel type. Images without
+     * fingerprint are uploaded completely.
+     */
+    public static CLIJImageFingerprint of(ImagePlus imp) {
+        if (imp.getNChannels() > 1 || imp.getNFrames() > 1) {
+            return null;
+        }
+        ImageStack stack = imp.getStack();
+        if (stack == null || stack.isVirtual()) {
+            return null;
+        }
+        long[] sliceChecksums = new long[stack.getSize()];
+        for (int z = 0; z < sliceChecksums.length; z++) {
+            Object pixels = stack.getPixels(z + 1);
+            if (!canChecksum(pixels)) {
+                return null;
+            }
+            sliceChecksums[z] = checksum(pixels);
+        }
+        return new CLIJImageFingerprint(imp.getWidth(), imp.getHeight(), imp.getBitDepth(), sliceChecksums);
+    }
+
+    static boolean canChecksum(Object pixels) {
+        return pixels instanceof byte[] || pixels instanceof short[] || pixels instanceof float[] || pixels instanceof int[];
+    }
+
+    /**
+     * Returns a 64 bit FNV-1a like checksum of a pixel array.
+     *
+     * @throws IllegalArgumentException if the pixel type isn't supported, see canChecksum
+     */
+    static long checksum(Object pixels) {
+        long hash = 0xcbf29ce484222325L;
+        final long prime = 0x100000001b3L;
+        if (pixels instanceof byte[]) {
+            for (byte value : (byte[]) pixels) {
+                hash = (hash ^ value) * prime;
+            }
+        } else if (pixels instanceof short[]) {
+            for (short value : (short[]) pixels) {
+                hash = (hash ^ value) * prime;
+            }
+        } else if (pixels instanceof float[]) {
+            for (float value : (float[]) pixels) {
+                hash = (hash ^ Float.floatToRawIntBits(value)) * prime;
+            }
+        } else if (pixels instanceof int[]) {
+            for (int value : (int[]) pixels) {
+                hash = (hash ^ value) * prime;
+            }
+        } else {
+            throw new IllegalArgumentException("Pixels of type " + (pixels == null ? null : pixels.getClass().getSimpleName()) + " can't be fingerprinted");
+        }
+        return hash;
+    }
+
+    public boolean hasSameShape(CLIJImageFingerprint other) {
+        return width == other.width &&
+                height == other.height &&
+                bitDepth == other.bitDepth &&
+                sliceChecksums.length == other.sliceChecksums.length;
+    }
+
+    /**
+     * Returns the indices of the slices which differ between both fingerprints; both must have the same shape.
+     */
+    public int[] getChangedSlices(CLIJImageFingerprint other) {
+        int count = 0;
+        for (int z = 0; z < sliceChecksums.length; z++) {
+            if (sliceChecksums[z] != other.sliceChecksums[z]) {
+                count++;
+            }
+        }
+        int[] changedSlices = new int[count];
+        int i = 0;
+        for (int z = 0; z < sliceChecksums.length; z++) {
+            if (sliceChecksums[z] != other.sliceChecksums[z]) {
+                changedSlices[i++] = z;
+            }
+        }
+        return changedSlices;
+    }
+
+    public int getNumberOfSlices() {
+        return sliceChecksums.length;
+    }
+}
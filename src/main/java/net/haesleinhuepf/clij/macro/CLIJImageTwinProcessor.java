@@ -0,0 +1,13 @@
+package net.haesleinhuepf.clij.macro;
+
+/**
+ * CLIJImageTwinProcessor marks plugins which process their buffers through the ClearCLImage twins cached by the
+ * CLIJHandler (getChachedImageByBuffer) and call markImageModified on the images they write instead of copying
+ * them back. The CLIJHandler then doesn't synchronize the buffers before calling them; it does so lazily when a
+ * buffer is read by another operation, pulled or spilled.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public interface CLIJImageTwinProcessor {
+}
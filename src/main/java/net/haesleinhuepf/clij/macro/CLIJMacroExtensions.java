@@ -33,6 +33,7 @@ public class CLIJMacroExtensions implements Command {
 
         GenericDialog gd = new GenericDialog("CLIJ");
         gd.addChoice("CL_Device", deviceArray, deviceArray[0]);
+        gd.addStringField("Warm_up_macro (optional)", "");
         gd.showDialog();
 
         if (gd.wasCanceled()) {
@@ -41,6 +42,7 @@ public class CLIJMacroExtensions implements Command {
 
         // macro extensions and converters must use the same CLIJ instance in order to make everything run on the same GPU.
         CLIJ clij = CLIJ.getInstance(gd.getNextChoice());
+        String warmUpMacro = gd.getNextString().trim();
         //CLIJHandler.getInstance().setCLIJ(clij);
         clijConverterService.setCLIJ(clij);
         clij.setConverterService(clijConverterService);
@@ -50,5 +52,10 @@ public class CLIJMacroExtensions implements Command {
             return;
         }
         Functions.registerExtensions(CLIJHandler.getInstance());
+
+        // kernels of the given macro are compiled in the background while it starts running
+        if (warmUpMacro.length() > 0) {
+            CLIJHandler.getInstance().warmUp(CLIJWarmUp.readMacro(warmUpMacro));
+        }
     }
 }
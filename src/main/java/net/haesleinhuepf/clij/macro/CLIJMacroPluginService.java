@@ -2,7 +2,6 @@ package net.haesleinhuepf.clij.macro;
 
 
 import ij.macro.ExtensionDescriptor;
-import ij.macro.MacroExtension;
 import net.imagej.ImageJService;
 import org.scijava.plugin.AbstractPTService;
 import org.scijava.plugin.Plugin;
@@ -11,19 +10,26 @@ import org.scijava.service.Service;
 
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Plugin(type = Service.class)
 public class CLIJMacroPluginService  extends AbstractPTService<CLIJMacroPlugin> implements ImageJService {
 
     private HashMap<String, PluginInfo<CLIJMacroPlugin>> clijPlugins = new HashMap<>();
 
+    // plugin instances and their parsed signatures are created once and reused for every call; the macro thread
+    // and the asynchronous executor of the CLIJHandler look them up concurrently
+    private ConcurrentHashMap<String, CLIJMacroPlugin> pluginInstances = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CLIJMacroPluginSignature> pluginSignatures = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CLIJArgumentBinder> argumentBinders = new ConcurrentHashMap<>();
+
     @Override
     public void initialize() {
         CLIJHandler.getInstance().setPluginService(this);
     }
 
-    private boolean initialized = false;
-    private void initializeService() {
+    private volatile boolean initialized = false;
+    private synchronized void initializeService() {
         if (initialized) {
             return;
         }
@@ -39,12 +45,21 @@ public class CLIJMacroPluginService  extends AbstractPTService<CLIJMacroPlugin>
     }
 
     public Set<String> getCLIJMethodNames() {
-        initializeService();
+        if (!initialized) {
+            initializeService();
+        }
         return clijPlugins.keySet();
     }
 
     public CLIJMacroPlugin getCLIJMacroPlugin(final String name) {
-        initializeService();
+        if (!initialized) {
+            initializeService();
+        }
+
+        CLIJMacroPlugin plugin = pluginInstances.get(name);
+        if (plugin != null) {
+            return plugin;
+        }
 
         final PluginInfo<CLIJMacroPlugin> info = clijPlugins.get(name);
 
@@ -53,38 +68,61 @@ public class CLIJMacroPluginService  extends AbstractPTService<CLIJMacroPlugin>
             return null;
         }
 
-        return pluginService().createInstance(info);
+        plugin = pluginService().createInstance(info);
+        if (plugin != null) {
+            // another thread might have been faster
+            CLIJMacroPlugin existing = pluginInstances.putIfAbsent(name, plugin);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return plugin;
+    }
+
+    public CLIJMacroPluginSignature getCLIJMacroPluginSignature(final String name) {
+        CLIJMacroPluginSignature signature = pluginSignatures.get(name);
+        if (signature != null) {
+            return signature;
+        }
+
+        CLIJMacroPlugin plugin = getCLIJMacroPlugin(name);
+        if (plugin == null) {
+            return null;
+        }
+
+        signature = CLIJMacroPluginSignature.parse(plugin.getParameterHelpText());
+        pluginSignatures.put(name, signature);
+        return signature;
+    }
+
+    public CLIJArgumentBinder getCLIJArgumentBinder(final String name) {
+        CLIJArgumentBinder binder = argumentBinders.get(name);
+        if (binder != null) {
+            return binder;
+        }
+
+        CLIJMacroPluginSignature signature = getCLIJMacroPluginSignature(name);
+        if (signature == null) {
+            return null;
+        }
+
+        binder = new CLIJArgumentBinder(signature);
+        CLIJArgumentBinder existing = argumentBinders.putIfAbsent(name, binder);
+        return existing != null ? existing : binder;
     }
 
     public ExtensionDescriptor getPluginExtensionDescriptor(String name){
-        initializeService();
+        if (!initialized) {
+            initializeService();
+        }
 
-        final PluginInfo<CLIJMacroPlugin> info = clijPlugins.get(name);
+        final CLIJMacroPluginSignature signature = getCLIJMacroPluginSignature(name);
 
-        if (info == null) {
+        if (signature == null) {
             throw new IllegalArgumentException("No plugin of that name");
         }
 
-        final CLIJMacroPlugin plugin = pluginService().createInstance(info);
-
-        String[] parameters = plugin.getParameterHelpText().split(",");
-        int[] parameterTypes = new int[0];
-
-        if (parameters.length > 1 || parameters[0].length() > 0) {
-            parameterTypes = new int[parameters.length];
-            int i = 0;
-            for (String parameter : parameters) {
-                if (parameter.trim().startsWith("Image")) {
-                    parameterTypes[i] = MacroExtension.ARG_STRING;
-                } else if (parameter.trim().startsWith("String")) {
-                    parameterTypes[i] = MacroExtension.ARG_STRING;
-                } else {
-                    parameterTypes[i] = MacroExtension.ARG_NUMBER;
-                }
-                i++;
-            }
-        }
-        return new ExtensionDescriptor(name, parameterTypes, CLIJHandler.getInstance());
+        return new ExtensionDescriptor(name, signature.getExtensionArgumentTypes(), CLIJHandler.getInstance());
     }
 
     @Override
@@ -93,10 +131,12 @@ public class CLIJMacroPluginService  extends AbstractPTService<CLIJMacroPlugin>
     }
 
     public String getNameByClass(Class<? extends AbstractCLIJPlugin> aClass) {
-        initializeService();
+        if (!initialized) {
+            initializeService();
+        }
 
         for (String name : getCLIJMethodNames()) {
-            if (getCLIJMacroPlugin(name).getClass() == aClass) {
+            if (clijPlugins.get(name).getClassName().compareTo(aClass.getName()) == 0) {
                 return name;
             }
         }
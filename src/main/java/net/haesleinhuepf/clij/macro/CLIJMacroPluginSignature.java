@@ -0,0 +1,113 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.macro.MacroExtension;
+
+/**
+ * CLIJMacroPluginSignature is the parsed form of a plugins parameter help text, e.g.
+ * "Image source, Image destination, Number sigma". It is built once per plugin by the
+ * CLIJMacroPluginService and reused for every call, so that dispatching a macro call doesn't
+ * need to split strings anymore.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJMacroPluginSignature {
+
+    public enum ParameterType {
+        IMAGE,
+        STRING,
+        NUMBER,
+        BOOLEAN
+    }
+
+    private final ParameterType[] types;
+    private final String[] names;
+    private final boolean[] destinations;
+    private final int[] extensionArgumentTypes;
+    private final boolean producesImages;
+
+    private CLIJMacroPluginSignature(ParameterType[] types, String[] names, boolean[] destinations) {
+        this.types = types;
+        this.names = names;
+        this.destinations = destinations;
+
+        extensionArgumentTypes = new int[types.length];
+        boolean anyDestination = false;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == ParameterType.IMAGE || types[i] == ParameterType.STRING) {
+                extensionArgumentTypes[i] = MacroExtension.ARG_STRING;
+            } else {
+                extensionArgumentTypes[i] = MacroExtension.ARG_NUMBER;
+            }
+            if (types[i] == ParameterType.IMAGE && destinations[i]) {
+                anyDestination = true;
+            }
+        }
+        producesImages = anyDestination;
+    }
+
+    public static CLIJMacroPluginSignature parse(String parameterHelpText) {
+        if (parameterHelpText == null || parameterHelpText.trim().length() == 0) {
+            return new CLIJMacroPluginSignature(new ParameterType[0], new String[0], new boolean[0]);
+        }
+
+        String[] parameters = parameterHelpText.split(",");
+        ParameterType[] types = new ParameterType[parameters.length];
+        String[] names = new String[parameters.length];
+        boolean[] destinations = new boolean[parameters.length];
+
+        for (int i = 0; i < parameters.length; i++) {
+            String[] parameterParts = parameters[i].trim().split(" ");
+            String parameterType = parameterParts[0];
+            String parameterName = parameterParts.length > 1 ? parameterParts[1] : parameterParts[0];
+
+            if (parameterType.compareTo("Image") == 0) {
+                types[i] = ParameterType.IMAGE;
+                destinations[i] = parameterName.toLowerCase().contains("destination");
+            } else if (parameterType.compareTo("String") == 0) {
+                types[i] = ParameterType.STRING;
+            } else if (parameterType.compareTo("Boolean") == 0) {
+                types[i] = ParameterType.BOOLEAN;
+            } else {
+                types[i] = ParameterType.NUMBER;
+            }
+            names[i] = parameterName;
+        }
+        return new CLIJMacroPluginSignature(types, names, destinations);
+    }
+
+    public int getNumberOfParameters() {
+        return types.length;
+    }
+
+    public ParameterType getType(int index) {
+        return types[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public boolean isImage(int index) {
+        return types[index] == ParameterType.IMAGE;
+    }
+
+    public boolean isDestination(int index) {
+        return destinations[index];
+    }
+
+    /**
+     * Returns true if at least one parameter is a destination image.
+     */
+    public boolean producesImages() {
+        return producesImages;
+    }
+
+    /**
+     * Returns the argument types as ImageJs MacroExtension expects them: ARG_STRING for images and strings,
+     * ARG_NUMBER for numbers and booleans.
+     */
+    public int[] getExtensionArgumentTypes() {
+        return extensionArgumentTypes.clone();
+    }
+}
@@ -0,0 +1,17 @@
+package net.haesleinhuepf.clij.macro;
+
+/**
+ * CLIJNeighborhoodOperation is implemented by plugins with the signature "Image source, Image destination, Number ..."
+ * whose result pixel only depends on source pixels within a limited neighborhood. The destination has the same size
+ * as the source. Images which don't fit into GPU memory can then be processed brick by brick by the
+ * CLIJTiledExecutor; neighboring bricks overlap by the halo.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public interface CLIJNeighborhoodOperation {
+    /**
+     * Returns the radius of the neighborhood in X, Y and Z in pixels for the parameters set by setArgs.
+     */
+    int[] getHalo();
+}
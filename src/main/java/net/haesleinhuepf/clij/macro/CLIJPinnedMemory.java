@@ -0,0 +1,82 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.clearcl.ClearCLContext;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * CLIJPinnedMemory is page-locked host memory allocated by the OpenCL driver: a buffer created with
+ * CL_MEM_ALLOC_HOST_PTR, which stays mapped into host memory until it's closed. The driver can transfer from and to
+ * this memory by DMA, without copying it into its own staging memory first. ClearCL can't allocate such memory;
+ * so, it's allocated through JOCL on the objects of the ClearCL context.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJPinnedMemory {
+    private final ClearCLContext context;
+    private final cl_mem memory;
+    private final ByteBuffer buffer;
+
+    private CLIJPinnedMemory(ClearCLContext context, cl_mem memory, ByteBuffer buffer) {
+        this.context = context;
+        this.memory = memory;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Allocates and maps the given number of bytes.
+     *
+     * @throws RuntimeException if the memory can't be allocated, e.g. because ClearCL doesn't run on JOCL
+     */
+    public static CLIJPinnedMemory allocate(ClearCLContext context, long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pinned memory is limited to 2 GB: " + bytes + " bytes requested");
+        }
+        cl_context clContext = (cl_context) context.getPeerPointer().getPointer();
+        int[] error = new int[1];
+        cl_mem memory = CL.clCreateBuffer(clContext, CL.CL_MEM_READ_WRITE | CL.CL_MEM_ALLOC_HOST_PTR, bytes, null, error);
+        check(error[0], "clCreateBuffer");
+        try {
+            ByteBuffer buffer = CL.clEnqueueMapBuffer(getQueue(context), memory, CL.CL_TRUE, CL.CL_MAP_READ | CL.CL_MAP_WRITE, 0, bytes, 0, null, null, error);
+            check(error[0], "clEnqueueMapBuffer");
+            return new CLIJPinnedMemory(context, memory, buffer.order(ByteOrder.nativeOrder()));
+        } catch (RuntimeException e) {
+            CL.clReleaseMemObject(memory);
+            throw e;
+        }
+    }
+
+    private static cl_command_queue getQueue(ClearCLContext context) {
+        return (cl_command_queue) context.getDefaultQueue().getPeerPointer().getPointer();
+    }
+
+    private static void check(int error, String function) {
+        if (error != CL.CL_SUCCESS) {
+            throw new CLException(function + " failed with error " + error);
+        }
+    }
+
+    public ClearCLContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the mapped memory in native byte order. It's valid until the memory is closed.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void close() {
+        CL.clEnqueueUnmapMemObject(getQueue(context), memory, buffer, 0, null, null);
+        // the driver releases the memory after unmapping it
+        CL.clReleaseMemObject(memory);
+    }
+}
@@ -0,0 +1,305 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+
+import java.util.ArrayList;
+
+/**
+ * CLIJPipeline chains operations from Java or Jython without managing temporary buffers, e.g.
+ * <pre>
+ * ClearCLBuffer mask = CLIJPipeline.of(input).blurFast3D(2, 2, 2).threshold(100).erodeSphere().dilateSphere().mask(input).run();
+ * </pre>
+ * Every step reads the result of the step before. Steps are collected first and planned when the pipeline is run:
+ * <ul>
+ * <li>Consecutive pointwise operations are fused into one generated kernel; their intermediate results are never
+ * written.</li>
+ * <li>Every intermediate result is handed back to the buffer pool as soon as the next step has read it. Unless pooling
+ * is switched off, see CLIJ_setBufferPoolSize, a later step of the same size and type gets it from there instead of
+ * allocating a new buffer.</li>
+ * </ul>
+ * All steps are executed while holding the lock of the CLIJHandler, without synchronizing in between.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJPipeline {
+
+    private static class Step {
+        private final CLIJMacroPlugin plugin;
+        private final CLIJMacroPluginSignature signature;
+        private final Object[] parameters;
+        private final int sourceIndex;
+        private final int destinationIndex;
+
+        private Step(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, Object[] parameters, int sourceIndex, int destinationIndex) {
+            this.plugin = plugin;
+            this.signature = signature;
+            this.parameters = parameters;
+            this.sourceIndex = sourceIndex;
+            this.destinationIndex = destinationIndex;
+        }
+
+        private Object[] getArguments(ClearCLBuffer source, ClearCLBuffer destination) {
+            Object[] args = new Object[signature.getNumberOfParameters()];
+            int p = 0;
+            for (int i = 0; i < args.length; i++) {
+                if (i == sourceIndex) {
+                    args[i] = source;
+                } else if (i == destinationIndex) {
+                    args[i] = destination;
+                } else {
+                    args[i] = parameters[p++];
+                }
+            }
+            return args;
+        }
+
+        private boolean isFusable() {
+            return plugin instanceof CLIJPointwiseOperation && parameters.length == signature.getNumberOfParameters() - 2;
+        }
+
+        private CLIJPointwiseFusion.Step createFusionStep(ClearCLBuffer source, boolean written) {
+            float[] fusionParameters = new float[parameters.length];
+            for (int p = 0; p < parameters.length; p++) {
+                fusionParameters[p] = ((Number) parameters[p]).floatValue();
+            }
+            return new CLIJPointwiseFusion.Step(plugin.getName(), ((CLIJPointwiseOperation) plugin).getPointwiseExpression(),
+                    fusionParameters, source.getNativeType(), written);
+        }
+    }
+
+    private final CLIJHandler handler;
+    private final ClearCLBuffer input;
+    private final ArrayList<Step> steps = new ArrayList<Step>();
+
+    public CLIJPipeline(CLIJHandler handler, ClearCLBuffer input) {
+        this.handler = handler;
+        this.input = input;
+    }
+
+    public static CLIJPipeline of(ClearCLBuffer input) {
+        return new CLIJPipeline(CLIJHandler.getInstance(), input);
+    }
+
+    /**
+     * Appends a call of the given method, e.g. then("mean3DBox", 2, 2, 2). The first image parameter of the method
+     * is the result of the previous step, its destination the result of this one. The other parameters are given in
+     * the order of the methods signature; further images as ClearCLBuffer.
+     */
+    public CLIJPipeline then(String method, Object... parameters) {
+        if (!method.startsWith("CLIJ_")) {
+            method = "CLIJ_" + method;
+        }
+        CLIJMacroPlugin plugin = handler.getPluginService().getCLIJMacroPlugin(method);
+        if (plugin == null) {
+            throw new IllegalArgumentException("No CLIJ method named " + method);
+        }
+        CLIJMacroPluginSignature signature = handler.getPluginService().getCLIJMacroPluginSignature(method);
+        int sourceIndex = -1;
+        int destinationIndex = -1;
+        for (int i = 0; i < signature.getNumberOfParameters(); i++) {
+            if (signature.isDestination(i)) {
+                if (destinationIndex >= 0) {
+                    throw new IllegalArgumentException(method + " has more than one destination and can't be part of a pipeline");
+                }
+                destinationIndex = i;
+            } else if (signature.isImage(i) && sourceIndex < 0) {
+                sourceIndex = i;
+            }
+        }
+        if (!(plugin instanceof CLIJOpenCLProcessor) || sourceIndex < 0 || destinationIndex < 0) {
+            throw new IllegalArgumentException(method + " doesn't process an image into a destination and can't be part of a pipeline");
+        }
+        if (parameters.length != signature.getNumberOfParameters() - 2) {
+            throw new IllegalArgumentException(method + " expects " + (signature.getNumberOfParameters() - 2) + " parameters besides source and destination: " + plugin.getParameterHelpText());
+        }
+
+        Object[] converted = new Object[parameters.length];
+        int p = 0;
+        for (int i = 0; i < signature.getNumberOfParameters(); i++) {
+            if (i == sourceIndex || i == destinationIndex) {
+                continue;
+            }
+            Object parameter = parameters[p];
+            if (signature.isImage(i) && !(parameter instanceof ClearCLBuffer)) {
+                throw new IllegalArgumentException("Parameter " + signature.getName(i) + " of " + method + " must be a ClearCLBuffer");
+            }
+            if (parameter instanceof Boolean) {
+                // as handed over by the macro interpreter
+                parameter = ((Boolean) parameter) ? 1.0 : 0.0;
+            } else if (parameter instanceof Number) {
+                parameter = ((Number) parameter).doubleValue();
+            }
+            converted[p++] = parameter;
+        }
+        steps.add(new Step(plugin, signature, converted, sourceIndex, destinationIndex));
+        return this;
+    }
+
+    public CLIJPipeline blur2D(double sigmaX, double sigmaY) {
+        return then("CLIJ_blur2D", sigmaX, sigmaY);
+    }
+
+    public CLIJPipeline blur3D(double sigmaX, double sigmaY, double sigmaZ) {
+        return then("CLIJ_blur3D", sigmaX, sigmaY, sigmaZ);
+    }
+
+    public CLIJPipeline blurFast2D(double sigmaX, double sigmaY) {
+        return then("CLIJ_blur2DFast", sigmaX, sigmaY);
+    }
+
+    public CLIJPipeline blurFast3D(double sigmaX, double sigmaY, double sigmaZ) {
+        return then("CLIJ_blur3DFast", sigmaX, sigmaY, sigmaZ);
+    }
+
+    public CLIJPipeline threshold(double threshold) {
+        return then("CLIJ_thresholdIJ", threshold);
+    }
+
+    public CLIJPipeline erodeSphere() {
+        return then("CLIJ_erodeSphere");
+    }
+
+    public CLIJPipeline dilateSphere() {
+        return then("CLIJ_dilateSphere");
+    }
+
+    public CLIJPipeline invert() {
+        return then("CLIJ_invert");
+    }
+
+    public CLIJPipeline addScalar(double scalar) {
+        return then("CLIJ_addImageAndScalar", scalar);
+    }
+
+    public CLIJPipeline multiplyScalar(double scalar) {
+        return then("CLIJ_multiplyImageAndScalar", scalar);
+    }
+
+    public CLIJPipeline mask(ClearCLBuffer mask) {
+        return then("CLIJ_mask", mask);
+    }
+
+    /**
+     * Runs the pipeline and returns its result in a new buffer. The caller owns it; hand it back with
+     * CLIJHandler.releaseBuffer or close it.
+     */
+    public ClearCLBuffer run() {
+        return run(null);
+    }
+
+    /**
+     * Runs the pipeline and writes its result into the given buffer, which must have the size and type the last
+     * step produces. If it's null, a new buffer is returned.
+     */
+    public ClearCLBuffer run(ClearCLBuffer destination) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("The pipeline has no steps");
+        }
+        if (destination != null && isReadByPipeline(destination)) {
+            throw new IllegalArgumentException("The destination of a pipeline must not be read by it");
+        }
+        synchronized (handler) {
+            CLIJ clij = CLIJ.getInstance();
+            ClearCLBuffer current = input;
+            ClearCLBuffer output = null;
+            boolean succeeded = false;
+            try {
+                int i = 0;
+                while (i < steps.size()) {
+                    int end = getGroupEnd(i);
+                    boolean last = end == steps.size();
+
+                    output = null;
+                    if (end - i > 1) {
+                        ArrayList<CLIJPointwiseFusion.Step> fusionSteps = new ArrayList<CLIJPointwiseFusion.Step>();
+                        for (int k = i; k < end; k++) {
+                            fusionSteps.add(steps.get(k).createFusionStep(current, k == end - 1));
+                        }
+                        output = last && destination != null ? destination : handler.createCLBuffer(clij, current.getDimensions(), current.getNativeType());
+                        if (CLIJ.debug) {
+                            System.out.println("Pipeline step " + i + " to " + (end - 1) + " fused");
+                        }
+                        if (!handler.executeFusedOnBuffers(current, fusionSteps, output)) {
+                            // one by one instead
+                            if (output != destination) {
+                                handler.releaseBuffer(output);
+                            }
+                            output = null;
+                            end = i + 1;
+                            last = end == steps.size();
+                        }
+                    }
+                    if (output == null) {
+                        Step step = steps.get(i);
+                        step.plugin.setClij(clij);
+                        step.plugin.setArgs(step.getArguments(current, null));
+                        output = last && destination != null ? destination : step.plugin.createOutputBufferFromSource(current);
+                        if (CLIJ.debug) {
+                            System.out.println("Pipeline step " + i + ": " + step.plugin.getName());
+                        }
+                        handler.executeOnBuffers(step.plugin, step.signature, step.getArguments(current, output));
+                    }
+                    if (current != input) {
+                        // the next step can reuse it
+                        handler.releaseBuffer(current);
+                    }
+                    current = output;
+                    i = end;
+                }
+                succeeded = true;
+                return current;
+            } finally {
+                if (!succeeded) {
+                    // intermediate results of a failed step go back to the pool; the destination belongs to the caller
+                    releaseIntermediate(current, destination);
+                    if (output != current) {
+                        releaseIntermediate(output, destination);
+                    }
+                }
+            }
+        }
+    }
+
+    private void releaseIntermediate(ClearCLBuffer buffer, ClearCLBuffer destination) {
+        if (buffer != null && buffer != input && buffer != destination) {
+            handler.releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Returns the index after the last step which is fused with the given one; consecutive pointwise operations are
+     * fused.
+     */
+    int getGroupEnd(int first) {
+        int end = first + 1;
+        while (end < steps.size() && steps.get(first).isFusable() && steps.get(end).isFusable()) {
+            end++;
+        }
+        return end;
+    }
+
+    // the parameters of a step besides source and destination, as handed over to the plugin
+    Object[] getParameters(int step) {
+        return steps.get(step).parameters;
+    }
+
+    private boolean isReadByPipeline(ClearCLBuffer buffer) {
+        if (buffer == input) {
+            return true;
+        }
+        for (Step step : steps) {
+            for (Object parameter : step.parameters) {
+                if (parameter == buffer) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getNumberOfSteps() {
+        return steps.size();
+    }
+}
@@ -0,0 +1,465 @@
+package net.haesleinhuepf.clij.macro;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CLIJPipelineDescription is a sequence of CLIJ operations on named images which can be saved as JSON and replayed
+ * on other images by a CLIJPipelineReplay, e.g.
+ * <pre>
+ * {
+ *   "version": 1,
+ *   "inputs": ["input"],
+ *   "outputs": ["mask"],
+ *   "operations": [
+ *     {"method": "CLIJ_blur3DFast", "arguments": ["input", "blurred", 2.0, 2.0, 2.0]},
+ *     {"method": "CLIJ_thresholdIJ", "arguments": ["blurred", "mask", 100.0]},
+ *     {"method": "CLIJ_release", "arguments": ["blurred"]}
+ *   ]
+ * }
+ * </pre>
+ * Inputs are images which are read before they're written, outputs are images which exist when the pipeline is
+ * done. Descriptions are captured by the CLIJHandler between CLIJ_startPipelineCapture and CLIJ_stopPipelineCapture.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJPipelineDescription {
+    public static final int VERSION = 1;
+    public static final String RELEASE = "CLIJ_release";
+
+    public static class Operation {
+        private final String method;
+        private final Object[] arguments;
+
+        public Operation(String method, Object[] arguments) {
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public Object[] getArguments() {
+            return arguments;
+        }
+
+        public boolean isRelease() {
+            return method.compareTo(RELEASE) == 0;
+        }
+    }
+
+    private final ArrayList<String> inputs = new ArrayList<String>();
+    private final ArrayList<String> outputs = new ArrayList<String>();
+    private final ArrayList<Operation> operations = new ArrayList<Operation>();
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public void addInput(String image) {
+        if (!inputs.contains(image)) {
+            inputs.add(image);
+        }
+    }
+
+    public void addOutput(String image) {
+        if (!outputs.contains(image)) {
+            outputs.add(image);
+        }
+    }
+
+    /**
+     * Appends an operation; arguments are image names and other Strings or Numbers.
+     */
+    public void addOperation(String method, Object[] arguments) {
+        Object[] copy = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            Object argument = arguments[i];
+            if (argument instanceof Boolean) {
+                argument = ((Boolean) argument) ? 1.0 : 0.0;
+            } else if (argument instanceof Number) {
+                double value = ((Number) argument).doubleValue();
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new IllegalArgumentException("Argument " + i + " of " + method + " is not a finite number");
+                }
+                argument = value;
+            } else if (!(argument instanceof String)) {
+                throw new IllegalArgumentException("Argument " + i + " of " + method + " must be a String or a Number: " + argument);
+            }
+            copy[i] = argument;
+        }
+        operations.add(new Operation(method, copy));
+    }
+
+    /**
+     * Adds every image which is written and not released afterwards to the outputs.
+     */
+    public void addRemainingImagesToOutputs(CLIJMacroPluginService pluginService) {
+        LinkedHashMap<String, Boolean> existing = new LinkedHashMap<String, Boolean>();
+        for (Operation operation : operations) {
+            if (operation.isRelease()) {
+                existing.remove(operation.arguments[0]);
+                continue;
+            }
+            CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(operation.method);
+            for (int i = 0; signature != null && i < signature.getNumberOfParameters() && i < operation.arguments.length; i++) {
+                if (signature.isDestination(i)) {
+                    existing.put((String) operation.arguments[i], Boolean.TRUE);
+                }
+            }
+        }
+        for (String image : existing.keySet()) {
+            addOutput(image);
+        }
+    }
+
+    /**
+     * Checks that all methods exist, get arguments of the right types and that every image is an input or written
+     * before it is read.
+     *
+     * @throws IllegalArgumentException describing the first problem
+     */
+    public void validate(CLIJMacroPluginService pluginService) {
+        HashSet<String> available = new HashSet<String>(inputs);
+        for (int o = 0; o < operations.size(); o++) {
+            Operation operation = operations.get(o);
+            String where = "Operation " + o + " (" + operation.method + "): ";
+            if (operation.isRelease()) {
+                if (operation.arguments.length != 1 || !(operation.arguments[0] instanceof String)) {
+                    throw new IllegalArgumentException(where + "expects the name of one image");
+                }
+                if (!available.remove(operation.arguments[0])) {
+                    throw new IllegalArgumentException(where + "releases " + operation.arguments[0] + " which doesn't exist");
+                }
+                continue;
+            }
+            CLIJMacroPlugin plugin = pluginService.getCLIJMacroPlugin(operation.method);
+            if (!(plugin instanceof CLIJOpenCLProcessor)) {
+                throw new IllegalArgumentException(where + "no such method to replay");
+            }
+            CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(operation.method);
+            if (signature.getNumberOfParameters() != operation.arguments.length) {
+                throw new IllegalArgumentException(where + "expects " + signature.getNumberOfParameters() + " arguments: " + plugin.getParameterHelpText());
+            }
+            boolean hasSource = false;
+            for (int i = 0; i < operation.arguments.length; i++) {
+                Object argument = operation.arguments[i];
+                boolean isString = signature.isImage(i) || signature.getType(i) == CLIJMacroPluginSignature.ParameterType.STRING;
+                if (isString != argument instanceof String) {
+                    throw new IllegalArgumentException(where + "argument " + signature.getName(i) + " must be a " + (isString ? "String" : "Number"));
+                }
+                if (signature.isImage(i) && !signature.isDestination(i)) {
+                    if (!available.contains(argument)) {
+                        throw new IllegalArgumentException(where + "reads " + argument + " before it's written; add it to the inputs");
+                    }
+                    hasSource = true;
+                }
+            }
+            if (!hasSource && signature.producesImages()) {
+                throw new IllegalArgumentException(where + "creates images without reading one and can't be replayed");
+            }
+            for (int i = 0; i < operation.arguments.length; i++) {
+                if (signature.isDestination(i)) {
+                    available.add((String) operation.arguments[i]);
+                }
+            }
+        }
+        for (String output : outputs) {
+            if (!available.contains(output)) {
+                throw new IllegalArgumentException("Output " + output + " doesn't exist at the end of the pipeline");
+            }
+        }
+    }
+
+    public String toJSON() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"version\": ").append(VERSION).append(",\n");
+        json.append("  \"inputs\": ");
+        appendArray(json, inputs.toArray());
+        json.append(",\n  \"outputs\": ");
+        appendArray(json, outputs.toArray());
+        json.append(",\n  \"operations\": [");
+        for (int o = 0; o < operations.size(); o++) {
+            Operation operation = operations.get(o);
+            json.append(o == 0 ? "\n" : ",\n");
+            json.append("    {\"method\": ");
+            appendString(json, operation.method);
+            json.append(", \"arguments\": ");
+            appendArray(json, operation.arguments);
+            json.append("}");
+        }
+        json.append(operations.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static void appendArray(StringBuilder json, Object[] values) {
+        json.append("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            if (values[i] instanceof String) {
+                appendString(json, (String) values[i]);
+            } else {
+                json.append(values[i]);
+            }
+        }
+        json.append("]");
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Parses a description from JSON as written by toJSON.
+     */
+    public static CLIJPipelineDescription fromJSON(String json) {
+        Object parsed = new JSONParser(json).parseDocument();
+        if (!(parsed instanceof Map)) {
+            throw new IllegalArgumentException("A pipeline description must be a JSON object");
+        }
+        Map<?, ?> root = (Map<?, ?>) parsed;
+        Object version = root.get("version");
+        if (!(version instanceof Double) || ((Double) version).intValue() > VERSION) {
+            throw new IllegalArgumentException("Unsupported pipeline description version: " + version);
+        }
+        CLIJPipelineDescription description = new CLIJPipelineDescription();
+        for (Object input : asList(root.get("inputs"), "inputs")) {
+            description.addInput(asString(input, "inputs"));
+        }
+        for (Object output : asList(root.get("outputs"), "outputs")) {
+            description.addOutput(asString(output, "outputs"));
+        }
+        for (Object item : asList(root.get("operations"), "operations")) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException("Every operation must be a JSON object");
+            }
+            Map<?, ?> operation = (Map<?, ?>) item;
+            description.addOperation(asString(operation.get("method"), "method"), asList(operation.get("arguments"), "arguments").toArray());
+        }
+        return description;
+    }
+
+    private static List<?> asList(Object value, String name) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("'" + name + "' must be a JSON array");
+        }
+        return (List<?>) value;
+    }
+
+    private static String asString(Object value, String name) {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("'" + name + "' must contain strings");
+        }
+        return (String) value;
+    }
+
+    public void save(File file) throws IOException {
+        Files.write(file.toPath(), toJSON().getBytes(Charset.forName("UTF-8")));
+    }
+
+    public static CLIJPipelineDescription load(File file) throws IOException {
+        return fromJSON(new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+    }
+
+    // parses the subset of JSON used by descriptions: objects, arrays, strings, numbers, true, false and null
+    private static class JSONParser {
+        private final String text;
+        private int position = 0;
+
+        private JSONParser(String text) {
+            this.text = text;
+        }
+
+        private Object parseDocument() {
+            Object value = parseValue();
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("unexpected content");
+            }
+            return value;
+        }
+
+        private Object parseValue() {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(position);
+            if (c == '{') {
+                return parseObject();
+            } else if (c == '[') {
+                return parseArray();
+            } else if (c == '"') {
+                return parseString();
+            } else if (text.startsWith("true", position)) {
+                position += 4;
+                return 1.0;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+                return 0.0;
+            } else if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            return parseNumber();
+        }
+
+        private Map<String, Object> parseObject() {
+            LinkedHashMap<String, Object> object = new LinkedHashMap<String, Object>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("expected a key");
+                }
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() {
+            ArrayList<Object> array = new ArrayList<Object>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(parseValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("invalid escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private Double parseNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("expected a value");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid pipeline description at character " + position + ": " + message);
+        }
+    }
+}
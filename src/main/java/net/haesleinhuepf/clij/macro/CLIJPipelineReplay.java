@@ -0,0 +1,313 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CLIJPipelineReplay executes a CLIJPipelineDescription on new input images, e.g.
+ * <pre>
+ * CLIJPipelineReplay replay = new CLIJPipelineReplay(CLIJHandler.getInstance(), CLIJPipelineDescription.load(file));
+ * for (ClearCLBuffer input : inputs) {
+ *     outputs = replay.replay(Collections.singletonMap("input", input), outputs);
+ *     ...
+ * }
+ * </pre>
+ * The description is validated and compiled once: plugins, signatures and argument arrays are resolved when the
+ * replay is created, and every image name gets a slot. A name which is released and written again gets a new slot.
+ * Buffers of intermediate images are planned during the first replay: a buffer whose image was released is reused by
+ * the next image of the same size and type. Later replays on inputs of the same size and type reuse all planned
+ * buffers and the kernels compiled by the first one; so, neither macro arguments are parsed nor plugins looked up nor
+ * buffers allocated per call. Output images are written into the buffers the caller hands over, e.g. the outputs of
+ * the replay before, if they have the size and type the pipeline produces; otherwise into new buffers, which the
+ * caller owns.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJPipelineReplay {
+
+    private static class CompiledOperation {
+        private final CLIJMacroPlugin plugin;
+        private final CLIJMacroPluginSignature signature;
+        private final Object[] arguments;
+        // slot of every image argument or -1
+        private final int[] slots;
+        private final int templateSlot;
+        private final int releasedSlot;
+
+        private CompiledOperation(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, Object[] arguments, int[] slots, int templateSlot, int releasedSlot) {
+            this.plugin = plugin;
+            this.signature = signature;
+            this.arguments = arguments;
+            this.slots = slots;
+            this.templateSlot = templateSlot;
+            this.releasedSlot = releasedSlot;
+        }
+
+        private boolean isRelease() {
+            return plugin == null;
+        }
+    }
+
+    private final CLIJHandler handler;
+    private final CLIJPipelineDescription description;
+    private final ArrayList<CompiledOperation> operations = new ArrayList<CompiledOperation>();
+    private final int numberOfSlots;
+    private final int[] outputSlots;
+    private final boolean[] ownedByCaller;
+
+    private ClearCLBuffer[] plannedBuffers = null;
+    private long[][] plannedDimensions = null;
+    private NativeTypeEnum[] plannedTypes = null;
+    // size and type of the output images, by slot
+    private final long[][] outputDimensions;
+    private final NativeTypeEnum[] outputTypes;
+
+    public CLIJPipelineReplay(CLIJHandler handler, CLIJPipelineDescription description) {
+        this.handler = handler;
+        this.description = description;
+        CLIJMacroPluginService pluginService = handler.getPluginService();
+        description.validate(pluginService);
+
+        HashMap<String, Integer> currentSlots = new HashMap<String, Integer>();
+        List<String> inputs = description.getInputs();
+        for (int i = 0; i < inputs.size(); i++) {
+            currentSlots.put(inputs.get(i), i);
+        }
+        int slotCount = inputs.size();
+        for (CLIJPipelineDescription.Operation operation : description.getOperations()) {
+            if (operation.isRelease()) {
+                int slot = currentSlots.remove(operation.getArguments()[0]);
+                operations.add(new CompiledOperation(null, null, null, null, -1, slot));
+                continue;
+            }
+            CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(operation.getMethod());
+            Object[] arguments = operation.getArguments().clone();
+            int[] slots = new int[arguments.length];
+            int templateSlot = -1;
+            for (int i = 0; i < arguments.length; i++) {
+                slots[i] = -1;
+                if (signature.isImage(i) && !signature.isDestination(i)) {
+                    slots[i] = currentSlots.get(arguments[i]);
+                    if (templateSlot < 0) {
+                        templateSlot = slots[i];
+                    }
+                }
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (signature.isDestination(i)) {
+                    Integer slot = currentSlots.get(arguments[i]);
+                    if (slot == null) {
+                        slot = slotCount++;
+                        currentSlots.put((String) arguments[i], slot);
+                    }
+                    slots[i] = slot;
+                }
+            }
+            operations.add(new CompiledOperation(pluginService.getCLIJMacroPlugin(operation.getMethod()), signature, arguments, slots, templateSlot, -1));
+        }
+        numberOfSlots = slotCount;
+
+        outputDimensions = new long[numberOfSlots][];
+        outputTypes = new NativeTypeEnum[numberOfSlots];
+        ownedByCaller = new boolean[numberOfSlots];
+        for (int i = 0; i < inputs.size(); i++) {
+            ownedByCaller[i] = true;
+        }
+        List<String> outputs = description.getOutputs();
+        outputSlots = new int[outputs.size()];
+        for (int o = 0; o < outputs.size(); o++) {
+            outputSlots[o] = currentSlots.get(outputs.get(o));
+            ownedByCaller[outputSlots[o]] = true;
+        }
+    }
+
+    public CLIJPipelineDescription getDescription() {
+        return description;
+    }
+
+    /**
+     * Executes the pipeline on the given inputs and returns the outputs by name. Outputs which aren't inputs are new
+     * buffers; the caller owns them and hands them back with CLIJHandler.releaseBuffer or closes them.
+     */
+    public HashMap<String, ClearCLBuffer> replay(Map<String, ClearCLBuffer> inputs) {
+        return replay(inputs, null);
+    }
+
+    /**
+     * Executes the pipeline on the given inputs and returns the outputs by name. The given output buffers, e.g. the
+     * ones returned by the replay before, are overwritten if they have the size and type of the output; no buffer is
+     * allocated for them. Other outputs which aren't inputs are new buffers; the caller owns them and hands them back
+     * with CLIJHandler.releaseBuffer or closes them.
+     *
+     * @param outputs buffers to write the outputs into by name, or null
+     */
+    public synchronized HashMap<String, ClearCLBuffer> replay(Map<String, ClearCLBuffer> inputs, Map<String, ClearCLBuffer> outputs) {
+        List<String> inputNames = description.getInputs();
+        ClearCLBuffer[] buffers = new ClearCLBuffer[numberOfSlots];
+        for (int i = 0; i < inputNames.size(); i++) {
+            buffers[i] = inputs.get(inputNames.get(i));
+            if (buffers[i] == null) {
+                throw new IllegalArgumentException("The pipeline needs the input image " + inputNames.get(i));
+            }
+        }
+        ClearCLBuffer[] givenOutputs = new ClearCLBuffer[numberOfSlots];
+        List<String> outputNames = description.getOutputs();
+        for (int o = 0; o < outputSlots.length && outputs != null; o++) {
+            ClearCLBuffer given = outputs.get(outputNames.get(o));
+            if (given != null && outputSlots[o] >= inputNames.size()) {
+                if (Arrays.asList(buffers).contains(given)) {
+                    throw new IllegalArgumentException("The output image " + outputNames.get(o) + " must not be an input of the pipeline");
+                }
+                givenOutputs[outputSlots[o]] = given;
+            }
+        }
+
+        synchronized (handler) {
+            boolean plan = !matchesPlannedInputs(buffers);
+            if (plan) {
+                releasePlannedBuffers();
+                plannedBuffers = new ClearCLBuffer[numberOfSlots];
+                // planned again if this replay fails
+                plannedDimensions = null;
+            } else {
+                for (int s = 0; s < numberOfSlots; s++) {
+                    if (!ownedByCaller[s]) {
+                        buffers[s] = plannedBuffers[s];
+                    }
+                }
+            }
+            if (CLIJ.debug) {
+                System.out.println("Replaying pipeline with " + operations.size() + " operations" + (plan ? " (planning buffers)" : ""));
+            }
+
+            CLIJ clij = CLIJ.getInstance();
+            ArrayList<ClearCLBuffer> released = new ArrayList<ClearCLBuffer>();
+            for (CompiledOperation operation : operations) {
+                if (operation.isRelease()) {
+                    if (plan && !ownedByCaller[operation.releasedSlot]) {
+                        released.add(buffers[operation.releasedSlot]);
+                    }
+                    continue;
+                }
+                Object[] arguments = operation.arguments.clone();
+                for (int i = 0; i < arguments.length; i++) {
+                    if (operation.slots[i] >= 0 && buffers[operation.slots[i]] != null) {
+                        arguments[i] = buffers[operation.slots[i]];
+                    }
+                }
+                // destinations which don't exist yet are created like the handler does: with all arguments handed over
+                operation.plugin.setClij(clij);
+                operation.plugin.setArgs(arguments);
+                for (int i = 0; i < arguments.length; i++) {
+                    int slot = operation.slots[i];
+                    if (slot >= 0 && buffers[slot] == null) {
+                        buffers[slot] = createBuffer(operation, buffers[operation.templateSlot], slot, released, plan ? null : givenOutputs[slot]);
+                        if (plan && givenOutputs[slot] != null && hasShape(givenOutputs[slot], outputDimensions[slot], outputTypes[slot])) {
+                            // the size of the output is known only now
+                            handler.releaseBuffer(buffers[slot]);
+                            buffers[slot] = givenOutputs[slot];
+                        }
+                        arguments[i] = buffers[slot];
+                    }
+                }
+                handler.executeOnBuffers(operation.plugin, operation.signature, arguments);
+            }
+
+            if (plan) {
+                rememberPlannedInputs(buffers);
+            }
+            HashMap<String, ClearCLBuffer> result = new HashMap<String, ClearCLBuffer>();
+            for (int o = 0; o < outputSlots.length; o++) {
+                result.put(outputNames.get(o), buffers[outputSlots[o]]);
+            }
+            return result;
+        }
+    }
+
+    private ClearCLBuffer createBuffer(CompiledOperation operation, ClearCLBuffer template, int slot, ArrayList<ClearCLBuffer> released, ClearCLBuffer givenOutput) {
+        if (givenOutput != null && hasShape(givenOutput, outputDimensions[slot], outputTypes[slot])) {
+            return givenOutput;
+        }
+        ClearCLBuffer buffer = operation.plugin.createOutputBufferFromSource(template);
+        if (ownedByCaller[slot]) {
+            outputDimensions[slot] = buffer.getDimensions().clone();
+            outputTypes[slot] = buffer.getNativeType();
+            return buffer;
+        }
+        for (int r = 0; r < released.size(); r++) {
+            ClearCLBuffer candidate = released.get(r);
+            if (candidate.getNativeType() == buffer.getNativeType() && Arrays.equals(candidate.getDimensions(), buffer.getDimensions())) {
+                // the image of the candidate is no longer needed
+                released.remove(r);
+                handler.releaseBuffer(buffer);
+                buffer = candidate;
+                break;
+            }
+        }
+        plannedBuffers[slot] = buffer;
+        return buffer;
+    }
+
+    private static boolean hasShape(ClearCLBuffer buffer, long[] dimensions, NativeTypeEnum nativeType) {
+        return dimensions != null && buffer.getNativeType() == nativeType && Arrays.equals(buffer.getDimensions(), dimensions);
+    }
+
+    private boolean matchesPlannedInputs(ClearCLBuffer[] buffers) {
+        if (plannedBuffers == null || plannedDimensions == null) {
+            return false;
+        }
+        for (int i = 0; i < plannedDimensions.length; i++) {
+            if (buffers[i].getNativeType() != plannedTypes[i] || !Arrays.equals(buffers[i].getDimensions(), plannedDimensions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rememberPlannedInputs(ClearCLBuffer[] buffers) {
+        int numberOfInputs = description.getInputs().size();
+        plannedDimensions = new long[numberOfInputs][];
+        plannedTypes = new NativeTypeEnum[numberOfInputs];
+        for (int i = 0; i < numberOfInputs; i++) {
+            plannedDimensions[i] = buffers[i].getDimensions().clone();
+            plannedTypes[i] = buffers[i].getNativeType();
+        }
+    }
+
+    private void releasePlannedBuffers() {
+        if (plannedBuffers == null) {
+            return;
+        }
+        // slots may share a buffer
+        IdentityHashMap<ClearCLBuffer, Boolean> distinct = new IdentityHashMap<ClearCLBuffer, Boolean>();
+        for (ClearCLBuffer buffer : plannedBuffers) {
+            if (buffer != null) {
+                distinct.put(buffer, Boolean.TRUE);
+            }
+        }
+        for (ClearCLBuffer buffer : distinct.keySet()) {
+            handler.releaseBuffer(buffer);
+        }
+        plannedBuffers = null;
+    }
+
+    /**
+     * Hands the buffers of intermediate images back to the buffer pool; they're planned again by the next replay.
+     */
+    public void close() {
+        synchronized (this) {
+            synchronized (handler) {
+                releasePlannedBuffers();
+            }
+        }
+    }
+}
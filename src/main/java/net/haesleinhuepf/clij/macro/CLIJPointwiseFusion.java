@@ -0,0 +1,285 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.clearcl.ClearCLKernel;
+import net.haesleinhuepf.clij.clearcl.ClearCLProgram;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * CLIJPointwiseFusion generates and runs one OpenCL kernel for a chain of CLIJPointwiseOperations. The source image
+ * is read once, all steps are computed in registers and only those intermediate results which are needed later
+ * are written. After every step, the value is converted to the pixel type the unfused operation would have written,
+ * including saturation, so that results are identical to executing the operations one by one.
+ * <p>
+ * Generated kernels are compiled once per chain of expressions and pixel types and reused afterwards. If a
+ * CLIJProgramBinaryCache is given, compiled programs are stored on disk and loaded from there by the next JVM.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJPointwiseFusion {
+    private static final String KERNEL_NAME = "fused_pointwise";
+
+    public static class Step {
+        private final String operationName;
+        private final String expression;
+        private final float[] parameters;
+        private final NativeTypeEnum outputType;
+        private final boolean written;
+
+        /**
+         * @param written false if the result of this step is not needed after the chain
+         */
+        public Step(String operationName, String expression, float[] parameters, NativeTypeEnum outputType, boolean written) {
+            this.operationName = operationName;
+            this.expression = expression;
+            this.parameters = parameters;
+            this.outputType = outputType;
+            this.written = written;
+        }
+
+        public String getOperationName() {
+            return operationName;
+        }
+    }
+
+    /**
+     * A compiled chain; either a ClearCL kernel or one loaded from the program binary cache.
+     */
+    public static class Kernel {
+        private final ClearCLProgram program;
+        private final ClearCLKernel clearCLKernel;
+        private final CLIJCachedKernel cachedKernel;
+
+        private Kernel(ClearCLProgram program, ClearCLKernel clearCLKernel, CLIJCachedKernel cachedKernel) {
+            this.program = program;
+            this.clearCLKernel = clearCLKernel;
+            this.cachedKernel = cachedKernel;
+        }
+
+        private void close() {
+            if (cachedKernel != null) {
+                cachedKernel.close();
+            } else {
+                clearCLKernel.close();
+                program.close();
+            }
+        }
+    }
+
+    private final CLIJ clij;
+    private final HashMap<String, Kernel> kernelCache = new HashMap<String, Kernel>();
+    private CLIJProgramBinaryCache binaryCache;
+
+    public CLIJPointwiseFusion(CLIJ clij) {
+        this(clij, null);
+    }
+
+    /**
+     * @param binaryCache cache for compiled programs or null
+     */
+    public CLIJPointwiseFusion(CLIJ clij, CLIJProgramBinaryCache binaryCache) {
+        this.clij = clij;
+        this.binaryCache = binaryCache;
+    }
+
+    public CLIJ getCLIJ() {
+        return clij;
+    }
+
+    public static boolean isSupported(NativeTypeEnum type) {
+        return openCLType(type) != null;
+    }
+
+    /**
+     * Compiles the kernel for the given chain or takes it from the cache. Call it before allocating output buffers:
+     * if compilation fails, the chain can still be executed step by step.
+     */
+    public Kernel prepare(NativeTypeEnum inputType, List<Step> steps) {
+        String source = generateSource(inputType, steps);
+        Kernel kernel = kernelCache.get(source);
+        if (kernel == null) {
+            if (binaryCache != null) {
+                kernel = prepareCached(source);
+            }
+            if (kernel == null) {
+                if (CLIJ.debug) {
+                    System.out.println("Compiling fused kernel:\n" + source);
+                }
+                ClearCLProgram program = clij.getClearCLContext().createProgram(source);
+                program.buildAndLog();
+                kernel = new Kernel(program, program.createKernel(KERNEL_NAME), null);
+            }
+            kernelCache.put(source, kernel);
+        }
+        return kernel;
+    }
+
+    // returns null if the kernel should be compiled by ClearCL instead
+    private Kernel prepareCached(String source) {
+        try {
+            return new Kernel(null, null, CLIJCachedKernel.create(binaryCache, clij.getClearCLContext(), source, "", KERNEL_NAME));
+        } catch (ClassCastException e) {
+            // ClearCL doesn't run on JOCL; programs can't be cached
+            binaryCache = null;
+        } catch (LinkageError e) {
+            binaryCache = null;
+        } catch (RuntimeException e) {
+            if (CLIJ.debug) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the compiled kernels. Kernels prepared before must not be executed anymore.
+     */
+    public void close() {
+        for (Kernel kernel : kernelCache.values()) {
+            kernel.close();
+        }
+        kernelCache.clear();
+    }
+
+    /**
+     * Enqueues a prepared kernel without waiting for it, see finish(). outputs[s] is the buffer the result of step s is
+     * written to; it is ignored for steps which are not written.
+     */
+    public void execute(Kernel kernel, ClearCLBuffer input, List<Step> steps, ClearCLBuffer[] outputs) {
+        execute(kernel, input, steps, outputs, null);
+    }
+
+    /**
+     * Like execute(kernel, input, steps, outputs), but kernels loaded from the program binary cache go to one of the
+     * additional command queues. Kernels compiled by ClearCL run on the default queue, ordered with the kernels on the
+     * additional queues using the same buffers.
+     *
+     * @param commandQueues queues of the context of this fusion or null
+     */
+    public void execute(Kernel kernel, ClearCLBuffer input, List<Step> steps, ClearCLBuffer[] outputs, CLIJCommandQueues commandQueues) {
+        long numberOfPixels = 1;
+        for (long dimension : input.getDimensions()) {
+            numberOfPixels *= dimension;
+        }
+        ClearCLBuffer[] reads = new ClearCLBuffer[]{input};
+        ArrayList<ClearCLBuffer> writtenOutputs = new ArrayList<ClearCLBuffer>();
+        for (int s = 0; s < steps.size(); s++) {
+            if (steps.get(s).written) {
+                writtenOutputs.add(outputs[s]);
+            }
+        }
+        ClearCLBuffer[] writes = writtenOutputs.toArray(new ClearCLBuffer[0]);
+        if (kernel.cachedKernel != null) {
+            setArguments(kernel.cachedKernel, input, steps, outputs);
+            if (commandQueues != null) {
+                commandQueues.run(kernel.cachedKernel, numberOfPixels, reads, writes);
+            } else {
+                kernel.cachedKernel.run(numberOfPixels);
+            }
+            return;
+        }
+        if (commandQueues != null) {
+            commandQueues.waitFor(reads, writes);
+        }
+        ClearCLKernel clearCLKernel = kernel.clearCLKernel;
+        clearCLKernel.setArgument("src", input);
+        for (int s = 0; s < steps.size(); s++) {
+            Step step = steps.get(s);
+            if (step.written) {
+                clearCLKernel.setArgument("dst" + s, outputs[s]);
+            }
+            for (int p = 0; p < step.parameters.length; p++) {
+                clearCLKernel.setArgument("p" + s + "_" + p, step.parameters[p]);
+            }
+        }
+        clearCLKernel.setGlobalSizes(numberOfPixels);
+        clearCLKernel.run(false);
+        if (commandQueues != null) {
+            commandQueues.markUsed(reads, writes);
+        }
+    }
+
+    /**
+     * Waits until the kernels executed before are finished.
+     */
+    public void finish() {
+        clij.getClearCLContext().getDefaultQueue().waitToFinish();
+    }
+
+    // arguments are set by position, in the order generateSource declares them
+    private static void setArguments(CLIJCachedKernel kernel, ClearCLBuffer input, List<Step> steps, ClearCLBuffer[] outputs) {
+        int index = 0;
+        kernel.setArgument(index++, input);
+        for (int s = 0; s < steps.size(); s++) {
+            Step step = steps.get(s);
+            for (int p = 0; p < step.parameters.length; p++) {
+                kernel.setArgument(index++, step.parameters[p]);
+            }
+            if (step.written) {
+                kernel.setArgument(index++, outputs[s]);
+            }
+        }
+    }
+
+    static String generateSource(NativeTypeEnum inputType, List<Step> steps) {
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        parameters.append("__global const " + openCLType(inputType) + "* src");
+        body.append("    const size_t i = get_global_id(0);\n");
+        body.append("    float x = (float) src[i];\n");
+        for (int s = 0; s < steps.size(); s++) {
+            Step step = steps.get(s);
+            String type = openCLType(step.outputType);
+            body.append("    // " + step.operationName + "\n");
+            body.append("    {\n");
+            for (int p = 0; p < step.parameters.length; p++) {
+                parameters.append(", const float p" + s + "_" + p);
+                body.append("        const float p" + p + " = p" + s + "_" + p + ";\n");
+            }
+            body.append("        x = (float) " + convert(type, "(" + step.expression + ")") + ";\n");
+            body.append("    }\n");
+            if (step.written) {
+                parameters.append(", __global " + type + "* dst" + s);
+                body.append("    dst" + s + "[i] = " + convert(type, "x") + ";\n");
+            }
+        }
+        return "__kernel void " + KERNEL_NAME + "(" + parameters + ") {\n" + body + "}\n";
+    }
+
+    private static String convert(String type, String value) {
+        if (type.compareTo("float") == 0) {
+            return "(float)" + value;
+        }
+        return "convert_" + type + "_sat(" + value + ")";
+    }
+
+    private static String openCLType(NativeTypeEnum type) {
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case Byte:
+                return "char";
+            case UnsignedByte:
+                return "uchar";
+            case Short:
+                return "short";
+            case UnsignedShort:
+                return "ushort";
+            case Int:
+                return "int";
+            case UnsignedInt:
+                return "uint";
+            case Float:
+                return "float";
+            default:
+                return null;
+        }
+    }
+}
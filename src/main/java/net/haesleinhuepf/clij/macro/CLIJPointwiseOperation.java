@@ -0,0 +1,18 @@
+package net.haesleinhuepf.clij.macro;
+
+/**
+ * CLIJPointwiseOperation is implemented by plugins with the signature "Image source, Image destination, Number ..."
+ * whose result pixel only depends on the source pixel at the same position. The destination has the same size as
+ * the source. In deferred execution mode, chains of such operations are fused into a single generated OpenCL kernel
+ * by the CLIJPointwiseFusion.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public interface CLIJPointwiseOperation {
+    /**
+     * Returns an OpenCL C expression computing the result pixel value as float. The source pixel value is available
+     * as float x, the Number parameters of the plugin as float p0, p1, ... in the order of the signature.
+     */
+    String getPointwiseExpression();
+}
@@ -0,0 +1,188 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.Prefs;
+import net.haesleinhuepf.clij.CLIJ;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * CLIJProgramBinaryCache keeps compiled OpenCL programs on disk, so that a new JVM doesn't need to compile them
+ * again. Programs are stored per device in a directory of the ImageJ preferences folder and are identified by a hash
+ * of their source code and build options. Every device directory remembers the driver its programs were compiled
+ * with; if the driver changes, all programs of the device are deleted and compiled again.
+ * <p>
+ * Files are written into a temporary file first and renamed afterwards; so, parallel JVMs never read a partially
+ * written program. Files which can't be read are deleted.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJProgramBinaryCache {
+    private static final int MAGIC = 0x434c494a; // "CLIJ"
+    private static final int FORMAT_VERSION = 1;
+    private static final String DRIVER_FILE = "driver.txt";
+    private static final String EXTENSION = ".clbin";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    public CLIJProgramBinaryCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static File getDefaultDirectory() {
+        return new File(Prefs.getPrefsDir(), "clij" + File.separator + "programs");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the key of a program: a hash of its source, its build options, e.g. defines, and the device and driver
+     * it is compiled for.
+     */
+    public static String createKey(String source, String buildOptions, String deviceIdentity) {
+        return hash(deviceIdentity + "\n" + buildOptions + "\n" + source);
+    }
+
+    /**
+     * Returns the binary stored for the given key or null.
+     */
+    public synchronized byte[] load(String deviceName, String driverVersion, String key) {
+        File file = getFile(deviceName, driverVersion, key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(file));
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(key)) {
+                throw new IOException("unexpected header");
+            }
+            int length = input.readInt();
+            if (length <= 0 || length > file.length()) {
+                throw new IOException("unexpected length");
+            }
+            byte[] binary = new byte[length];
+            input.readFully(binary);
+            if (input.read() != -1) {
+                throw new IOException("unexpected content");
+            }
+            return binary;
+        } catch (IOException e) {
+            if (CLIJ.debug) {
+                System.out.println("Deleting unreadable program binary " + file + ": " + e.getMessage());
+            }
+            // closed before deleting, which fails for open files on Windows
+            close(input);
+            input = null;
+            file.delete();
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Stores a binary under the given key. Failures are ignored; the program is compiled again next time.
+     */
+    public synchronized void store(String deviceName, String driverVersion, String key, byte[] binary) {
+        File file = getFile(deviceName, driverVersion, key);
+        File temporaryFile = null;
+        DataOutputStream output = null;
+        try {
+            temporaryFile = File.createTempFile(key, ".tmp", file.getParentFile());
+            output = new DataOutputStream(new FileOutputStream(temporaryFile));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(key);
+            output.writeInt(binary.length);
+            output.write(binary);
+            output.close();
+            output = null;
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (CLIJ.debug) {
+                System.out.println("Couldn't store program binary " + file + ": " + e.getMessage());
+            }
+            close(output);
+            if (temporaryFile != null) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes a stored binary, e.g. because the driver rejected it.
+     */
+    public synchronized void remove(String deviceName, String driverVersion, String key) {
+        getFile(deviceName, driverVersion, key).delete();
+    }
+
+    // returns the file of the key in the directory of the device; programs of other drivers are deleted
+    private File getFile(String deviceName, String driverVersion, String key) {
+        File deviceDirectory = new File(directory, hash(deviceName).substring(0, 16));
+        File driverFile = new File(deviceDirectory, DRIVER_FILE);
+        try {
+            String storedDriverVersion = driverFile.exists() ? new String(Files.readAllBytes(driverFile.toPath()), UTF8) : null;
+            if (storedDriverVersion == null || !storedDriverVersion.equals(driverVersion)) {
+                if (storedDriverVersion != null && CLIJ.debug) {
+                    System.out.println("Driver of " + deviceName + " changed; deleting compiled programs");
+                }
+                File[] files = deviceDirectory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                deviceDirectory.mkdirs();
+                Files.write(driverFile.toPath(), driverVersion.getBytes(UTF8));
+            }
+        } catch (IOException e) {
+            if (CLIJ.debug) {
+                System.out.println("Couldn't check program binaries of " + deviceName + ": " + e.getMessage());
+            }
+        }
+        return new File(deviceDirectory, key + EXTENSION);
+    }
+
+    private static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(UTF8))) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package net.haesleinhuepf.clij.macro;
+
+/**
+ * CLIJReadOnlyProcessor marks plugins which only read their images although they have no destination image, e.g.
+ * measurements such as CLIJ_sumOfAllPixels. The CLIJHandler considers the images of other plugins without
+ * destination images as written in place, e.g. by CLIJ_set: their image twins and fingerprints are outdated
+ * afterwards.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public interface CLIJReadOnlyProcessor {
+}
@@ -0,0 +1,130 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CLIJStackStreamer uploads stacks batch by batch of slices. A reader thread fetches the slices of the next batch
+ * into a direct buffer while the current batch is transferred to its position in the GPU buffer. For virtual stacks,
+ * reading means loading the slices from disk; so, disk access overlaps the transfer and the stack is never loaded
+ * into the Java heap as a whole. Only two batches are held in host memory at a time.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJStackStreamer {
+    public static final int DEFAULT_SLICES_PER_BATCH = 16;
+
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CLIJ stack reader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ByteBuffer[] staging = new ByteBuffer[2];
+
+    /**
+     * Uploads all slices of the image into the buffer. The caller checks CLIJStagingArea.canUploadDirectly before.
+     */
+    public synchronized void upload(ImagePlus imp, ClearCLBuffer buffer, int slicesPerBatch) {
+        ImageStack stack = imp.getStack();
+        int depth = stack.getSize();
+        long sliceElements = (long) imp.getWidth() * imp.getHeight();
+        long sliceBytes = sliceElements * (imp.getBitDepth() / 8);
+        slicesPerBatch = (int) Math.max(1, Math.min(Math.min(slicesPerBatch, depth), Integer.MAX_VALUE / sliceBytes));
+        for (int i = 0; i < staging.length; i++) {
+            if (staging[i] == null || staging[i].capacity() < slicesPerBatch * sliceBytes) {
+                staging[i] = ByteBuffer.allocateDirect((int) (slicesPerBatch * sliceBytes)).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        long startTime = System.nanoTime();
+        Future<?> reading = reader.submit(read(stack, 0, Math.min(slicesPerBatch, depth), staging[0], sliceBytes));
+        try {
+            for (int first = 0, i = 0; first < depth; first += slicesPerBatch, i++) {
+                int count = Math.min(slicesPerBatch, depth - first);
+                waitFor(reading);
+                int next = first + slicesPerBatch;
+                if (next < depth) {
+                    // the other staging buffer was transferred in the last iteration
+                    reading = reader.submit(read(stack, next, Math.min(slicesPerBatch, depth - next), staging[(i + 1) % 2], sliceBytes));
+                }
+                ByteBuffer batch = staging[i % 2];
+                batch.clear();
+                batch.limit((int) (count * sliceBytes));
+                // blocking, because the reader refills this staging buffer next
+                buffer.readFrom(batch, first * sliceElements, count * sliceElements, true);
+            }
+        } finally {
+            reading.cancel(true);
+        }
+        if (CLIJ.debug) {
+            double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+            long bytes = depth * sliceBytes;
+            System.out.println("Streamed " + imp.getTitle() + " in batches of " + slicesPerBatch + " slices: " + bytes + " bytes in " +
+                    String.format("%.3f", seconds * 1000) + " ms (" +
+                    String.format("%.2f", seconds > 0 ? bytes / seconds / 1024 / 1024 / 1024 : 0) + " GB/s)");
+        }
+    }
+
+    private static Callable<Object> read(final ImageStack stack, final int first, final int count, final ByteBuffer batch, final long sliceBytes) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                for (int z = 0; z < count; z++) {
+                    ByteBuffer slice = batch.duplicate().order(ByteOrder.nativeOrder());
+                    slice.clear();
+                    slice.position((int) (z * sliceBytes));
+                    // loads the slice from disk in case of a virtual stack
+                    Object pixels = stack.getPixels(first + z + 1);
+                    if (pixels instanceof byte[]) {
+                        slice.put((byte[]) pixels);
+                    } else if (pixels instanceof short[]) {
+                        slice.asShortBuffer().put((short[]) pixels);
+                    } else if (pixels instanceof float[]) {
+                        slice.asFloatBuffer().put((float[]) pixels);
+                    } else {
+                        throw new IllegalArgumentException("Unsupported pixel array in slice " + (first + z + 1) + ": " + pixels);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static void waitFor(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Streaming was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reading slices failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Frees the staging buffers; they're allocated again when needed.
+     */
+    public synchronized void clear() {
+        staging[0] = null;
+        staging[1] = null;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return (staging[0] == null ? 0 : staging[0].capacity()) + (staging[1] == null ? 0 : staging[1].capacity());
+    }
+}
@@ -0,0 +1,432 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.clearcl.ClearCLContext;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * CLIJStagingArea transfers ImagePlus slices between host and GPU memory. The slices are copied into one reusable
+ * staging area in host memory and transferred from there to their position in the GPU buffer, and vice versa. Thus,
+ * no temporary buffer of the image size is allocated in GPU memory and no copy on the device is necessary.
+ * Consecutive slices are packed and transferred together, up to 64 MB per transfer.
+ * <p>
+ * The staging area is pinned memory allocated by the OpenCL driver (see CLIJPinnedMemory), which the driver
+ * transfers by DMA. If the driver can't allocate it, e.g. because ClearCL doesn't run on JOCL, a direct buffer is
+ * used instead; the driver then copies it into its own staging memory during every transfer. As the staging area is
+ * allocated once and reused, the cost of allocating it doesn't count per transfer.
+ * <p>
+ * In debug mode, the bandwidth of every transfer is reported.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJStagingArea {
+    private static final long MAXIMUM_BATCH_BYTES = 256L * 1024L * 1024L;
+    private static final long MAXIMUM_TRANSFER_BYTES = 64L * 1024L * 1024L;
+
+    private ByteBuffer staging = null;
+    private CLIJPinnedMemory pinnedMemory = null;
+    private ClearCLContext stagingContext = null;
+    private boolean pinnedMemoryAvailable = true;
+
+    /**
+     * Returns true if the image is a plain 2D or 3D image with 8, 16 or 32 bit pixels.
+     */
+    public static boolean canUpload(ImagePlus imp) {
+        return imp.getNChannels() == 1 && imp.getNFrames() == 1 && nativeTypeOf(imp.getBitDepth()) != null;
+    }
+
+    /**
+     * Returns true if the image is a plain 2D or 3D image with the same size and pixel type as the buffer.
+     */
+    public static boolean canUploadDirectly(ImagePlus imp, ClearCLBuffer buffer) {
+        if (!canUpload(imp)) {
+            return false;
+        }
+        long depth = buffer.getDimension() > 2 ? buffer.getDepth() : 1;
+        return imp.getWidth() == buffer.getWidth() &&
+                imp.getHeight() == buffer.getHeight() &&
+                imp.getStackSize() == depth &&
+                nativeTypeOf(imp.getBitDepth()) == buffer.getNativeType();
+    }
+
+    /**
+     * Returns true if the buffer is 2D or 3D and has a pixel type ImageJ can show without conversion.
+     */
+    public static boolean canDownload(ClearCLBuffer buffer) {
+        NativeTypeEnum type = buffer.getNativeType();
+        return (buffer.getDimension() == 2 || buffer.getDimension() == 3) &&
+                (type == NativeTypeEnum.UnsignedByte || type == NativeTypeEnum.UnsignedShort || type == NativeTypeEnum.Float);
+    }
+
+    public static long[] dimensionsOf(ImagePlus imp) {
+        if (imp.getStackSize() > 1) {
+            return new long[]{imp.getWidth(), imp.getHeight(), imp.getStackSize()};
+        }
+        return new long[]{imp.getWidth(), imp.getHeight()};
+    }
+
+    public static NativeTypeEnum nativeTypeOf(int bitDepth) {
+        switch (bitDepth) {
+            case 8:
+                return NativeTypeEnum.UnsignedByte;
+            case 16:
+                return NativeTypeEnum.UnsignedShort;
+            case 32:
+                return NativeTypeEnum.Float;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Uploads all slices of the image into the buffer. The caller checks canUploadDirectly before.
+     */
+    public synchronized void upload(ImagePlus imp, ClearCLBuffer buffer) {
+        ImageStack stack = imp.getStack();
+        long startTime = System.nanoTime();
+        uploadSlices(stack, buffer, 0, stack.getSize());
+        reportBandwidth("Pushed", imp.getTitle(), stack.getSize() * getSliceSizeInBytes(buffer), startTime);
+    }
+
+    /**
+     * Uploads the given slices (zero-based, ascending) of the image into the buffer. Runs of consecutive slices are
+     * transferred together.
+     */
+    public synchronized void upload(ImagePlus imp, ClearCLBuffer buffer, int[] slices) {
+        ImageStack stack = imp.getStack();
+        long startTime = System.nanoTime();
+        int first = 0;
+        for (int i = 1; i <= slices.length; i++) {
+            if (i == slices.length || slices[i] != slices[i - 1] + 1) {
+                uploadSlices(stack, buffer, slices[first], slices[i - 1] + 1);
+                first = i;
+            }
+        }
+        reportBandwidth("Pushed", imp.getTitle(), slices.length * getSliceSizeInBytes(buffer), startTime);
+    }
+
+    /**
+     * Downloads a buffer into a new ImagePlus. The caller checks canDownload before.
+     */
+    public synchronized ImagePlus download(ClearCLBuffer buffer, String title) {
+        long startTime = System.nanoTime();
+        ImagePlus imp = downloadImage(buffer, title);
+        reportBandwidth("Pulled", title, buffer.getSizeInBytes(), startTime);
+        return imp;
+    }
+
+    private ImagePlus downloadImage(ClearCLBuffer buffer, String title) {
+        int width = (int) buffer.getWidth();
+        int height = (int) buffer.getHeight();
+        int depth = buffer.getDimension() > 2 ? (int) buffer.getDepth() : 1;
+        int sliceElements = width * height;
+        NativeTypeEnum type = buffer.getNativeType();
+
+        Object[] slicePixels = new Object[depth];
+        for (int z = 0; z < depth; z++) {
+            slicePixels[z] = createPixels(type, sliceElements);
+        }
+        downloadSlices(buffer, slicePixels);
+        ImageStack stack = new ImageStack(width, height);
+        for (Object pixels : slicePixels) {
+            stack.addSlice("", pixels);
+        }
+        return new ImagePlus(title, stack);
+    }
+
+    /**
+     * Downloads a buffer into existing pixel arrays, e.g. the slices of an ImagePlus which is shown already. The
+     * arrays must have the buffers pixel type and the size of one slice; there must be one array per slice.
+     */
+    public synchronized void download(ClearCLBuffer buffer, Object[] slicePixels, String title) {
+        long startTime = System.nanoTime();
+        downloadSlices(buffer, slicePixels);
+        reportBandwidth("Pulled", title, slicePixels.length * getSliceSizeInBytes(buffer), startTime);
+    }
+
+    private void downloadSlices(ClearCLBuffer buffer, Object[] slicePixels) {
+        long sliceElements = buffer.getWidth() * buffer.getHeight();
+        for (Object pixels : slicePixels) {
+            if (getLength(pixels) != sliceElements || createPixels(buffer.getNativeType(), 0).getClass() != pixels.getClass()) {
+                throw new IllegalArgumentException("Pixel array doesn't fit a slice of " + buffer.getWidth() + "x" + buffer.getHeight() + " pixels: " + pixels);
+            }
+        }
+        long sliceBytes = getSliceSizeInBytes(buffer);
+        int slicesPerTransfer = getSlicesPerTransfer(sliceBytes);
+        for (int first = 0; first < slicePixels.length; first += slicesPerTransfer) {
+            int count = Math.min(slicesPerTransfer, slicePixels.length - first);
+            ByteBuffer staging = getStaging(buffer, count * sliceBytes);
+            buffer.writeTo(staging, first * sliceElements, count * sliceElements, true);
+            for (int z = 0; z < count; z++) {
+                staging.position((int) (z * sliceBytes));
+                getPixels(staging, slicePixels[first + z]);
+            }
+        }
+    }
+
+    private static long getLength(Object pixels) {
+        if (pixels instanceof byte[]) {
+            return ((byte[]) pixels).length;
+        } else if (pixels instanceof short[]) {
+            return ((short[]) pixels).length;
+        } else if (pixels instanceof float[]) {
+            return ((float[]) pixels).length;
+        }
+        return -1;
+    }
+
+    /**
+     * Uploads many images into their buffers. The images are packed one after another into the staging area, which
+     * takes up to 256 MB at a time. Every buffer gets its part by a non-blocking transfer; only the last transfer
+     * of a batch blocks. Thus, many small images cost hardly more than one big one. Images bigger than 256 MB are
+     * uploaded on their own in chunks of slices. The caller checks canUploadDirectly for all images before.
+     */
+    public synchronized void uploadBatch(ImagePlus[] imps, ClearCLBuffer[] buffers) {
+        long startTime = System.nanoTime();
+        long totalBytes = 0;
+        int first = 0;
+        long batchBytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            long bytes = buffers[i].getSizeInBytes();
+            totalBytes += bytes;
+            if (i > first && (bytes > MAXIMUM_BATCH_BYTES || batchBytes + bytes > MAXIMUM_BATCH_BYTES)) {
+                uploadPacked(imps, buffers, first, i, batchBytes);
+                first = i;
+                batchBytes = 0;
+            }
+            if (bytes > MAXIMUM_BATCH_BYTES) {
+                uploadSlices(imps[i].getStack(), buffers[i], 0, imps[i].getStackSize());
+                first = i + 1;
+                continue;
+            }
+            batchBytes += bytes;
+        }
+        if (first < buffers.length) {
+            uploadPacked(imps, buffers, first, buffers.length, batchBytes);
+        }
+        reportBandwidth("Pushed", buffers.length + " images", totalBytes, startTime);
+    }
+
+    private void uploadPacked(ImagePlus[] imps, ClearCLBuffer[] buffers, int from, int to, long bytes) {
+        ByteBuffer staging = getStaging(buffers[from], bytes);
+        long offset = 0;
+        for (int i = from; i < to; i++) {
+            ImageStack stack = imps[i].getStack();
+            long sliceBytes = getSliceSizeInBytes(buffers[i]);
+            for (int z = 0; z < stack.getSize(); z++) {
+                staging.position((int) (offset + z * sliceBytes));
+                putPixels(staging, stack.getPixels(z + 1));
+            }
+            offset += buffers[i].getSizeInBytes();
+        }
+        offset = 0;
+        for (int i = from; i < to; i++) {
+            // the staging area stays untouched until the last, blocking transfer is done
+            buffers[i].readFrom(part(staging, offset, buffers[i].getSizeInBytes()), 0, getNumberOfPixels(buffers[i]), i == to - 1);
+            offset += buffers[i].getSizeInBytes();
+        }
+    }
+
+    /**
+     * Downloads many buffers into new images. Like uploadBatch, the buffers are packed into the staging area; only
+     * the last transfer of a batch blocks. Buffers bigger than 256 MB are downloaded on their own in chunks of
+     * slices. The caller checks canDownload for all buffers before.
+     */
+    public synchronized ImagePlus[] downloadBatch(ClearCLBuffer[] buffers, String[] titles) {
+        long startTime = System.nanoTime();
+        ImagePlus[] result = new ImagePlus[buffers.length];
+        long totalBytes = 0;
+        int first = 0;
+        long batchBytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            long bytes = buffers[i].getSizeInBytes();
+            totalBytes += bytes;
+            if (i > first && (bytes > MAXIMUM_BATCH_BYTES || batchBytes + bytes > MAXIMUM_BATCH_BYTES)) {
+                downloadPacked(buffers, titles, result, first, i, batchBytes);
+                first = i;
+                batchBytes = 0;
+            }
+            if (bytes > MAXIMUM_BATCH_BYTES) {
+                result[i] = downloadImage(buffers[i], titles[i]);
+                first = i + 1;
+                continue;
+            }
+            batchBytes += bytes;
+        }
+        if (first < buffers.length) {
+            downloadPacked(buffers, titles, result, first, buffers.length, batchBytes);
+        }
+        reportBandwidth("Pulled", buffers.length + " images", totalBytes, startTime);
+        return result;
+    }
+
+    private void downloadPacked(ClearCLBuffer[] buffers, String[] titles, ImagePlus[] result, int from, int to, long bytes) {
+        ByteBuffer staging = getStaging(buffers[from], bytes);
+        long offset = 0;
+        for (int i = from; i < to; i++) {
+            buffers[i].writeTo(part(staging, offset, buffers[i].getSizeInBytes()), 0, getNumberOfPixels(buffers[i]), i == to - 1);
+            offset += buffers[i].getSizeInBytes();
+        }
+        offset = 0;
+        for (int i = from; i < to; i++) {
+            ClearCLBuffer buffer = buffers[i];
+            int sliceElements = (int) (buffer.getWidth() * buffer.getHeight());
+            long sliceBytes = getSliceSizeInBytes(buffer);
+            int depth = buffer.getDimension() > 2 ? (int) buffer.getDepth() : 1;
+            ImageStack stack = new ImageStack((int) buffer.getWidth(), (int) buffer.getHeight());
+            for (int z = 0; z < depth; z++) {
+                staging.position((int) (offset + z * sliceBytes));
+                Object pixels = createPixels(buffer.getNativeType(), sliceElements);
+                getPixels(staging, pixels);
+                stack.addSlice("", pixels);
+            }
+            result[i] = new ImagePlus(titles[i], stack);
+            offset += buffer.getSizeInBytes();
+        }
+    }
+
+    // offset and bytes are within a batch, which fits into the staging area
+    private static ByteBuffer part(ByteBuffer buffer, long offset, long bytes) {
+        ByteBuffer part = buffer.duplicate();
+        part.position((int) offset);
+        part.limit((int) (offset + bytes));
+        return part.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static long getNumberOfPixels(ClearCLBuffer buffer) {
+        return buffer.getWidth() * buffer.getHeight() * (buffer.getDimension() > 2 ? buffer.getDepth() : 1);
+    }
+
+    private static Object createPixels(NativeTypeEnum type, int numberOfPixels) {
+        if (type == NativeTypeEnum.UnsignedByte) {
+            return new byte[numberOfPixels];
+        } else if (type == NativeTypeEnum.UnsignedShort) {
+            return new short[numberOfPixels];
+        } else {
+            return new float[numberOfPixels];
+        }
+    }
+
+    // copies a pixel array to the current position of the buffer
+    private static void putPixels(ByteBuffer buffer, Object pixels) {
+        if (pixels instanceof byte[]) {
+            buffer.put((byte[]) pixels);
+        } else if (pixels instanceof short[]) {
+            buffer.asShortBuffer().put((short[]) pixels);
+        } else if (pixels instanceof float[]) {
+            buffer.asFloatBuffer().put((float[]) pixels);
+        } else {
+            throw new IllegalArgumentException("Unsupported pixel array: " + pixels);
+        }
+    }
+
+    // fills a pixel array from the current position of the buffer
+    private static void getPixels(ByteBuffer buffer, Object pixels) {
+        if (pixels instanceof byte[]) {
+            buffer.get((byte[]) pixels);
+        } else if (pixels instanceof short[]) {
+            buffer.asShortBuffer().get((short[]) pixels);
+        } else if (pixels instanceof float[]) {
+            buffer.asFloatBuffer().get((float[]) pixels);
+        } else {
+            throw new IllegalArgumentException("Unsupported pixel array: " + pixels);
+        }
+    }
+
+    private static long getSliceSizeInBytes(ClearCLBuffer buffer) {
+        return buffer.getWidth() * buffer.getHeight() * buffer.getNativeType().getSizeInBytes();
+    }
+
+    private static void reportBandwidth(String direction, String title, long bytes, long startTime) {
+        if (CLIJ.debug) {
+            double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+            System.out.println(direction + " " + title + ": " + bytes + " bytes in " + String.format("%.3f", seconds * 1000) + " ms (" +
+                    String.format("%.2f", seconds > 0 ? bytes / seconds / 1024 / 1024 / 1024 : 0) + " GB/s)");
+        }
+    }
+
+    // uploads the slices from..to (exclusive, zero-based) with as few transfers as possible
+    private void uploadSlices(ImageStack stack, ClearCLBuffer buffer, int from, int to) {
+        long sliceElements = buffer.getWidth() * buffer.getHeight();
+        long sliceBytes = getSliceSizeInBytes(buffer);
+        int slicesPerTransfer = getSlicesPerTransfer(sliceBytes);
+        for (int first = from; first < to; first += slicesPerTransfer) {
+            int count = Math.min(slicesPerTransfer, to - first);
+            ByteBuffer staging = getStaging(buffer, count * sliceBytes);
+            for (int z = 0; z < count; z++) {
+                staging.position((int) (z * sliceBytes));
+                putPixels(staging, stack.getPixels(first + z + 1));
+            }
+            staging.rewind();
+            // blocking, because the staging area is refilled right afterwards
+            buffer.readFrom(staging, first * sliceElements, count * sliceElements, true);
+        }
+    }
+
+    private static int getSlicesPerTransfer(long sliceBytes) {
+        return (int) Math.max(1, MAXIMUM_TRANSFER_BYTES / Math.max(1, sliceBytes));
+    }
+
+    private ByteBuffer getStaging(ClearCLBuffer buffer, long bytes) {
+        return getStaging(buffer.getContext(), bytes);
+    }
+
+    /**
+     * Returns the staging area with room for the given number of bytes, allocated in the given context. It's valid
+     * until the next call or clear.
+     */
+    synchronized ByteBuffer getStaging(ClearCLContext context, long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The staging area is limited to 2 GB: " + bytes + " bytes requested");
+        }
+        if (staging == null || staging.capacity() < bytes || (pinnedMemory != null && context != stagingContext)) {
+            clear();
+            staging = allocate(context, bytes);
+            stagingContext = context;
+        }
+        staging.clear();
+        staging.limit((int) bytes);
+        return staging;
+    }
+
+    private ByteBuffer allocate(ClearCLContext context, long bytes) {
+        if (pinnedMemoryAvailable && context != null) {
+            try {
+                pinnedMemory = CLIJPinnedMemory.allocate(context, bytes);
+                return pinnedMemory.getBuffer();
+            } catch (RuntimeException e) {
+                pinnedMemoryAvailable = false;
+                if (CLIJ.debug) {
+                    System.out.println("Pinned memory not available, staging in a direct buffer: " + e.getMessage());
+                }
+            } catch (LinkageError e) {
+                // JOCL isn't on the class path
+                pinnedMemoryAvailable = false;
+            }
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Frees the staging area; it's allocated again when needed.
+     */
+    public synchronized void clear() {
+        if (pinnedMemory != null) {
+            pinnedMemory.close();
+            pinnedMemory = null;
+        }
+        staging = null;
+        stagingContext = null;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return staging == null ? 0 : staging.capacity();
+    }
+}
@@ -0,0 +1,12 @@
+package net.haesleinhuepf.clij.macro;
+
+/**
+ * CLIJSynchronousProcessor marks plugins which hand results back to ImageJ, e.g. to the results table, although
+ * they also write destination images. In asynchronous execution mode, the CLIJHandler runs them on the macro
+ * thread after all queued operations have finished.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public interface CLIJSynchronousProcessor {
+}
@@ -0,0 +1,310 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CLIJTiledExecutor applies a CLIJNeighborhoodOperation or CLIJPointwiseOperation to an image which doesn't fit
+ * into GPU memory. The image is split into bricks; every brick is extended by the halo of the operation, pushed,
+ * processed and pulled, and its inner part is written into the result image in host memory. Thus, the result equals
+ * processing the whole image at once.
+ * <p>
+ * Transfers are pipelined with compute: while the GPU processes a brick, a reader thread copies the next brick
+ * into a staging buffer and a writer thread stitches the previous result. Bricks spanning whole slices (tile width
+ * and height 0) read every slice only once, which is recommended for virtual stacks.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJTiledExecutor {
+
+    static class Brick {
+        // region including halo
+        final int x, y, z, width, height, depth;
+        // inner region written to the result
+        final int innerX, innerY, innerZ, innerWidth, innerHeight, innerDepth;
+
+        private Brick(int x, int y, int z, int width, int height, int depth,
+                      int innerX, int innerY, int innerZ, int innerWidth, int innerHeight, int innerDepth) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.innerX = innerX;
+            this.innerY = innerY;
+            this.innerZ = innerZ;
+            this.innerWidth = innerWidth;
+            this.innerHeight = innerHeight;
+            this.innerDepth = innerDepth;
+        }
+
+        private long getNumberOfPixels() {
+            return (long) width * height * depth;
+        }
+    }
+
+    private final CLIJHandler handler;
+    private final CLIJMacroPlugin plugin;
+    private final CLIJMacroPluginSignature signature;
+    private final Object[] parameters;
+    private final int[] tileSize;
+
+    /**
+     * @param parameters the Number parameters of the plugin following source and destination
+     * @param tileWidth  size of the bricks without halo; 0 means the whole image in that dimension
+     */
+    public CLIJTiledExecutor(CLIJHandler handler, CLIJMacroPlugin plugin, Object[] parameters, int tileWidth, int tileHeight, int tileDepth) {
+        this.handler = handler;
+        this.plugin = plugin;
+        this.signature = CLIJMacroPluginSignature.parse(plugin.getParameterHelpText());
+        this.parameters = parameters;
+        this.tileSize = new int[]{tileWidth, tileHeight, tileDepth};
+        if (!(plugin instanceof CLIJOpenCLProcessor) ||
+                !(plugin instanceof CLIJNeighborhoodOperation || plugin instanceof CLIJPointwiseOperation) ||
+                signature.getNumberOfParameters() < 2 || !signature.isImage(0) || !signature.isDestination(1)) {
+            throw new IllegalArgumentException(plugin.getName() + " can't be executed tile by tile");
+        }
+    }
+
+    private Object[] getArguments(Object source, Object destination) {
+        Object[] args = new Object[parameters.length + 2];
+        args[0] = source;
+        args[1] = destination;
+        System.arraycopy(parameters, 0, args, 2, parameters.length);
+        return args;
+    }
+
+    /**
+     * Processes the given image and returns the result as new image with the given title.
+     */
+    public ImagePlus execute(ImagePlus source, String title) {
+        if (!CLIJStagingArea.canUpload(source)) {
+            throw new IllegalArgumentException("Tiled execution supports 2D and 3D images with 8, 16 or 32 bit only: " + source.getTitle());
+        }
+        int[] halo = new int[3];
+        if (plugin instanceof CLIJNeighborhoodOperation) {
+            // the plugin instance is shared; its arguments are only set while holding the lock of the handler
+            synchronized (handler) {
+                plugin.setArgs(getArguments(null, null));
+                halo = ((CLIJNeighborhoodOperation) plugin).getHalo();
+            }
+        }
+        int[] size = new int[]{source.getWidth(), source.getHeight(), source.getStackSize()};
+        ArrayList<Brick> bricks = createBricks(size, tileSize, halo);
+
+        NativeTypeEnum type = CLIJStagingArea.nativeTypeOf(source.getBitDepth());
+        int bytesPerPixel = source.getBitDepth() / 8;
+        long maximumBrickPixels = 0;
+        for (Brick brick : bricks) {
+            maximumBrickPixels = Math.max(maximumBrickPixels, brick.getNumberOfPixels());
+        }
+        if (maximumBrickPixels * bytesPerPixel > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bricks must be smaller than 2 GB; choose a smaller tile size");
+        }
+        if (CLIJ.debug) {
+            System.out.println("Processing " + source.getTitle() + " in " + bricks.size() + " bricks with halo " + halo[0] + "/" + halo[1] + "/" + halo[2]);
+        }
+
+        ImageStack sourceStack = source.getStack();
+        ImageStack resultStack = new ImageStack(size[0], size[1]);
+        for (int z = 0; z < size[2]; z++) {
+            resultStack.addSlice("", createPixels(type, size[0] * size[1]));
+        }
+
+        // double buffering: the reader fills one input buffer while the GPU reads the other one, the same for output
+        ByteBuffer[] inputStaging = new ByteBuffer[2];
+        ByteBuffer[] outputStaging = new ByteBuffer[2];
+        for (int i = 0; i < 2; i++) {
+            inputStaging[i] = ByteBuffer.allocateDirect((int) (maximumBrickPixels * bytesPerPixel)).order(ByteOrder.nativeOrder());
+            outputStaging[i] = ByteBuffer.allocateDirect((int) (maximumBrickPixels * bytesPerPixel)).order(ByteOrder.nativeOrder());
+        }
+        ExecutorService reader = createExecutor("CLIJ brick reader");
+        ExecutorService writer = createExecutor("CLIJ brick writer");
+        Future<?>[] stitching = new Future<?>[2];
+        try {
+            Future<?> reading = reader.submit(read(sourceStack, size, bricks.get(0), inputStaging[0], bytesPerPixel));
+            for (int i = 0; i < bricks.size(); i++) {
+                Brick brick = bricks.get(i);
+                ByteBuffer input = inputStaging[i % 2];
+                ByteBuffer output = outputStaging[i % 2];
+                waitFor(reading);
+                if (i + 1 < bricks.size()) {
+                    // the other input buffer was uploaded in the last iteration
+                    reading = reader.submit(read(sourceStack, size, bricks.get(i + 1), inputStaging[(i + 1) % 2], bytesPerPixel));
+                }
+                // the output buffer must have been stitched before it's overwritten
+                waitFor(stitching[i % 2]);
+                process(brick, size[2] > 1, type, input, output, bytesPerPixel);
+                stitching[i % 2] = writer.submit(stitch(resultStack, size, brick, output, bytesPerPixel));
+            }
+            waitFor(stitching[0]);
+            waitFor(stitching[1]);
+        } finally {
+            reader.shutdownNow();
+            writer.shutdownNow();
+        }
+        return new ImagePlus(title, resultStack);
+    }
+
+    /**
+     * Splits an image of the given size into bricks of the given tile size, extended by the halo. At the image
+     * border, bricks are cropped to the image.
+     */
+    static ArrayList<Brick> createBricks(int[] size, int[] tileSize, int[] halo) {
+        int[] step = new int[3];
+        for (int d = 0; d < 3; d++) {
+            step[d] = tileSize[d] > 0 ? Math.min(tileSize[d], size[d]) : size[d];
+        }
+        ArrayList<Brick> bricks = new ArrayList<Brick>();
+        for (int z = 0; z < size[2]; z += step[2]) {
+            for (int y = 0; y < size[1]; y += step[1]) {
+                for (int x = 0; x < size[0]; x += step[0]) {
+                    int[] inner = new int[]{x, y, z};
+                    int[] start = new int[3];
+                    int[] end = new int[3];
+                    int[] innerSize = new int[3];
+                    for (int d = 0; d < 3; d++) {
+                        innerSize[d] = Math.min(step[d], size[d] - inner[d]);
+                        // at the image border, the operation sees the same border as without tiling
+                        start[d] = Math.max(0, inner[d] - halo[d]);
+                        end[d] = Math.min(size[d], inner[d] + innerSize[d] + halo[d]);
+                    }
+                    bricks.add(new Brick(start[0], start[1], start[2], end[0] - start[0], end[1] - start[1], end[2] - start[2],
+                            x, y, z, innerSize[0], innerSize[1], innerSize[2]));
+                }
+            }
+        }
+        return bricks;
+    }
+
+    private void process(Brick brick, boolean is3D, NativeTypeEnum type, ByteBuffer input, ByteBuffer output, int bytesPerPixel) {
+        long[] dimensions = is3D ? new long[]{brick.width, brick.height, brick.depth} : new long[]{brick.width, brick.height};
+        int bytes = (int) (brick.getNumberOfPixels() * bytesPerPixel);
+        input.clear();
+        input.limit(bytes);
+        output.clear();
+        output.limit(bytes);
+        synchronized (handler) {
+            CLIJ clij = CLIJ.getInstance();
+            ClearCLBuffer inputBuffer = handler.createCLBuffer(clij, dimensions, type);
+            ClearCLBuffer outputBuffer = handler.createCLBuffer(clij, dimensions, type);
+            try {
+                inputBuffer.readFrom(input, true);
+                handler.executeOnBuffers(plugin, signature, getArguments(inputBuffer, outputBuffer));
+                outputBuffer.writeTo(output, true);
+            } finally {
+                handler.releaseBuffer(inputBuffer);
+                handler.releaseBuffer(outputBuffer);
+            }
+        }
+    }
+
+    static Callable<Object> read(final ImageStack stack, final int[] size, final Brick brick, final ByteBuffer staging, final int bytesPerPixel) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                staging.clear();
+                for (int z = brick.z; z < brick.z + brick.depth; z++) {
+                    Object pixels = stack.getPixels(z + 1);
+                    for (int y = brick.y; y < brick.y + brick.height; y++) {
+                        int stagingIndex = ((z - brick.z) * brick.height + (y - brick.y)) * brick.width;
+                        copy(pixels, y * size[0] + brick.x, staging, stagingIndex, brick.width, bytesPerPixel, true);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    static Callable<Object> stitch(final ImageStack stack, final int[] size, final Brick brick, final ByteBuffer staging, final int bytesPerPixel) {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                for (int z = brick.innerZ; z < brick.innerZ + brick.innerDepth; z++) {
+                    Object pixels = stack.getPixels(z + 1);
+                    for (int y = brick.innerY; y < brick.innerY + brick.innerHeight; y++) {
+                        int stagingIndex = ((z - brick.z) * brick.height + (y - brick.y)) * brick.width + (brick.innerX - brick.x);
+                        copy(pixels, y * size[0] + brick.innerX, staging, stagingIndex, brick.innerWidth, bytesPerPixel, false);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    // copies a row of pixels between a pixel array and a staging buffer; indices are in pixels
+    private static void copy(Object pixels, int pixelIndex, ByteBuffer staging, int stagingIndex, int length, int bytesPerPixel, boolean toStaging) {
+        ByteBuffer row = staging.duplicate().order(ByteOrder.nativeOrder());
+        row.clear();
+        row.position(stagingIndex * bytesPerPixel);
+        if (pixels instanceof byte[]) {
+            if (toStaging) {
+                row.put((byte[]) pixels, pixelIndex, length);
+            } else {
+                row.get((byte[]) pixels, pixelIndex, length);
+            }
+        } else if (pixels instanceof short[]) {
+            if (toStaging) {
+                row.asShortBuffer().put((short[]) pixels, pixelIndex, length);
+            } else {
+                row.asShortBuffer().get((short[]) pixels, pixelIndex, length);
+            }
+        } else {
+            if (toStaging) {
+                row.asFloatBuffer().put((float[]) pixels, pixelIndex, length);
+            } else {
+                row.asFloatBuffer().get((float[]) pixels, pixelIndex, length);
+            }
+        }
+    }
+
+    private static Object createPixels(NativeTypeEnum type, int numberOfPixels) {
+        if (type == NativeTypeEnum.UnsignedByte) {
+            return new byte[numberOfPixels];
+        } else if (type == NativeTypeEnum.UnsignedShort) {
+            return new short[numberOfPixels];
+        } else {
+            return new float[numberOfPixels];
+        }
+    }
+
+    private static ExecutorService createExecutor(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static void waitFor(Future<?> future) {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tiled execution was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tiled execution failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
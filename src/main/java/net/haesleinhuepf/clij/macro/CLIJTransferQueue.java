@@ -0,0 +1,315 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.WindowManager;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.clearcl.ClearCLContext;
+import net.haesleinhuepf.clij.clearcl.ClearCLQueue;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_event;
+import org.jocl.cl_mem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CLIJTransferQueue pushes and pulls images in the background while the macro continues. Uploads and downloads run
+ * on two threads with a staging area each; so, the upload of the next frame, processing of the current frame and
+ * the download of the previous frame can overlap.
+ * <p>
+ * The transfers are enqueued on a dedicated command queue of the context through JOCL. Each one waits for a marker
+ * event of the default queue; so, it starts after all operations enqueued before. The lock of the CLIJHandler is
+ * only held while the GPU buffer is looked up or created; copying pixels and waiting for the transfer event happen
+ * without it. If ClearCL doesn't run on JOCL, the transfer is done on the default queue while holding the lock.
+ * <p>
+ * Ordering with later operations is done with futures: every transfer waits for the transfer of the same image
+ * handed over before, and the CLIJHandler waits for pending transfers of the images an operation uses.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJTransferQueue {
+    private final CLIJHandler handler;
+    private final ExecutorService uploadExecutor = createExecutor("CLIJ upload");
+    private final ExecutorService downloadExecutor = createExecutor("CLIJ download");
+    private final ConcurrentHashMap<String, Future<?>> pendingTransfers = new ConcurrentHashMap<String, Future<?>>();
+
+    private final CLIJStagingArea uploadStaging = new CLIJStagingArea();
+    private final CLIJStagingArea downloadStaging = new CLIJStagingArea();
+    private ClearCLQueue queue = null;
+    private ClearCLContext queueContext = null;
+    private volatile boolean eventsAvailable = true;
+
+    CLIJTransferQueue(CLIJHandler handler) {
+        this.handler = handler;
+    }
+
+    private static ExecutorService createExecutor(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts uploading the image under the given (qualified) name.
+     */
+    public synchronized Future<?> push(final ImagePlus imp, final String key) {
+        if (!CLIJStagingArea.canUpload(imp)) {
+            throw new IllegalArgumentException("Asynchronous push supports 2D and 3D images with 8, 16 or 32 bit only: " + imp.getTitle());
+        }
+        final Future<?> previous = pendingTransfers.get(key);
+        Future<?> future = uploadExecutor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                waitFor(previous);
+                long[] dimensions = CLIJStagingArea.dimensionsOf(imp);
+                NativeTypeEnum type = CLIJStagingArea.nativeTypeOf(imp.getBitDepth());
+                ByteBuffer staging = stage(imp);
+                long startTime = System.nanoTime();
+                ClearCLBuffer buffer = handler.beginUpload(key, dimensions, type);
+                try {
+                    transfer(buffer, staging, true);
+                } finally {
+                    handler.endTransfer(key, buffer, true);
+                }
+                reportBandwidth("Pushed", imp.getTitle(), staging.limit(), startTime);
+                return null;
+            }
+        });
+        pendingTransfers.put(key, future);
+        return future;
+    }
+
+    /**
+     * Starts downloading the image with the given (qualified) name and shows it under the given title. If an image
+     * with that title and the same size is open already, its pixels are overwritten.
+     */
+    public synchronized Future<?> pull(final String key, final String title) {
+        final Future<?> previous = pendingTransfers.get(key);
+        Future<?> future = downloadExecutor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                waitFor(previous);
+                long startTime = System.nanoTime();
+                ClearCLBuffer buffer = handler.beginDownload(key);
+                ByteBuffer staging;
+                try {
+                    staging = downloadStaging.getStaging(buffer.getContext(), buffer.getSizeInBytes());
+                    transfer(buffer, staging, false);
+                } finally {
+                    handler.endTransfer(key, buffer, false);
+                }
+                reportBandwidth("Pulled", title, staging.limit(), startTime);
+                show(buffer, staging, title);
+                return null;
+            }
+        });
+        pendingTransfers.put(key, future);
+        return future;
+    }
+
+    private ByteBuffer stage(ImagePlus imp) {
+        ImageStack stack = imp.getStack();
+        long sliceBytes = (long) imp.getWidth() * imp.getHeight() * (imp.getBitDepth() / 8);
+        ByteBuffer staging = uploadStaging.getStaging(CLIJ.getInstance().getClearCLContext(), sliceBytes * stack.getSize());
+        for (int z = 0; z < stack.getSize(); z++) {
+            staging.position((int) (z * sliceBytes));
+            Object pixels = stack.getPixels(z + 1);
+            if (pixels instanceof byte[]) {
+                staging.put((byte[]) pixels);
+            } else if (pixels instanceof short[]) {
+                staging.asShortBuffer().put((short[]) pixels);
+            } else {
+                staging.asFloatBuffer().put((float[]) pixels);
+            }
+        }
+        staging.rewind();
+        return staging;
+    }
+
+    /**
+     * Transfers the staging area into the buffer or back. Blocks the calling thread until the transfer is done, but
+     * not the handler.
+     */
+    private void transfer(ClearCLBuffer buffer, ByteBuffer staging, boolean upload) {
+        ClearCLContext context = buffer.getContext();
+        cl_command_queue defaultQueue = null;
+        cl_command_queue transferQueue = null;
+        cl_mem memory = null;
+        if (eventsAvailable) {
+            try {
+                defaultQueue = (cl_command_queue) context.getDefaultQueue().getPeerPointer().getPointer();
+                transferQueue = (cl_command_queue) getQueue(context).getPeerPointer().getPointer();
+                memory = (cl_mem) buffer.getPeerPointer().getPointer();
+            } catch (ClassCastException e) {
+                // ClearCL doesn't run on JOCL
+                eventsAvailable = false;
+            } catch (LinkageError e) {
+                // JOCL isn't on the class path
+                eventsAvailable = false;
+            }
+        }
+        if (!eventsAvailable) {
+            synchronized (handler) {
+                if (upload) {
+                    buffer.readFrom(staging, true);
+                } else {
+                    buffer.writeTo(staging, true);
+                }
+            }
+            return;
+        }
+
+        cl_event marker = new cl_event();
+        check(CL.clEnqueueMarkerWithWaitList(defaultQueue, 0, null, marker), "clEnqueueMarkerWithWaitList");
+        cl_event transferred = new cl_event();
+        try {
+            CL.clFlush(defaultQueue);
+            cl_event[] waitList = new cl_event[]{marker};
+            if (upload) {
+                check(CL.clEnqueueWriteBuffer(transferQueue, memory, CL.CL_FALSE, 0, staging.limit(), Pointer.to(staging), 1, waitList, transferred), "clEnqueueWriteBuffer");
+            } else {
+                check(CL.clEnqueueReadBuffer(transferQueue, memory, CL.CL_FALSE, 0, staging.limit(), Pointer.to(staging), 1, waitList, transferred), "clEnqueueReadBuffer");
+            }
+            check(CL.clWaitForEvents(1, new cl_event[]{transferred}), "clWaitForEvents");
+        } finally {
+            CL.clReleaseEvent(marker);
+            CL.clReleaseEvent(transferred);
+        }
+    }
+
+    // the command queue for transfers; both transfer threads share it
+    private synchronized ClearCLQueue getQueue(ClearCLContext context) {
+        if (queue == null || queueContext != context) {
+            queue = context.createQueue();
+            queueContext = context;
+        }
+        return queue;
+    }
+
+    private static void check(int error, String function) {
+        if (error != CL.CL_SUCCESS) {
+            throw new CLException(function + " failed with error " + error);
+        }
+    }
+
+    // buffer is only used for its size and type; its content might change already
+    private void show(ClearCLBuffer buffer, ByteBuffer staging, String title) {
+        int width = (int) buffer.getWidth();
+        int height = (int) buffer.getHeight();
+        int depth = buffer.getDimension() > 2 ? (int) buffer.getDepth() : 1;
+        int sliceElements = width * height;
+        NativeTypeEnum type = buffer.getNativeType();
+
+        ImagePlus target = WindowManager.getImage(title);
+        boolean inPlace = target != null &&
+                target.getWidth() == width && target.getHeight() == height && target.getStackSize() == depth &&
+                CLIJStagingArea.nativeTypeOf(target.getBitDepth()) == type;
+        ImageStack stack = inPlace ? target.getStack() : new ImageStack(width, height);
+        for (int z = 0; z < depth; z++) {
+            staging.position((int) (z * sliceElements * type.getSizeInBytes()));
+            Object pixels = inPlace ? stack.getPixels(z + 1) : null;
+            if (type == NativeTypeEnum.UnsignedByte) {
+                pixels = pixels != null ? pixels : new byte[sliceElements];
+                staging.get((byte[]) pixels);
+            } else if (type == NativeTypeEnum.UnsignedShort) {
+                pixels = pixels != null ? pixels : new short[sliceElements];
+                staging.asShortBuffer().get((short[]) pixels);
+            } else {
+                pixels = pixels != null ? pixels : new float[sliceElements];
+                staging.asFloatBuffer().get((float[]) pixels);
+            }
+            if (inPlace) {
+                stack.setPixels(pixels, z + 1);
+            } else {
+                stack.addSlice("", pixels);
+            }
+        }
+        if (inPlace) {
+            target.updateAndDraw();
+        } else {
+            ImagePlus imp = new ImagePlus(title, stack);
+            imp.resetDisplayRange();
+            imp.show();
+        }
+    }
+
+    /**
+     * Waits until the pending transfer of the given (qualified) image name is finished. Must not be called by a
+     * thread holding the lock of the handler.
+     *
+     * @return an error message if the transfer failed or null
+     */
+    public String waitFor(String key) {
+        Future<?> future = pendingTransfers.get(key);
+        if (future == null) {
+            return null;
+        }
+        String error = waitFor(future);
+        pendingTransfers.remove(key, future);
+        return error;
+    }
+
+    /**
+     * Waits until all pending transfers are finished. Must not be called by a thread holding the lock of the
+     * handler.
+     *
+     * @return an error message if a transfer failed or null
+     */
+    public String waitForAll() {
+        String error = null;
+        for (String key : pendingTransfers.keySet()) {
+            String transferError = waitFor(key);
+            if (error == null) {
+                error = transferError;
+            }
+        }
+        return error;
+    }
+
+    public boolean hasPendingTransfers() {
+        return !pendingTransfers.isEmpty();
+    }
+
+    private static String waitFor(Future<?> future) {
+        if (future == null) {
+            return null;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (CLIJ.debug) {
+                e.getCause().printStackTrace();
+            }
+            return "Transfer failed: " + e.getCause().getMessage();
+        }
+        return null;
+    }
+
+    private static void reportBandwidth(String direction, String title, long bytes, long startTime) {
+        if (CLIJ.debug) {
+            double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+            System.out.println(direction + " " + title + " asynchronously: " + bytes + " bytes in " + String.format("%.3f", seconds * 1000) + " ms (" +
+                    String.format("%.2f", seconds > 0 ? bytes / seconds / 1024 / 1024 / 1024 : 0) + " GB/s)");
+        }
+    }
+}
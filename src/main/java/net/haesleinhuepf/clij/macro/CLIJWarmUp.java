@@ -0,0 +1,179 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.IJ;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CLIJWarmUp compiles the kernels of the modules a macro calls before the macro needs them. The macro text is
+ * scanned for Ext.CLIJ_* calls; every module found is executed once on tiny images of the pixel types in use on a
+ * background thread. The kernels end up in the program cache of CLIJ; so, the first call of the module in the macro
+ * doesn't wait for the OpenCL compiler anymore. Modules are warmed up in the order the macro calls them.
+ * <p>
+ * Only modules which read images and write destination images can be warmed up; modules with String parameters are
+ * skipped, because there are no meaningful values for them. All numbers are set to 0, which keeps tiny images in
+ * bounds. Errors are ignored; the module is then compiled at its first call as before.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJWarmUp {
+    private static final Pattern METHOD_PATTERN = Pattern.compile("Ext\\.(CLIJ_\\w+)\\s*\\(");
+    private static final long WARM_UP_SIZE = 8;
+
+    private final CLIJHandler handler;
+    private final HashSet<String> warmedUp = new HashSet<String>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CLIJ warm-up");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public CLIJWarmUp(CLIJHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Returns the content of the given macro file, or the given text if it's not a file.
+     */
+    public static String readMacro(String macroFileOrText) {
+        if (new File(macroFileOrText).isFile()) {
+            return IJ.openAsString(macroFileOrText);
+        }
+        return macroFileOrText;
+    }
+
+    /**
+     * Returns the names of the CLIJ methods called in the given macro in the order of their first call.
+     */
+    public static LinkedHashSet<String> findMethodNames(String macroText) {
+        LinkedHashSet<String> names = new LinkedHashSet<String>();
+        Matcher matcher = METHOD_PATTERN.matcher(macroText);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+
+    /**
+     * Starts warming up the modules called in the given macro for the given pixel types in the background.
+     */
+    public Future<?> start(String macroText, final Collection<NativeTypeEnum> nativeTypes) {
+        final LinkedHashSet<String> names = findMethodNames(macroText);
+        if (CLIJ.debug) {
+            System.out.println("Warming up " + names + " for " + nativeTypes);
+        }
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = System.nanoTime();
+                for (String name : names) {
+                    for (NativeTypeEnum nativeType : nativeTypes) {
+                        warmUp(name, nativeType);
+                    }
+                }
+                if (CLIJ.debug) {
+                    System.out.println("Warm-up finished after " + String.format("%.3f", (System.nanoTime() - startTime) / 1000000.0) + " ms");
+                }
+            }
+        });
+    }
+
+    private void warmUp(String name, NativeTypeEnum nativeType) {
+        CLIJMacroPluginService pluginService = handler.getPluginService();
+        CLIJMacroPlugin plugin = pluginService.getCLIJMacroPlugin(name);
+        CLIJMacroPluginSignature signature = pluginService.getCLIJMacroPluginSignature(name);
+        if (!(plugin instanceof CLIJOpenCLProcessor) || plugin instanceof CLIJSynchronousProcessor || !isWarmable(signature)) {
+            return;
+        }
+        String dimensions = plugin instanceof OffersDocumentation ? ((OffersDocumentation) plugin).getAvailableForDimensions() : null;
+        if (dimensions == null || dimensions.contains("2D")) {
+            warmUp(plugin, signature, nativeType, new long[]{WARM_UP_SIZE, WARM_UP_SIZE});
+        }
+        if (dimensions == null || dimensions.contains("3D")) {
+            warmUp(plugin, signature, nativeType, new long[]{WARM_UP_SIZE, WARM_UP_SIZE, WARM_UP_SIZE});
+        }
+    }
+
+    static boolean isWarmable(CLIJMacroPluginSignature signature) {
+        if (signature == null || !signature.producesImages()) {
+            return false;
+        }
+        boolean readsImage = false;
+        for (int i = 0; i < signature.getNumberOfParameters(); i++) {
+            if (signature.getType(i) == CLIJMacroPluginSignature.ParameterType.STRING) {
+                return false;
+            }
+            readsImage = readsImage || (signature.isImage(i) && !signature.isDestination(i));
+        }
+        return readsImage;
+    }
+
+    private void warmUp(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, NativeTypeEnum nativeType, long[] dimensions) {
+        String key = plugin.getName() + " " + nativeType + " " + dimensions.length + "D";
+        synchronized (warmedUp) {
+            if (!warmedUp.add(key)) {
+                return;
+            }
+        }
+        ArrayList<ClearCLBuffer> buffers = new ArrayList<ClearCLBuffer>();
+        // the macro waits while a module is warmed up, as it would for compiling the module itself
+        synchronized (handler) {
+            try {
+                CLIJ clij = CLIJ.getInstance();
+                Object[] args = new Object[signature.getNumberOfParameters()];
+                ClearCLBuffer template = null;
+                for (int i = 0; i < args.length; i++) {
+                    if (signature.isImage(i) && !signature.isDestination(i)) {
+                        ClearCLBuffer source = handler.createCLBuffer(clij, dimensions, nativeType);
+                        buffers.add(source);
+                        args[i] = source;
+                        if (template == null) {
+                            template = source;
+                        }
+                    } else if (!signature.isImage(i)) {
+                        args[i] = 0.0;
+                    }
+                }
+                plugin.setClij(clij);
+                plugin.setArgs(args);
+                for (int i = 0; i < args.length; i++) {
+                    if (signature.isDestination(i)) {
+                        ClearCLBuffer destination = plugin.createOutputBufferFromSource(template);
+                        buffers.add(destination);
+                        args[i] = destination;
+                    }
+                }
+                if (CLIJ.debug) {
+                    System.out.println("Warming up " + key);
+                }
+                handler.executeOnBuffers(plugin, signature, args);
+            } catch (RuntimeException e) {
+                if (CLIJ.debug) {
+                    System.out.println("Warming up " + key + " failed: " + e.getMessage());
+                }
+            } finally {
+                for (ClearCLBuffer buffer : buffers) {
+                    handler.releaseBuffer(buffer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package net.haesleinhuepf.clij.macro.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CLIJMetrics is a registry of per-operation call counters and latency histograms. It is switched off by default;
+ * as long as it is off, measuring costs a single volatile read per call.
+ * <p>
+ * Usage from Java:
+ * <pre>
+ * CLIJMetrics.getInstance().setEnabled(true);
+ * // ... run macro or plugins ...
+ * System.out.println(CLIJMetrics.getInstance().report());
+ * </pre>
+ * From macro, use Ext.CLIJ_collectTimings(true) and Ext.CLIJ_reportTimings().
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class CLIJMetrics {
+    private static final CLIJMetrics instance = new CLIJMetrics();
+
+    public static CLIJMetrics getInstance() {
+        return instance;
+    }
+
+    private volatile boolean enabled = false;
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records the duration of one call of the given operation. Nothing is recorded while the registry is disabled.
+     */
+    public void record(String operation, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, OperationMetrics::new);
+        }
+        metrics.record(nanos);
+    }
+
+    public OperationMetrics getOperationMetrics(String operation) {
+        return operations.get(operation);
+    }
+
+    public ArrayList<String> getOperationNames() {
+        ArrayList<String> names = new ArrayList<String>(operations.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    public void reset() {
+        operations.clear();
+    }
+
+    public String report() {
+        StringBuilder stringBuilder = new StringBuilder();
+        ArrayList<String> names = getOperationNames();
+        if (!enabled) {
+            stringBuilder.append("Timing is switched off. Call Ext.CLIJ_collectTimings(true) to switch it on.\n");
+        }
+        stringBuilder.append("Timings of " + names.size() + " operation(s):\n");
+        for (String name : names) {
+            OperationMetrics metrics = operations.get(name);
+            stringBuilder.append("- " + name + ": " + metrics.getCount() + " call(s), " +
+                    "total " + milliseconds(metrics.getTotalNanos()) + ", " +
+                    "mean " + milliseconds(metrics.getMeanNanos()) + ", " +
+                    "min " + milliseconds(metrics.getMinimumNanos()) + ", " +
+                    "max " + milliseconds(metrics.getMaximumNanos()) + ", " +
+                    "p50 <= " + milliseconds(metrics.getPercentileNanos(50)) + ", " +
+                    "p99 <= " + milliseconds(metrics.getPercentileNanos(99)) + "\n");
+        }
+        return stringBuilder.toString();
+    }
+
+    private String milliseconds(double nanos) {
+        return String.format("%.3f ms", nanos / 1000000.0);
+    }
+}
@@ -0,0 +1,101 @@
+package net.haesleinhuepf.clij.macro.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * OperationMetrics counts the calls of a single operation and keeps a histogram of their durations. The histogram
+ * has one bucket per power of two nanoseconds. All updates are lock-free.
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+public class OperationMetrics {
+    private static final int NUMBER_OF_BUCKETS = 64;
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong minimumNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maximumNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(NUMBER_OF_BUCKETS);
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        histogram.incrementAndGet(NUMBER_OF_BUCKETS - 1 - Long.numberOfLeadingZeros(nanos | 1));
+
+        long minimum = minimumNanos.get();
+        while (nanos < minimum && !minimumNanos.compareAndSet(minimum, nanos)) {
+            minimum = minimumNanos.get();
+        }
+        long maximum = maximumNanos.get();
+        while (nanos > maximum && !maximumNanos.compareAndSet(maximum, nanos)) {
+            maximum = maximumNanos.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMinimumNanos() {
+        return count.get() == 0 ? 0 : minimumNanos.get();
+    }
+
+    public long getMaximumNanos() {
+        return maximumNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalNanos.get() / n;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile (0..100) of all recorded durations. The bound is exact up to
+     * a factor of two because of the bucket size.
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * n);
+        long sum = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            sum += histogram.get(i);
+            if (sum >= rank) {
+                return Math.min(i == NUMBER_OF_BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, getMaximumNanos());
+            }
+        }
+        return getMaximumNanos();
+    }
+
+    /**
+     * Returns the number of recorded durations in histogram bucket i, which covers the durations from 2^i to
+     * 2^(i+1)-1 nanoseconds.
+     */
+    public long getHistogramCount(int bucket) {
+        return histogram.get(bucket);
+    }
+
+    public int getNumberOfHistogramBuckets() {
+        return NUMBER_OF_BUCKETS;
+    }
+}
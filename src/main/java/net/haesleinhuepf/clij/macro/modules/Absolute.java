@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -15,7 +16,7 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_absolute")
-public class Absolute extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Absolute extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -34,6 +35,11 @@ public class Absolute extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLI
         return "Image source, Image destination";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "fabs(x)";
+    }
+
     @Override
     public String getDescription() {
         return "Computes the absolute value of every individual pixel x in a given image.\n\nf(x) = |x| ";
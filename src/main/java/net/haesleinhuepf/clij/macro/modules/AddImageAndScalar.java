@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -14,7 +15,7 @@ import org.scijava.plugin.Plugin;
  * December 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_addImageAndScalar")
-public class AddImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class AddImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -33,6 +34,11 @@ public class AddImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPl
         return "Image source, Image destination, Number scalar";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "x + p0";
+    }
+
     @Override
     public String getDescription() {
         return "Adds a scalar value s to all pixels x of a given image X.\n\nf(x, s) = x + s";
@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJImageTwinProcessor;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
@@ -19,7 +20,7 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_affineTransform")
-public class AffineTransform extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class AffineTransform extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageTwinProcessor, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -57,13 +58,13 @@ public class AffineTransform extends AbstractCLIJPlugin implements CLIJMacroPlug
                 scaleTransform.set(1.0  / Double.parseDouble(commandParts[1]) , 2, 2);
                 at.concatenate(scaleTransform);
             } else if (commandParts[0].compareTo("rotatex") == 0) {
-                float angle = (float)(-asFloat(commandParts[1]) / 180.0f * Math.PI);
+                float angle = (float)(-asFloatValue(commandParts[1]) / 180.0f * Math.PI);
                 at.rotate(0, angle);
             } else if (commandParts[0].compareTo("rotatey") == 0) {
-                float angle = (float)(-asFloat(commandParts[1]) / 180.0f * Math.PI);
+                float angle = (float)(-asFloatValue(commandParts[1]) / 180.0f * Math.PI);
                 at.rotate(1, angle);
             } else if (commandParts[0].compareTo("rotatez") == 0 || commandParts[0].compareTo("rotate") == 0) {
-                float angle = (float)(-asFloat(commandParts[1]) / 180.0f * Math.PI);
+                float angle = (float)(-asFloatValue(commandParts[1]) / 180.0f * Math.PI);
                 at.rotate(2, angle);
             } else if (commandParts[0].compareTo("translatex") == 0) {
                 at.translate(Double.parseDouble(commandParts[1]), 0, 0);
@@ -126,11 +127,12 @@ public class AffineTransform extends AbstractCLIJPlugin implements CLIJMacroPlug
         }
 
         ClearCLImage input = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[0]);
-        ClearCLImage output = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[1]);
+        ClearCLImage output = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[1], false);
 
         boolean result = Kernels.affineTransform(clij, input, output, net.haesleinhuepf.clij.utilities.AffineTransform.matrixToFloatArray(at));
 
-        Kernels.copy(clij, output, (ClearCLBuffer)args[1]);
+        // the buffer is updated lazily when it's needed
+        CLIJHandler.getInstance().markImageModified((ClearCLBuffer) args[1]);
 
         return result;
     }
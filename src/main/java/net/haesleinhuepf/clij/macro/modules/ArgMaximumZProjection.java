@@ -36,7 +36,7 @@ public class ArgMaximumZProjection extends AbstractCLIJPlugin implements CLIJMac
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        return clij.createCLBuffer(new long[]{input.getWidth(), input.getHeight()}, input.getNativeType());
+        return createCLBuffer(new long[]{input.getWidth(), input.getHeight()}, input.getNativeType());
     }
 
     @Override
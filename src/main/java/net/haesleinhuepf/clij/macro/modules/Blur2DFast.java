@@ -4,29 +4,34 @@ import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
 import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJImageTwinProcessor;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
+import static net.haesleinhuepf.clij.utilities.CLIJUtilities.sigmaToKernelSize;
+
 /**
  * Author: @haesleinhuepf
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_blur2DFast")
-public class Blur2DFast extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Blur2DFast extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageTwinProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        float sigmaX = asFloat(args[2]);
-        float sigmaY = asFloat(args[3]);
+        float sigmaX = asFloatValue(args[2]);
+        float sigmaY = asFloatValue(args[3]);
 
         if (containsCLBufferArguments()) {
             // convert all arguments to CLImages
             Object[] args = openCLImageArgs();
             boolean result = Kernels.blurFast(clij, (ClearCLImage) (args[0]), (ClearCLImage) (args[1]), sigmaX, sigmaY, 0);
-            // copy result back to the bufffer
-            Kernels.copy(clij, (ClearCLImage)args[1], (ClearCLBuffer)this.args[1]);
+            // the buffer is updated lazily when it's needed
+            CLIJHandler.getInstance().markImageModified((ClearCLBuffer)this.args[1]);
             // cleanup
             releaseImages(args);
             return result;
@@ -36,6 +41,11 @@ public class Blur2DFast extends AbstractCLIJPlugin implements CLIJMacroPlugin, C
     }
 
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{sigmaToKernelSize(asFloatValue(args[2])) / 2, sigmaToKernelSize(asFloatValue(args[3])) / 2, 0};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number sigmaX, Number sigmaY";
@@ -22,7 +22,7 @@ public class Blur2DIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLI
 
     @Override
     public boolean executeCL() {
-        float sigma = asFloat(args[2]);
+        float sigma = asFloatValue(args[2]);
 
         if (containsCLImageArguments()) {
             return Kernels.blurIJ(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), sigma);
@@ -43,7 +43,7 @@ public class Blur2DIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLI
     public boolean executeIJ() {
         Object[] args = imageJArgs();
         ImagePlus input = (ImagePlus) args[0];
-        int sigma = asInteger(args[2]);
+        int sigma = asIntegerValue(args[2]);
 
         IJ.run(input, "Gaussian Blur...", "sigma=" + sigma);
         input = new Duplicator().run(input);
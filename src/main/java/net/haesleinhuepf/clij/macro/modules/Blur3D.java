@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -16,13 +17,13 @@ import static net.haesleinhuepf.clij.utilities.CLIJUtilities.sigmaToKernelSize;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_blur3D")
-public class Blur3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Blur3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        float sigmaX = asFloat(args[2]);
-        float sigmaY = asFloat(args[3]);
-        float sigmaZ = asFloat(args[4]);
+        float sigmaX = asFloatValue(args[2]);
+        float sigmaY = asFloatValue(args[3]);
+        float sigmaZ = asFloatValue(args[4]);
         int nX = sigmaToKernelSize(sigmaX);
         int nY = sigmaToKernelSize(sigmaY);
         int nZ = sigmaToKernelSize(sigmaZ);
@@ -37,6 +38,11 @@ public class Blur3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJO
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{sigmaToKernelSize(asFloatValue(args[2])) / 2, sigmaToKernelSize(asFloatValue(args[3])) / 2, sigmaToKernelSize(asFloatValue(args[4])) / 2};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number sigmaX, Number sigmaY, Number sigmaZ";
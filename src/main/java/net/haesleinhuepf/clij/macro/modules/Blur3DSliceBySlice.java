@@ -4,7 +4,10 @@ import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
 import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJImageTwinProcessor;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -16,12 +19,12 @@ import static net.haesleinhuepf.clij.utilities.CLIJUtilities.sigmaToKernelSize;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_blur3DSliceBySlice")
-public class Blur3DSliceBySlice extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Blur3DSliceBySlice extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageTwinProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        float sigmaX = asFloat(args[2]);
-        float sigmaY = asFloat(args[3]);
+        float sigmaX = asFloatValue(args[2]);
+        float sigmaY = asFloatValue(args[3]);
         int nX = sigmaToKernelSize(sigmaX);
         int nY = sigmaToKernelSize(sigmaY);
 
@@ -29,8 +32,8 @@ public class Blur3DSliceBySlice extends AbstractCLIJPlugin implements CLIJMacroP
             // convert all arguments to CLImages
             Object[] args = openCLImageArgs();
             boolean result = Kernels.blurSliceBySlice(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), nX, nY, sigmaX, sigmaY);
-            // copy result back to the bufffer
-            Kernels.copy(clij, (ClearCLImage)args[1], (ClearCLBuffer)this.args[1]);
+            // the buffer is updated lazily when it's needed
+            CLIJHandler.getInstance().markImageModified((ClearCLBuffer)this.args[1]);
             // cleanup
             releaseImages(args);
             return result;
@@ -39,6 +42,11 @@ public class Blur3DSliceBySlice extends AbstractCLIJPlugin implements CLIJMacroP
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{sigmaToKernelSize(asFloatValue(args[2])) / 2, sigmaToKernelSize(asFloatValue(args[3])) / 2, 0};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number sigmaX, Number sigmaY";
@@ -0,0 +1,44 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import net.haesleinhuepf.clij.macro.metrics.CLIJMetrics;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_collectTimings")
+public class CollectTimings extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        boolean collect = asBooleanValue(args[0]);
+        if (collect && !CLIJMetrics.getInstance().isEnabled()) {
+            CLIJMetrics.getInstance().reset();
+        }
+        CLIJMetrics.getInstance().setEnabled(collect);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "Boolean collect";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Switches collecting call counts and timings of all CLIJ operations on or off. Switching it on resets \n" +
+                "former measurements. Use CLIJ_reportTimings() to print them. Timing is off by default.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -15,7 +16,7 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_copy")
-public class Copy extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Copy extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -34,6 +35,11 @@ public class Copy extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpe
         return "Image source, Image destination";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "x";
+    }
+
     @Override
     public String getDescription() {
         return "Copies an image.\n\nf(x) = x";
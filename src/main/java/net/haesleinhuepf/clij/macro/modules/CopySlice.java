@@ -37,9 +37,9 @@ public class CopySlice extends AbstractCLIJPlugin implements CLIJMacroPlugin, CL
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
         if (input.getDimension() == 2) {
-            return clij.createCLBuffer(new long[]{ input.getWidth(), input.getHeight(), asInteger(args[2])}, input.getNativeType());
+            return createCLBuffer(new long[]{ input.getWidth(), input.getHeight(), asIntegerValue(args[2])}, input.getNativeType());
         } else  {
-            return clij.createCLBuffer(new long[]{ input.getWidth(), input.getHeight()}, input.getNativeType());
+            return createCLBuffer(new long[]{ input.getWidth(), input.getHeight()}, input.getNativeType());
         }
     }
 
@@ -36,10 +36,10 @@ public class Crop2D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJO
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        int width = asInteger(args[4]);
-        int height = asInteger(args[5]);
+        int width = asIntegerValue(args[4]);
+        int height = asIntegerValue(args[5]);
 
-        return clij.createCLBuffer(new long[]{width, height}, input.getNativeType());
+        return createCLBuffer(new long[]{width, height}, input.getNativeType());
     }
 
     @Override
@@ -37,11 +37,11 @@ public class Crop3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJO
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        int width = asInteger(args[5]);
-        int height = asInteger(args[6]);
-        int depth = asInteger(args[7]);
+        int width = asIntegerValue(args[5]);
+        int height = asIntegerValue(args[6]);
+        int depth = asIntegerValue(args[7]);
 
-        return clij.createCLBuffer(new long[]{width, height, depth}, input.getNativeType());
+        return createCLBuffer(new long[]{width, height, depth}, input.getNativeType());
     }
 
     @Override
@@ -18,8 +18,8 @@ public class Downsample2D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
     @Override
     public boolean executeCL() {
-        float downsampleX = asFloat(args[2]);
-        float downsampleY = asFloat(args[3]);
+        float downsampleX = asFloatValue(args[2]);
+        float downsampleY = asFloatValue(args[3]);
 
         if (containsCLImageArguments()) {
             return Kernels.downsample(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), downsampleX, downsampleY);
@@ -39,10 +39,10 @@ public class Downsample2D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        float downsampleX = asFloat(args[2]);
-        float downsampleY = asFloat(args[3]);
+        float downsampleX = asFloatValue(args[2]);
+        float downsampleY = asFloatValue(args[3]);
 
-        return clij.createCLBuffer(new long[]{(long)(input.getWidth() * downsampleX), (long)(input.getHeight() * downsampleY)}, input.getNativeType());
+        return createCLBuffer(new long[]{(long)(input.getWidth() * downsampleX), (long)(input.getHeight() * downsampleY)}, input.getNativeType());
     }
 
     @Override
@@ -18,9 +18,9 @@ public class Downsample3D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
     @Override
     public boolean executeCL() {
-        float downsampleX = asFloat(args[2]);
-        float downsampleY = asFloat(args[3]);
-        float downsampleZ = asFloat(args[4]);
+        float downsampleX = asFloatValue(args[2]);
+        float downsampleY = asFloatValue(args[3]);
+        float downsampleZ = asFloatValue(args[4]);
 
         if (containsCLImageArguments()) {
             return Kernels.downsample(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), downsampleX, downsampleY, downsampleZ);
@@ -40,11 +40,11 @@ public class Downsample3D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        float downsampleX = asFloat(args[2]);
-        float downsampleY = asFloat(args[3]);
-        float downsampleZ = asFloat(args[4]);
+        float downsampleX = asFloatValue(args[2]);
+        float downsampleY = asFloatValue(args[3]);
+        float downsampleZ = asFloatValue(args[4]);
 
-        return clij.createCLBuffer(new long[]{(long)(input.getWidth() * downsampleX), (long)(input.getHeight() * downsampleY), (long)(input.getDepth() * downsampleZ)}, input.getNativeType());
+        return createCLBuffer(new long[]{(long)(input.getWidth() * downsampleX), (long)(input.getHeight() * downsampleY), (long)(input.getDepth() * downsampleZ)}, input.getNativeType());
     }
 
     @Override
@@ -0,0 +1,77 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import ij.ImagePlus;
+import ij.WindowManager;
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJTiledExecutor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.util.ArrayList;
+
+/**
+ * ExecuteTiled
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_executeTiled")
+public class ExecuteTiled extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String method = (String)args[0];
+        if (!method.startsWith("CLIJ_")) {
+            method = "CLIJ_" + method;
+        }
+        CLIJHandler handler = CLIJHandler.getInstance();
+        CLIJMacroPlugin plugin = handler.getPluginService().getCLIJMacroPlugin(method);
+        if (plugin == null) {
+            throw new IllegalArgumentException("No CLIJ method named " + method);
+        }
+        ImagePlus source = WindowManager.getImage((String)args[1]);
+        if (source == null) {
+            throw new IllegalArgumentException("No image named " + args[1]);
+        }
+
+        ArrayList<Object> parameters = new ArrayList<Object>();
+        for (String parameter : ((String)args[3]).split(",")) {
+            if (parameter.trim().length() > 0) {
+                parameters.add(Double.parseDouble(parameter.trim()));
+            }
+        }
+
+        CLIJTiledExecutor executor = new CLIJTiledExecutor(handler, plugin, parameters.toArray(), asIntegerValue(args[4]), asIntegerValue(args[5]), asIntegerValue(args[6]));
+        ImagePlus result = executor.execute(source, (String)args[2]);
+        result.resetDisplayRange();
+        result.show();
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String method, String source, String destination, String parameters, Number tileWidth, Number tileHeight, Number tileDepth";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Applies a filter to an image in ImageJ which doesn't fit into GPU memory. The image is processed in bricks\n" +
+                "of the given tile size; a tile size of 0 takes the whole image in that dimension. Every brick is extended\n" +
+                "by the radius of the filter, so that the stitched result equals processing the whole image at once.\n\n" +
+                "The method is given by its name, e.g. 'mean3DBox', and its parameters after source and destination as\n" +
+                "comma separated list, e.g. '2, 2, 2'. Supported are neighborhood filters such as blur, mean, median,\n" +
+                "minimum, maximum, erode and dilate as well as pixel-wise operations on one image.\n" +
+                "Source and destination are images in ImageJ; the result is shown as new image.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -8,6 +8,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJSynchronousProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -18,7 +19,7 @@ import org.scijava.plugin.Plugin;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_histogram")
-public class Histogram extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Histogram extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJSynchronousProcessor, OffersDocumentation {
 
 
     @Override
@@ -50,7 +51,7 @@ public class Histogram extends AbstractCLIJPlugin implements CLIJMacroPlugin, CL
 
         // plot properly
         float[] determinedHistogram = (float[])(histogramImp.getProcessor().getPixels());
-        float[] xAxis = new float[asInteger(args[2])];
+        float[] xAxis = new float[asIntegerValue(args[2])];
         xAxis[0] = minimumGreyValue;
         float step = (maximumGreyValue - minimumGreyValue) / (numberOfBins - 1);
 
@@ -91,7 +92,7 @@ public class Histogram extends AbstractCLIJPlugin implements CLIJMacroPlugin, CL
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input) {
         Integer numberOfBins = asInteger(args[2]);
 
-        return clij.createCLBuffer(new long[]{numberOfBins,1,1},NativeTypeEnum.Float);
+        return createCLBuffer(new long[]{numberOfBins,1,1},NativeTypeEnum.Float);
     }
 
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -15,21 +16,15 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_invert")
-public class Invert extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Invert extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
         if (containsCLImageArguments()) {
             return Kernels.invert(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]));
         } else {
-            // convert everything to images
-            Object[] args = openCLImageArgs();
-            boolean result = Kernels.invert(clij, (ClearCLBuffer)( args[0]), (ClearCLBuffer)(args[1]));
-            // copy result back to the buffer
-            Kernels.copy(clij, (ClearCLImage)args[1], (ClearCLBuffer)this.args[1]);
-            // cleanup
-            releaseImages(args);
-            return result;
+            // inverting doesn't need samplers; no need to convert to images and back
+            return Kernels.invert(clij, (ClearCLBuffer)( args[0]), (ClearCLBuffer)(args[1]));
         }
     }
 
@@ -38,6 +33,11 @@ public class Invert extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJO
         return "Image source, Image destination";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "-x";
+    }
+
     @Override
     public String getDescription() {
         return "Computes the negative value of all pixels in a given image. It is recommended to convert images to \n" +
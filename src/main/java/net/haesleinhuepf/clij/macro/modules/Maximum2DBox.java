@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -14,12 +15,12 @@ import org.scijava.plugin.Plugin;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_maximum2DBox")
-public class Maximum2DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Maximum2DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        int radiusX = asInteger(args[2]);
-        int radiusY = asInteger(args[3]);
+        int radiusX = asIntegerValue(args[2]);
+        int radiusY = asIntegerValue(args[3]);
 
         if (containsCLBufferArguments()) {
             boolean result = Kernels.maximumBox(clij, (ClearCLBuffer) (args[0]), (ClearCLBuffer) (args[1]), radiusX, radiusY, 0);
@@ -29,6 +30,11 @@ public class Maximum2DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin,
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{asIntegerValue(args[2]), asIntegerValue(args[3]), 0};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number radiusX, Number radiusY";
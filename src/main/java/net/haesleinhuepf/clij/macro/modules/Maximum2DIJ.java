@@ -22,7 +22,7 @@ public class Maximum2DIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
     @Override
     public boolean executeCL() {
-        int radiusX = asInteger(args[2]);
+        int radiusX = asIntegerValue(args[2]);
 
         if (containsCLImageArguments()) {
             return Kernels.maximumIJ(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), radiusX);
@@ -43,7 +43,7 @@ public class Maximum2DIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin,
     public boolean executeIJ() {
         Object[] args = imageJArgs();
         ImagePlus input = (ImagePlus) args[0];
-        int radius = asInteger(args[2]);
+        int radius = asIntegerValue(args[2]);
 
         IJ.run(input, "Maximum...", "radius=" + radius);
         input = new Duplicator().run(input);
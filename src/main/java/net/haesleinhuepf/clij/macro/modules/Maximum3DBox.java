@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -14,13 +15,13 @@ import org.scijava.plugin.Plugin;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_maximum3DBox")
-public class Maximum3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Maximum3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        int radiusX = asInteger(args[2]);
-        int radiusY = asInteger(args[3]);
-        int radiusZ = asInteger(args[4]);
+        int radiusX = asIntegerValue(args[2]);
+        int radiusY = asIntegerValue(args[3]);
+        int radiusZ = asIntegerValue(args[4]);
 
         if (containsCLBufferArguments()) {
             boolean result = Kernels.maximumBox(clij, (ClearCLBuffer) (args[0]), (ClearCLBuffer) (args[1]), radiusX, radiusY, radiusZ);
@@ -30,6 +31,11 @@ public class Maximum3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin,
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{asIntegerValue(args[2]), asIntegerValue(args[3]), asIntegerValue(args[4])};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number radiusX, Number radiusY, Number radiusZ";
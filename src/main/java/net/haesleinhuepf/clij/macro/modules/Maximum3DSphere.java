@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -16,13 +17,13 @@ import static net.haesleinhuepf.clij.utilities.CLIJUtilities.radiusToKernelSize;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_maximum3DSphere")
-public class Maximum3DSphere extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Maximum3DSphere extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        int kernelSizeX = radiusToKernelSize(asInteger(args[2]));
-        int kernelSizeY = radiusToKernelSize(asInteger(args[3]));
-        int kernelSizeZ = radiusToKernelSize(asInteger(args[4]));
+        int kernelSizeX = radiusToKernelSize(asIntegerValue(args[2]));
+        int kernelSizeY = radiusToKernelSize(asIntegerValue(args[3]));
+        int kernelSizeZ = radiusToKernelSize(asIntegerValue(args[4]));
 
         if (containsCLImageArguments()) {
             return Kernels.maximumSphere(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), kernelSizeX, kernelSizeY, kernelSizeZ);
@@ -34,6 +35,11 @@ public class Maximum3DSphere extends AbstractCLIJPlugin implements CLIJMacroPlug
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{radiusToKernelSize(asIntegerValue(args[2])) / 2, radiusToKernelSize(asIntegerValue(args[3])) / 2, radiusToKernelSize(asIntegerValue(args[4])) / 2};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number radiusX, Number radiusY, Number radiusZ";
@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -16,12 +17,12 @@ import static net.haesleinhuepf.clij.utilities.CLIJUtilities.radiusToKernelSize;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_maximumSliceBySliceSphere")
-public class MaximumSliceBySliceSphere extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class MaximumSliceBySliceSphere extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        int kernelSizeX = radiusToKernelSize(asInteger(args[2]));
-        int kernelSizeY = radiusToKernelSize(asInteger(args[3]));
+        int kernelSizeX = radiusToKernelSize(asIntegerValue(args[2]));
+        int kernelSizeY = radiusToKernelSize(asIntegerValue(args[3]));
 
         if (containsCLImageArguments()) {
             return Kernels.maximumSliceBySliceSphere(clij, (ClearCLImage)( args[0]), (ClearCLImage)(args[1]), kernelSizeX, kernelSizeY);
@@ -33,6 +34,11 @@ public class MaximumSliceBySliceSphere extends AbstractCLIJPlugin implements CLI
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{radiusToKernelSize(asIntegerValue(args[2])) / 2, radiusToKernelSize(asIntegerValue(args[3])) / 2, 0};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number radiusX, Number radiusY";
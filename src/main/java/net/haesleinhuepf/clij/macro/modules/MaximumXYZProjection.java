@@ -36,7 +36,7 @@ public class MaximumXYZProjection extends AbstractCLIJPlugin implements CLIJMacr
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        return clij.createCLBuffer(new long[]{input.getWidth(), input.getHeight()}, input.getNativeType());
+        return createCLBuffer(new long[]{input.getWidth(), input.getHeight()}, input.getNativeType());
     }
 
 
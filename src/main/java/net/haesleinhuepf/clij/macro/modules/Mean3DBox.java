@@ -8,6 +8,7 @@ import ij.gui.NewImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJNeighborhoodOperation;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
@@ -17,7 +18,7 @@ import org.scijava.plugin.Plugin;
  * 12 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_mean3DBox")
-public class Mean3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Mean3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJNeighborhoodOperation, OffersDocumentation {
 
     public static void main(String... args) {
         new ImageJ();
@@ -28,9 +29,9 @@ public class Mean3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CL
 
     @Override
     public boolean executeCL() {
-        int radiusX = asInteger(args[2]);
-        int radiusY = asInteger(args[3]);
-        int radiusZ = asInteger(args[4]);
+        int radiusX = asIntegerValue(args[2]);
+        int radiusY = asIntegerValue(args[3]);
+        int radiusZ = asIntegerValue(args[4]);
 
         if (containsCLBufferArguments()) {
             boolean result = Kernels.meanBox(clij, (ClearCLBuffer) (args[0]), (ClearCLBuffer) (args[1]), radiusX, radiusY, radiusZ);
@@ -40,6 +41,11 @@ public class Mean3DBox extends AbstractCLIJPlugin implements CLIJMacroPlugin, CL
         }
     }
 
+    @Override
+    public int[] getHalo() {
+        return new int[]{asIntegerValue(args[2]), asIntegerValue(args[3]), asIntegerValue(args[4])};
+    }
+
     @Override
     public String getParameterHelpText() {
         return "Image source, Image destination, Number radiusX, Number radiusY, Number radiusZ";
@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -15,7 +16,7 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_minimumImageAndScalar")
-public class MinimumImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class MinimumImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -34,6 +35,11 @@ public class MinimumImageAndScalar extends AbstractCLIJPlugin implements CLIJMac
         return "Image source, Image destination, Number scalar";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "min(x, p0)";
+    }
+
     @Override
     public String getDescription() {
         return "Computes the maximum of a constant scalar s and each pixel value x in a given image X.\n\nf(x, s) = min(x, s)";
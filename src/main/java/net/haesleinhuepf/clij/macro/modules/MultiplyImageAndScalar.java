@@ -6,6 +6,7 @@ import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -14,7 +15,7 @@ import org.scijava.plugin.Plugin;
  * December 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_multiplyImageAndScalar")
-public class MultiplyImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class MultiplyImageAndScalar extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -33,6 +34,11 @@ public class MultiplyImageAndScalar extends AbstractCLIJPlugin implements CLIJMa
         return "Image source, Image destination, Number scalar";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "x * p0";
+    }
+
     @Override
     public String getDescription() {
         return "Multiplies all pixels value x in a given image X with a constant scalar s.\n\nf(x, s) = x * s";
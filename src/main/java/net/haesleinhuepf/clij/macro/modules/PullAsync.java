@@ -0,0 +1,45 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * PullAsync
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pullAsync")
+public class PullAsync extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().pullAsync((String) args[0]);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Starts copying an image specified by its name from GPU memory back to ImageJ in the background and\n" +
+                "returns immediately. The image is shown when it arrived; if an image with the same name and size is\n" +
+                "open already, its pixels are overwritten. Operations overwriting or releasing the image wait for the\n" +
+                "download.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,48 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * PullBatch
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pullBatch")
+public class PullBatch extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String[] images = ((String) args[0]).split(",");
+        for (int i = 0; i < images.length; i++) {
+            images[i] = images[i].trim();
+        }
+        CLIJHandler.getInstance().pullBatch(images);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String images";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Copies many images specified by their names from GPU memory back to ImageJ in one go and shows them.\n" +
+                "The names are separated by commas, e.g. \"tile1, tile2, tile3\". The pixels of all images are packed\n" +
+                "into one transfer.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,46 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * PullTo
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pullTo")
+public class PullTo extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().pullTo((String)args[0], (String)args[1], asIntegerValue(args[2]), asIntegerValue(args[3]), asIntegerValue(args[4]));
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image, String destination, Number channel, Number slice, Number frame";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Copies an image specified by its name from GPU memory into an image which is open in ImageJ already.\n" +
+                "The pixels of the destination image are overwritten in place; no new image or window is created.\n" +
+                "Thus, it's recommended for showing results in loops, e.g. over the frames of a time-lapse.\n\n" +
+                "The position is given by channel, slice and frame (starting at 1). A 3D image fills all slices of\n" +
+                "the given channel and frame. If there is no image named like the destination, a new one is shown.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
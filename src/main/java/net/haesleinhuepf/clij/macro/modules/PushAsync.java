@@ -0,0 +1,45 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * PushAsync
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pushAsync")
+public class PushAsync extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().pushAsync((String) args[0]);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Starts copying an image specified by its name to GPU memory in the background and returns immediately.\n" +
+                "Operations using the image wait until it arrived. In time-lapse loops, push the next frame while\n" +
+                "processing the current one; alternate between two image names for even and odd frames.\n" +
+                "Supported are 2D and 3D images with 8, 16 or 32 bit.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
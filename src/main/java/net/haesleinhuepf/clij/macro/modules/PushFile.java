@@ -0,0 +1,51 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.IOException;
+
+/**
+ * PushFile
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pushFile")
+public class PushFile extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[0];
+        try {
+            CLIJHandler.getInstance().pushFile(path, (String) args[1]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String file, String destination";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Loads an uncompressed TIFF file directly into GPU memory under the given name, without opening it in\n" +
+                "ImageJ. The file is mapped into memory and copied from there, which is faster than opening and\n" +
+                "pushing it and doesn't need memory for the image in ImageJ.\n" +
+                "Supported are 2D and 3D images with 8, 16 or 32 bit.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,51 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.IOException;
+
+/**
+ * PushRawFile
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pushRawFile")
+public class PushRawFile extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[0];
+        try {
+            CLIJHandler.getInstance().pushRawFile(path, (String) args[1], asIntegerValue(args[2]), asIntegerValue(args[3]), asIntegerValue(args[4]),
+                    asIntegerValue(args[5]), asIntegerValue(args[6]), asBooleanValue(args[7]));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String file, String destination, Number width, Number height, Number depth, Number bitDepth, Number headerBytes, Boolean littleEndian";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Loads a raw file directly into GPU memory under the given name, without opening it in ImageJ. The file\n" +
+                "contains depth slices of width x height pixels with the given bit depth (8, 16 or 32 for float)\n" +
+                "after a header of the given number of bytes. The file is mapped into memory and copied from there.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,45 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * PushStreamed
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_pushStreamed")
+public class PushStreamed extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().pushStreamed((String) args[0], asIntegerValue(args[1]));
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image, Number slicesPerBatch";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Copies a stack specified by its name to GPU memory batch by batch of slices. Reading the next batch\n" +
+                "overlaps copying the current one. For virtual stacks, slices are read from disk batch by batch, so\n" +
+                "the stack is never loaded into memory as a whole. CLIJ_push streams virtual stacks in batches of\n" +
+                "16 slices already; use this method to choose another batch size.\n" +
+                "Supported are 2D and 3D images with 8, 16 or 32 bit.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,51 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.IOException;
+
+/**
+ * ReplayPipeline
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_replayPipeline")
+public class ReplayPipeline extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[0];
+        try {
+            CLIJHandler.getInstance().replayPipeline(path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String file";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Replays a pipeline saved by CLIJ_stopPipelineCapture on the images in GPU memory which are named like\n" +
+                "its inputs and stores its outputs under their names. The pipeline is validated and its buffers are\n" +
+                "planned once; replaying it again on images of the same size skips parsing, allocation and kernel\n" +
+                "compilation.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
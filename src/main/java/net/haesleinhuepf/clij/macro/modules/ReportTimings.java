@@ -0,0 +1,41 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import ij.IJ;
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import net.haesleinhuepf.clij.macro.metrics.CLIJMetrics;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_reportTimings")
+public class ReportTimings extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        IJ.log(CLIJMetrics.getInstance().report());
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Prints the number of calls and the timings of all CLIJ operations which were called since timing was \n" +
+                "switched on using CLIJ_collectTimings(true) to ImageJs log window.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
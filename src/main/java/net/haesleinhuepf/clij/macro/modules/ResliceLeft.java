@@ -37,7 +37,7 @@ public class ResliceLeft extends AbstractCLIJPlugin implements CLIJMacroPlugin,
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        return clij.createCLBuffer(new long[]{input.getHeight(), input.getDepth(), input.getWidth()}, input.getNativeType());
+        return createCLBuffer(new long[]{input.getHeight(), input.getDepth(), input.getWidth()}, input.getNativeType());
     }
 
     @Override
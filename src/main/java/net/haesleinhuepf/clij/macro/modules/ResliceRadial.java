@@ -40,11 +40,11 @@ public class ResliceRadial extends AbstractCLIJPlugin implements CLIJMacroPlugin
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        int numberOfAngles = asInteger(args[2]);
-        float angleStepSize = asFloat(args[3]);
+        int numberOfAngles = asIntegerValue(args[2]);
+        float angleStepSize = asFloatValue(args[3]);
         int effectiveNumberOfAngles = (int)((float)numberOfAngles / angleStepSize);
         int maximumRadius = (int)Math.sqrt(Math.pow(input.getWidth() / 2, 2) + Math.pow(input.getHeight() / 2, 2));
-        return clij.createCLBuffer(new long[]{maximumRadius, input.getDepth(), effectiveNumberOfAngles}, input.getNativeType());
+        return createCLBuffer(new long[]{maximumRadius, input.getDepth(), effectiveNumberOfAngles}, input.getNativeType());
     }
 
     @Override
@@ -37,7 +37,7 @@ public class ResliceTop extends AbstractCLIJPlugin implements CLIJMacroPlugin, C
     @Override
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
-        return clij.createCLBuffer(new long[]{input.getWidth(), input.getDepth(), input.getHeight()}, input.getNativeType());
+        return createCLBuffer(new long[]{input.getWidth(), input.getDepth(), input.getHeight()}, input.getNativeType());
     }
 
     @Override
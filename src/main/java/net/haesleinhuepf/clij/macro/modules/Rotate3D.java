@@ -5,6 +5,7 @@ import net.haesleinhuepf.clij.clearcl.ClearCLImage;
 import net.haesleinhuepf.clij.kernels.Kernels;
 import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJImageTwinProcessor;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
@@ -18,14 +19,14 @@ import org.scijava.plugin.Plugin;
  */
 
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_rotate3D")
-public class Rotate3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+public class Rotate3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageTwinProcessor, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
-        float angleX = (float)(-asFloat(args[2]) / 180.0f * Math.PI);
-        float angleY = (float)(-asFloat(args[3]) / 180.0f * Math.PI);
-        float angleZ = (float)(-asFloat(args[4]) / 180.0f * Math.PI);
-        boolean rotateAroundCenter = asBoolean(args[5]);
+        float angleX = (float)(-asFloatValue(args[2]) / 180.0f * Math.PI);
+        float angleY = (float)(-asFloatValue(args[3]) / 180.0f * Math.PI);
+        float angleZ = (float)(-asFloatValue(args[4]) / 180.0f * Math.PI);
+        boolean rotateAroundCenter = asBooleanValue(args[5]);
 
         AffineTransform3D at = new AffineTransform3D();
         Object[] args = openCLBufferArgs();
@@ -45,11 +46,12 @@ public class Rotate3D extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLI
         //boolean result = Kernels.affineTransform(clij, (ClearCLBuffer)( args[0]), (ClearCLBuffer)(args[1]), AffineTransform.matrixToFloatArray(at));
         //releaseBuffers(args);
         ClearCLImage input = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[0]);
-        ClearCLImage output = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[1]);
+        ClearCLImage output = CLIJHandler.getInstance().getChachedImageByBuffer((ClearCLBuffer) args[1], false);
 
         boolean result = Kernels.affineTransform(clij, input, output, AffineTransform.matrixToFloatArray(at));
 
-        Kernels.copy(clij, output, (ClearCLBuffer)args[1]);
+        // the buffer is updated lazily when it's needed
+        CLIJHandler.getInstance().markImageModified((ClearCLBuffer) args[1]);
 
 
         return result;
@@ -38,9 +38,9 @@ public class RotateLeft extends AbstractCLIJPlugin implements CLIJMacroPlugin, C
     public ClearCLBuffer createOutputBufferFromSource(ClearCLBuffer input)
     {
         if (input.getDimension() == 2) {
-            return clij.createCLBuffer(new long[]{input.getHeight(), input.getWidth()}, input.getNativeType());
+            return createCLBuffer(new long[]{input.getHeight(), input.getWidth()}, input.getNativeType());
         } else {
-            return clij.createCLBuffer(new long[]{input.getHeight(), input.getWidth(), input.getDepth()}, input.getNativeType());
+            return createCLBuffer(new long[]{input.getHeight(), input.getWidth(), input.getDepth()}, input.getNativeType());
         }
     }
 
@@ -0,0 +1,50 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.IOException;
+
+/**
+ * SaveRaw
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_saveRaw")
+public class SaveRaw extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[1];
+        try {
+            CLIJHandler.getInstance().saveRaw((String) args[0], path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't write " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image, String file";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Writes an image specified by its name from GPU memory into a raw file, without pulling it into ImageJ.\n" +
+                "Pixels are written in native byte order, slice after slice. The file is written in the background\n" +
+                "while the macro continues; CLIJ_clear waits until all files are complete.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
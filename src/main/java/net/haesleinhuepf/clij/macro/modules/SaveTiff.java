@@ -0,0 +1,50 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.IOException;
+
+/**
+ * SaveTiff
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_saveTiff")
+public class SaveTiff extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[1];
+        try {
+            CLIJHandler.getInstance().saveTiff((String) args[0], path);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't write " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String image, String file";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Writes an image specified by its name from GPU memory into an uncompressed TIFF file, without pulling\n" +
+                "it into ImageJ. The file is written in the background while the macro continues; CLIJ_clear waits\n" +
+                "until all files are complete. Supported are 2D and 3D images with 8, 16 or 32 bit up to 4 GB.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "2D, 3D";
+    }
+}
@@ -0,0 +1,47 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_setBufferPoolSize")
+public class SetBufferPoolSize extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        long maximumBytes = (long) (asFloatValue(args[0]) * 1024 * 1024);
+        int maximumBuffersPerSize = asIntegerValue(args[1]);
+        CLIJHandler.getInstance().getBufferPool().setMaximumBytes(maximumBytes);
+        CLIJHandler.getInstance().getBufferPool().setMaximumBuffersPerSizeClass(maximumBuffersPerSize);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "Number maximumMegaBytes, Number maximumBuffersPerSize";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Released images are kept in GPU memory and reused for new images of the same size and type. This \n" +
+                "saves time when the same operations are executed many times, e.g. for every time point. The pool \n" +
+                "holds at most the given number of mega bytes and the given number of images per size and type. \n" +
+                "By default, the pool holds at most an eighth of the GPUs memory and not more than 1 GB. Set the \n" +
+                "maximum to 0 to free all pooled memory and switch pooling off. \n" +
+                "CLIJ_clear frees all pooled memory as well. CLIJ_reportMemory shows the current content of the pool.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
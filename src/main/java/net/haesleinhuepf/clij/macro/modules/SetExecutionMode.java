@@ -0,0 +1,55 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import ij.IJ;
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.util.Arrays;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_setExecutionMode")
+public class SetExecutionMode extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String mode = ((String) args[0]).trim().toUpperCase();
+        for (CLIJHandler.ExecutionMode executionMode : CLIJHandler.ExecutionMode.values()) {
+            if (executionMode.name().compareTo(mode) == 0) {
+                CLIJHandler.getInstance().setExecutionMode(executionMode);
+                return true;
+            }
+        }
+        IJ.log("Unknown execution mode '" + args[0] + "'. Choose one of " + Arrays.toString(CLIJHandler.ExecutionMode.values()));
+        return false;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String mode";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Sets how Ext.CLIJ_* calls are executed. In 'synchronous' mode (default), every call returns after the \n" +
+                "GPU has finished. In 'asynchronous' mode, operations writing destination images are queued and the \n" +
+                "macro continues immediately. The macro waits for them at CLIJ_pull, at measurements such as \n" +
+                "CLIJ_sumOfAllPixels and at CLIJ_reportMemory. In 'deferred' mode, these operations and CLIJ_release \n" +
+                "are collected and executed at the next other call. Operations on images which are released without \n" +
+                "being read are skipped, memory of released images is reused and chains of pixel-wise operations \n" +
+                "such as CLIJ_multiplyImageAndScalar, CLIJ_addImageAndScalar and CLIJ_thresholdIJ run in one pass.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
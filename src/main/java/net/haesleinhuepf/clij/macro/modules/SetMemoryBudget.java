@@ -0,0 +1,44 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_setMemoryBudget")
+public class SetMemoryBudget extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().setMemoryBudget((long) (asFloatValue(args[0]) * 1024 * 1024));
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "Number maximumMegaBytes";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Limits the GPU memory images may occupy. Before a new image is created or pushed, the images which \n" +
+                "were not used for the longest time are moved to host memory until the new image fits into the limit. \n" +
+                "They are moved back automatically when they are used \n" +
+                "again, so the macro doesn't need to change. Images larger than 2 GB stay in GPU memory. \n" +
+                "Set the budget to 0 for no limit, which is the default. CLIJ_reportMemory shows which images are \n" +
+                "in host memory and how often images were moved.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
@@ -0,0 +1,42 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_setNamespace")
+public class SetNamespace extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().setNamespace((String) args[0]);
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String namespace";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Sets a namespace for the names of all images the current macro pushes, creates, pulls and releases. \n" +
+                "Macros running in parallel with different namespaces can use the same image names without \n" +
+                "interfering. CLIJ_clear only releases the images of the current namespace. An empty namespace \n" +
+                "switches back to the global namespace, which is the default.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
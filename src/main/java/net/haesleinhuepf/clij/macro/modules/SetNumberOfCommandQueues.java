@@ -0,0 +1,43 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_setNumberOfCommandQueues")
+public class SetNumberOfCommandQueues extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().setNumberOfCommandQueues(asIntegerValue(args[0]));
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "Number numberOfQueues";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Sets the number of command queues used in 'deferred' execution mode, see CLIJ_setExecutionMode. \n" +
+                "Fused chains of pointwise operations which don't depend on each other, e.g. on different channels, \n" +
+                "are put on different queues and may run at the same time on the GPU, also together with other \n" +
+                "operations. Operations using their results wait for them on the GPU. 1 is the default; queues \n" +
+                "are not used together with CLIJ_setMemoryBudget.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
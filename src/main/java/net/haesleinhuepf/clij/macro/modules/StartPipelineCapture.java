@@ -0,0 +1,42 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * StartPipelineCapture
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_startPipelineCapture")
+public class StartPipelineCapture extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().startPipelineCapture();
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Starts recording all following CLIJ calls into a pipeline, until CLIJ_stopPipelineCapture is called.\n" +
+                "Pushed images become inputs of the pipeline, pulled and saved images its outputs.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "";
+    }
+}
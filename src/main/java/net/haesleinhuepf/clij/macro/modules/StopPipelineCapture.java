@@ -0,0 +1,50 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * StopPipelineCapture
+ * <p>
+ * <p>
+ * <p>
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_stopPipelineCapture")
+public class StopPipelineCapture extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        String path = (String) args[0];
+        try {
+            CLIJHandler.getInstance().stopPipelineCapture().save(new File(path));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't write " + path + ": " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String file";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Stops recording CLIJ calls and saves the recorded pipeline as JSON file. Images which were written and\n" +
+                "not released are outputs of the pipeline as well. Replay it with CLIJ_replayPipeline.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "";
+    }
+}
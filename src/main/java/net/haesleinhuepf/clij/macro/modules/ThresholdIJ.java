@@ -10,6 +10,7 @@ import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
 import net.haesleinhuepf.clij.macro.CLIJImageJProcessor;
 import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
 import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJPointwiseOperation;
 import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
 import org.scijava.plugin.Plugin;
 
@@ -18,7 +19,7 @@ import org.scijava.plugin.Plugin;
  * December 2018
  */
 @Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_thresholdIJ")
-public class ThresholdIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageJProcessor, OffersDocumentation {
+public class ThresholdIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, CLIJImageJProcessor, CLIJPointwiseOperation, OffersDocumentation {
 
     @Override
     public boolean executeCL() {
@@ -37,6 +38,11 @@ public class ThresholdIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin,
         return "Image source, Image destination, Number threshold";
     }
 
+    @Override
+    public String getPointwiseExpression() {
+        return "(x >= p0) ? 1.0f : 0.0f";
+    }
+
     @Override
     public boolean executeIJ() {
         //
@@ -45,7 +51,7 @@ public class ThresholdIJ extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
         Object[] args = imageJArgs();
         ImagePlus input = (ImagePlus) args[0];
-        int threshold = asInteger(args[2]);
+        int threshold = asIntegerValue(args[2]);
 
         IJ.setRawThreshold(input, threshold, Double.MAX_VALUE, null);
         IJ.run(input,"Convert to Mask", "");
@@ -20,8 +20,8 @@ public class Translate2D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
     @Override
     public boolean executeCL() {
-        float translateX = -asFloat(args[2]);
-        float translateY = -asFloat(args[3]);
+        float translateX = -asFloatValue(args[2]);
+        float translateY = -asFloatValue(args[3]);
 
         AffineTransform3D at = new AffineTransform3D();
         Object[] args = openCLBufferArgs();
@@ -20,9 +20,9 @@ public class Translate3D extends AbstractCLIJPlugin implements CLIJMacroPlugin,
 
     @Override
     public boolean executeCL() {
-        float translateX = -asFloat(args[2]);
-        float translateY = -asFloat(args[3]);
-        float translateZ = -asFloat(args[4]);
+        float translateX = -asFloatValue(args[2]);
+        float translateY = -asFloatValue(args[3]);
+        float translateZ = -asFloatValue(args[4]);
 
         AffineTransform3D at = new AffineTransform3D();
         Object[] args = openCLBufferArgs();
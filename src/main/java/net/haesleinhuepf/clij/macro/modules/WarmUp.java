@@ -0,0 +1,44 @@
+package net.haesleinhuepf.clij.macro.modules;
+
+import net.haesleinhuepf.clij.macro.AbstractCLIJPlugin;
+import net.haesleinhuepf.clij.macro.CLIJHandler;
+import net.haesleinhuepf.clij.macro.CLIJMacroPlugin;
+import net.haesleinhuepf.clij.macro.CLIJOpenCLProcessor;
+import net.haesleinhuepf.clij.macro.CLIJWarmUp;
+import net.haesleinhuepf.clij.macro.documentation.OffersDocumentation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Author: @haesleinhuepf
+ * 10 2026
+ */
+
+@Plugin(type = CLIJMacroPlugin.class, name = "CLIJ_warmUp")
+public class WarmUp extends AbstractCLIJPlugin implements CLIJMacroPlugin, CLIJOpenCLProcessor, OffersDocumentation {
+
+    @Override
+    public boolean executeCL() {
+        CLIJHandler.getInstance().warmUp(CLIJWarmUp.readMacro((String) args[0]));
+        return true;
+    }
+
+    @Override
+    public String getParameterHelpText() {
+        return "String macro";
+    }
+
+
+    @Override
+    public String getDescription() {
+        return "Compiles the kernels of all CLIJ methods called in the given macro in the background, e.g. \n" +
+                "Ext.CLIJ_warmUp(getInfo(\"macro.filepath\")); right after installing the extensions. The macro can \n" +
+                "be given as file or as text. Every method is executed once on tiny images of the pixel types of \n" +
+                "the open images; so, its first call in the macro doesn't wait for the compiler. Methods with \n" +
+                "String parameters are skipped.";
+    }
+
+    @Override
+    public String getAvailableForDimensions() {
+        return "-";
+    }
+}
@@ -0,0 +1,67 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CLIJDeferredPipelineTest {
+    private static final CLIJMacroPluginSignature FILTER = CLIJMacroPluginSignature.parse("Image source, Image destination, Number sigma");
+    private static final CLIJMacroPluginSignature COMBINE = CLIJMacroPluginSignature.parse("Image source1, Image source2, Image destination");
+
+    @Test
+    public void operationsOnReleasedImagesWhichAreNeverReadAreDropped() {
+        CLIJDeferredPipeline pipeline = new CLIJDeferredPipeline();
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "blurred", 2.0}, FILTER);
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "unused", 5.0}, FILTER);
+        pipeline.addOperation("CLIJ_threshold", new Object[]{"blurred", "binary", 100.0}, FILTER);
+        pipeline.addRelease("CLIJ_release", "unused");
+        pipeline.addRelease("CLIJ_release", "blurred");
+
+        ArrayList<CLIJDeferredPipeline.Operation> schedule = pipeline.schedule();
+
+        assertEquals(4, schedule.size());
+        for (CLIJDeferredPipeline.Operation operation : schedule) {
+            if (!operation.isRelease()) {
+                assertFalse("unused".equals(operation.getWrites()[0]));
+            }
+        }
+    }
+
+    @Test
+    public void releasesAreMovedBeforeIndependentOperations() {
+        CLIJDeferredPipeline pipeline = new CLIJDeferredPipeline();
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "temp1", 2.0}, FILTER);
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "temp2", 4.0}, FILTER);
+        pipeline.addOperation("CLIJ_subtractImages", new Object[]{"temp1", "temp2", "dog"}, COMBINE);
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "smooth", 1.0}, FILTER);
+        pipeline.addRelease("CLIJ_release", "temp1");
+        pipeline.addRelease("CLIJ_release", "temp2");
+
+        ArrayList<CLIJDeferredPipeline.Operation> schedule = pipeline.schedule();
+
+        assertEquals(6, schedule.size());
+        // temp1 and temp2 are released right after their last reader, before the independent blur
+        assertEquals("dog", schedule.get(2).getWrites()[0]);
+        assertTrue(schedule.get(3).isRelease());
+        assertTrue(schedule.get(4).isRelease());
+        assertEquals("smooth", schedule.get(5).getWrites()[0]);
+    }
+
+    @Test
+    public void dependentOperationsKeepTheirOrder() {
+        CLIJDeferredPipeline pipeline = new CLIJDeferredPipeline();
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "a", 2.0}, FILTER);
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"a", "b", 2.0}, FILTER);
+        // overwrites a after b was computed from it
+        pipeline.addOperation("CLIJ_blur2D", new Object[]{"input", "a", 4.0}, FILTER);
+
+        ArrayList<CLIJDeferredPipeline.Operation> schedule = pipeline.schedule();
+
+        assertEquals(3, schedule.size());
+        assertEquals(2.0, schedule.get(0).getArgs()[2]);
+        assertEquals("b", schedule.get(1).getWrites()[0]);
+        assertEquals(4.0, schedule.get(2).getArgs()[2]);
+    }
+}
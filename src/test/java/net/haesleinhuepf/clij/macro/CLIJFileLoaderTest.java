@@ -0,0 +1,43 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.io.FileInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CLIJFileLoaderTest {
+
+    @Test
+    public void slicesOfRawFilesFollowTheHeader() {
+        FileInfo[] info = CLIJFileLoader.describeRaw(4, 2, 3, 16, 100, true);
+
+        assertArrayEquals(new long[]{100, 116, 132}, CLIJFileLoader.getSliceOffsets(info));
+        assertArrayEquals(new long[]{4, 2, 3}, CLIJFileLoader.dimensionsOf(info));
+        assertArrayEquals(new long[]{4, 2}, CLIJFileLoader.dimensionsOf(CLIJFileLoader.describeRaw(4, 2, 1, 8, 0, true)));
+    }
+
+    @Test
+    public void contiguousSlicesAreGroupedIntoChunks() {
+        // slices 0-2 follow each other, slice 3 is stored somewhere else
+        long[] sliceOffsets = new long[]{0, 10, 20, 100, 110};
+
+        ArrayList<int[]> chunks = CLIJFileLoader.getChunks(sliceOffsets, 10, 1000);
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new int[]{0, 3}, chunks.get(0));
+        assertArrayEquals(new int[]{3, 2}, chunks.get(1));
+
+        // chunks are limited in size
+        chunks = CLIJFileLoader.getChunks(sliceOffsets, 10, 20);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new int[]{0, 2}, chunks.get(0));
+        assertArrayEquals(new int[]{2, 1}, chunks.get(1));
+        assertArrayEquals(new int[]{3, 2}, chunks.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedBitDepthsAreRejected() {
+        CLIJFileLoader.describeRaw(4, 2, 3, 24, 0, true);
+    }
+}
@@ -0,0 +1,54 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class CLIJFileSaverTest {
+
+    @Test
+    public void tiffHeaderPointsToSlicesAfterIt() {
+        ByteBuffer header = CLIJFileSaver.createTiffHeader(3, 2, 2, NativeTypeEnum.UnsignedShort, ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals('I', header.get(0));
+        assertEquals(42, header.getShort(2));
+        int firstDirectory = header.getInt(4);
+        assertEquals(11, header.getShort(firstDirectory));
+        assertEquals(3, getEntry(header, firstDirectory, 256));
+        assertEquals(16, getEntry(header, firstDirectory, 258));
+        assertEquals(header.capacity(), getEntry(header, firstDirectory, 273));
+        assertEquals(12, getEntry(header, firstDirectory, 279));
+
+        int secondDirectory = header.getInt(firstDirectory + 2 + 11 * 12);
+        assertEquals(10, header.getShort(secondDirectory));
+        assertEquals(header.capacity() + 12, getEntry(header, secondDirectory, 273));
+        assertEquals(0, header.getInt(secondDirectory + 2 + 10 * 12));
+    }
+
+    @Test
+    public void floatImagesAreMarkedAsFloat() {
+        ByteBuffer header = CLIJFileSaver.createTiffHeader(3, 2, 1, NativeTypeEnum.Float, ByteOrder.BIG_ENDIAN);
+
+        assertEquals('M', header.get(0));
+        int directory = header.getInt(4);
+        assertEquals(32, getEntry(header, directory, 258));
+        assertEquals(3, getEntry(header, directory, 339));
+        assertEquals(0, header.getInt(directory + 2 + 11 * 12));
+    }
+
+    private static int getEntry(ByteBuffer header, int directory, int tag) {
+        int entries = header.getShort(directory);
+        for (int i = 0; i < entries; i++) {
+            int entry = directory + 2 + i * 12;
+            if (header.getShort(entry) == tag) {
+                return header.getShort(entry + 2) == 3 ? header.getShort(entry + 8) : header.getInt(entry + 8);
+            }
+        }
+        fail("Tag " + tag + " not found");
+        return -1;
+    }
+}
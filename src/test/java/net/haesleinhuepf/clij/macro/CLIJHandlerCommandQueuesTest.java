@@ -0,0 +1,67 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.process.FloatProcessor;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.macro.modules.AddImageAndScalar;
+import net.haesleinhuepf.clij.macro.modules.MultiplyImageAndScalar;
+import net.haesleinhuepf.clij.macro.modules.Release;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJHandlerCommandQueuesTest {
+
+    @Test
+    public void oneQueueIsTheDefault() {
+        assertEquals(1, new CLIJHandler().getNumberOfCommandQueues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneQueueIsNeeded() {
+        new CLIJHandler().setNumberOfCommandQueues(0);
+    }
+
+    @Test
+    public void independentChainsOnSeveralQueuesGiveTheSameResults() {
+        CLIJ clij = CLIJ.getInstance();
+        CLIJHandler handler = new CLIJHandler();
+        final CLIJMacroPlugin[] plugins = new CLIJMacroPlugin[]{new AddImageAndScalar(), new MultiplyImageAndScalar(), new Release()};
+        handler.setPluginService(new CLIJMacroPluginService() {
+            @Override
+            public CLIJMacroPlugin getCLIJMacroPlugin(String name) {
+                for (CLIJMacroPlugin plugin : plugins) {
+                    if (plugin.getName().equals(name)) {
+                        return plugin;
+                    }
+                }
+                return null;
+            }
+        });
+        handler.setNumberOfCommandQueues(3);
+        String[] channels = new String[]{"channel1", "channel2", "channel3"};
+        ClearCLBuffer[] results = new ClearCLBuffer[channels.length];
+        for (int c = 0; c < channels.length; c++) {
+            handler.pushToGPU(new ImagePlus(channels[c], new FloatProcessor(3, 2, new float[]{c, 1, 2, 3, 4, 5})), channels[c]);
+            // the results are written into buffers of the right size
+            results[c] = handler.pushToGPU(new ImagePlus("result", new FloatProcessor(3, 2)), "result" + c);
+        }
+
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.DEFERRED);
+        for (int c = 0; c < channels.length; c++) {
+            handler.handleExtension("CLIJ_addImageAndScalar", new Object[]{channels[c], "temp" + c, 1.0});
+            handler.handleExtension("CLIJ_multiplyImageAndScalar", new Object[]{"temp" + c, "result" + c, 2.0});
+            handler.handleExtension("CLIJ_release", new Object[]{"temp" + c});
+        }
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.SYNCHRONOUS);
+
+        for (int c = 0; c < channels.length; c++) {
+            ImagePlus result = handler.convertToImagePlus(results[c], "result" + c);
+            assertArrayEquals(new float[]{(c + 1) * 2, 4, 6, 8, 10, 12}, (float[]) result.getProcessor().getPixels(), 0);
+        }
+
+        handler.clearGPU();
+        clij.close();
+    }
+}
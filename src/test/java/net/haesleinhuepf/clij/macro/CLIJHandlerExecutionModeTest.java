@@ -0,0 +1,50 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.macro.modules.Invert;
+import net.haesleinhuepf.clij.macro.modules.Release;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJHandlerExecutionModeTest {
+
+    private static CLIJHandler createHandler(final CLIJMacroPlugin... plugins) {
+        CLIJHandler handler = new CLIJHandler();
+        handler.setPluginService(new CLIJMacroPluginService() {
+            @Override
+            public CLIJMacroPlugin getCLIJMacroPlugin(String name) {
+                for (CLIJMacroPlugin plugin : plugins) {
+                    if (plugin.getName().equals(name)) {
+                        return plugin;
+                    }
+                }
+                return null;
+            }
+        });
+        return handler;
+    }
+
+    @Test
+    public void deferredOperationsAreExecutedWhenLeavingDeferredMode() {
+        CLIJHandler handler = createHandler(new Invert(), new Release());
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.DEFERRED);
+        handler.handleExtension("CLIJ_invert", new Object[]{"input", "temp"});
+        handler.handleExtension("CLIJ_release", new Object[]{"temp"});
+        assertEquals(2, handler.getNumberOfDeferredOperations());
+
+        // the inverted image is released without being read; only the release is left to execute
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.SYNCHRONOUS);
+        assertEquals(0, handler.getNumberOfDeferredOperations());
+        assertEquals(CLIJHandler.ExecutionMode.SYNCHRONOUS, handler.getExecutionMode());
+    }
+
+    @Test
+    public void deferredReleasesAreExecutedWhenSwitchingToAsynchronousMode() {
+        CLIJHandler handler = createHandler(new Invert(), new Release());
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.DEFERRED);
+        handler.handleExtension("CLIJ_release", new Object[]{"temp"});
+
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.ASYNCHRONOUS);
+        assertEquals(0, handler.getNumberOfDeferredOperations());
+    }
+}
@@ -0,0 +1,57 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.process.FloatProcessor;
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.macro.modules.Invert;
+import net.haesleinhuepf.clij.macro.modules.Set;
+import net.haesleinhuepf.clij.macro.modules.SumOfAllPixels;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJHandlerImageStateTest {
+
+    private static boolean writesImage(CLIJMacroPlugin plugin, int index) {
+        return CLIJHandler.writesImage(plugin, CLIJMacroPluginSignature.parse(plugin.getParameterHelpText()), index);
+    }
+
+    @Test
+    public void writtenImagesAreDetermined() {
+        // only destinations are written
+        assertFalse(writesImage(new Invert(), 0));
+        assertTrue(writesImage(new Invert(), 1));
+        // the image is written in place
+        assertTrue(writesImage(new Set(), 0));
+        assertFalse(writesImage(new Set(), 1));
+        // the image is only measured
+        assertFalse(writesImage(new SumOfAllPixels(), 0));
+    }
+
+    @Test
+    public void imagesWrittenInPlaceArePushedAgain() {
+        CLIJ clij = CLIJ.getInstance();
+        CLIJHandler handler = new CLIJHandler();
+        final Set set = new Set();
+        handler.setPluginService(new CLIJMacroPluginService() {
+            @Override
+            public CLIJMacroPlugin getCLIJMacroPlugin(String name) {
+                return set.getName().equals(name) ? set : null;
+            }
+        });
+        float[] pixels = new float[]{1, 2, 3, 4, 5, 6};
+        ImagePlus imp = new ImagePlus("image", new FloatProcessor(3, 2, pixels.clone()));
+
+        handler.pushToGPU(imp, "image");
+        handler.handleExtension("CLIJ_set", new Object[]{"image", 0.0});
+        // the image didn't change, but its copy in GPU memory did
+        ClearCLBuffer buffer = handler.pushToGPU(imp, "image");
+
+        ImagePlus result = handler.convertToImagePlus(buffer, "result");
+        assertArrayEquals(pixels, (float[]) result.getProcessor().getPixels(), 0);
+
+        handler.clearGPU();
+        clij.close();
+    }
+}
@@ -0,0 +1,57 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class CLIJHandlerNamespaceTest {
+
+    @Test
+    public void asynchronousOperationsUseTheNamespaceOfTheMacroThread() throws ExecutionException, InterruptedException {
+        final CLIJHandler handler = new CLIJHandler();
+        handler.setPerThreadNamespaces(true);
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.ASYNCHRONOUS);
+        final String qualifiedOnMacroThread = handler.qualify("input");
+        assertEquals("thread" + Thread.currentThread().getId() + "::input", qualifiedOnMacroThread);
+
+        final String[] qualifiedOnExecutor = new String[2];
+        handler.submitAsynchronously(new Runnable() {
+            @Override
+            public void run() {
+                qualifiedOnExecutor[0] = handler.qualify("input");
+                // arguments arrive qualified already and are looked up again, e.g. by waitForTransfers
+                qualifiedOnExecutor[1] = handler.qualify(qualifiedOnMacroThread);
+            }
+        }).get();
+
+        assertEquals(qualifiedOnMacroThread, qualifiedOnExecutor[0]);
+        assertEquals(qualifiedOnMacroThread, qualifiedOnExecutor[1]);
+    }
+
+    @Test
+    public void asynchronousOperationsOfGlobalAndNamedNamespacesStayThere() throws ExecutionException, InterruptedException {
+        final CLIJHandler handler = new CLIJHandler();
+        handler.setExecutionMode(CLIJHandler.ExecutionMode.ASYNCHRONOUS);
+        final String[] qualified = new String[2];
+        handler.submitAsynchronously(new Runnable() {
+            @Override
+            public void run() {
+                qualified[0] = handler.qualify("input");
+            }
+        });
+        // switched on while the operation is queued; it was handed over in the global namespace
+        handler.setPerThreadNamespaces(true);
+        handler.setNamespace("session");
+        handler.submitAsynchronously(new Runnable() {
+            @Override
+            public void run() {
+                qualified[1] = handler.qualify("input");
+            }
+        }).get();
+
+        assertEquals("input", qualified[0]);
+        assertEquals("session::input", qualified[1]);
+    }
+}
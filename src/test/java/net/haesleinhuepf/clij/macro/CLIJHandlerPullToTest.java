@@ -0,0 +1,50 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJHandlerPullToTest {
+
+    private static ImagePlus createTarget(int numberOfSlices) {
+        ImageStack stack = new ImageStack(4, 3);
+        for (int z = 0; z < numberOfSlices; z++) {
+            stack.addSlice("", new float[4 * 3]);
+        }
+        return new ImagePlus("target", stack);
+    }
+
+    @Test
+    public void positionsInRangeAreAccepted() {
+        ImagePlus target = createTarget(3);
+        CLIJHandler.checkPosition(target, 1, 3, 1, 1);
+        // a 3D image fills all slices
+        CLIJHandler.checkPosition(target, 1, 1, 1, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slicesOutOfRangeAreRejected() {
+        CLIJHandler.checkPosition(createTarget(3), 1, 4, 1, 1);
+    }
+
+    @Test
+    public void channelsAndFramesOutOfRangeAreRejected() {
+        ImagePlus target = createTarget(3);
+        int[][] positions = new int[][]{{0, 1, 1}, {2, 1, 1}, {1, 0, 1}, {1, 1, 0}, {1, 1, 2}};
+        for (int[] position : positions) {
+            try {
+                CLIJHandler.checkPosition(target, position[0], position[1], position[2], 1);
+                fail("Position " + position[0] + ", " + position[1] + ", " + position[2] + " wasn't rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stacksWhichDoNotFitAreRejected() {
+        CLIJHandler.checkPosition(createTarget(3), 1, 1, 1, 4);
+    }
+}
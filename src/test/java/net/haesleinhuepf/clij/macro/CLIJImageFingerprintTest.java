@@ -0,0 +1,38 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJImageFingerprintTest {
+
+    @Test
+    public void checksumsDifferOnlyIfPixelsDiffer() {
+        short[] pixels = new short[]{1, 2, 3, 4};
+        short[] samePixels = new short[]{1, 2, 3, 4};
+        short[] otherPixels = new short[]{1, 2, 4, 3};
+
+        assertEquals(CLIJImageFingerprint.checksum(pixels), CLIJImageFingerprint.checksum(samePixels));
+        assertNotEquals(CLIJImageFingerprint.checksum(pixels), CLIJImageFingerprint.checksum(otherPixels));
+        assertNotEquals(CLIJImageFingerprint.checksum(new float[]{0.0f}), CLIJImageFingerprint.checksum(new float[]{-0.0f}));
+    }
+
+    @Test
+    public void changedSlicesAreReported() {
+        CLIJImageFingerprint before = new CLIJImageFingerprint(2, 2, 16, new long[]{1, 2, 3, 4});
+        CLIJImageFingerprint after = new CLIJImageFingerprint(2, 2, 16, new long[]{1, 5, 3, 6});
+        CLIJImageFingerprint otherType = new CLIJImageFingerprint(2, 2, 8, new long[]{1, 2, 3, 4});
+
+        assertTrue(before.hasSameShape(after));
+        assertFalse(before.hasSameShape(otherType));
+        assertArrayEquals(new int[]{1, 3}, before.getChangedSlices(after));
+        assertEquals(0, before.getChangedSlices(before).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPixelTypesAreNotFingerprinted() {
+        assertFalse(CLIJImageFingerprint.canChecksum(new double[]{1.0}));
+        assertFalse(CLIJImageFingerprint.canChecksum(null));
+        CLIJImageFingerprint.checksum(new double[]{1.0});
+    }
+}
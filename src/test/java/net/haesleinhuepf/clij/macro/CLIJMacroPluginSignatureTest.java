@@ -0,0 +1,41 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.macro.MacroExtension;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJMacroPluginSignatureTest {
+    @Test
+    public void parseImagesNumbersAndBooleans() {
+        CLIJMacroPluginSignature signature = CLIJMacroPluginSignature.parse("Image source, Image destination_max, Number angle, Boolean rotateAroundCenter");
+
+        assertEquals(4, signature.getNumberOfParameters());
+        assertTrue(signature.isImage(0));
+        assertFalse(signature.isDestination(0));
+        assertTrue(signature.isImage(1));
+        assertTrue(signature.isDestination(1));
+        assertEquals("destination_max", signature.getName(1));
+        assertEquals(CLIJMacroPluginSignature.ParameterType.NUMBER, signature.getType(2));
+        assertEquals(CLIJMacroPluginSignature.ParameterType.BOOLEAN, signature.getType(3));
+        assertTrue(signature.producesImages());
+
+        int[] extensionArgumentTypes = signature.getExtensionArgumentTypes();
+        assertEquals(MacroExtension.ARG_STRING, extensionArgumentTypes[0]);
+        assertEquals(MacroExtension.ARG_STRING, extensionArgumentTypes[1]);
+        assertEquals(MacroExtension.ARG_NUMBER, extensionArgumentTypes[2]);
+        assertEquals(MacroExtension.ARG_NUMBER, extensionArgumentTypes[3]);
+    }
+
+    @Test
+    public void parseEmptyAndStringOnly() {
+        CLIJMacroPluginSignature empty = CLIJMacroPluginSignature.parse("");
+        assertEquals(0, empty.getNumberOfParameters());
+        assertFalse(empty.producesImages());
+
+        CLIJMacroPluginSignature push = CLIJMacroPluginSignature.parse("String image");
+        assertEquals(1, push.getNumberOfParameters());
+        assertFalse(push.isImage(0));
+        assertFalse(push.producesImages());
+    }
+}
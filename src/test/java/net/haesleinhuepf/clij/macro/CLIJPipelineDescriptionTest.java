@@ -0,0 +1,54 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJPipelineDescriptionTest {
+
+    @Test
+    public void descriptionsSurviveTheRoundTripThroughJSON() {
+        CLIJPipelineDescription description = new CLIJPipelineDescription();
+        description.addInput("input");
+        description.addOperation("CLIJ_blur3DFast", new Object[]{"input", "blurred", 2, 2.5f, 3.0});
+        description.addOperation("CLIJ_thresholdIJ", new Object[]{"blurred", "mask \"1\"", true});
+        description.addOperation(CLIJPipelineDescription.RELEASE, new Object[]{"blurred"});
+        description.addOutput("mask \"1\"");
+
+        CLIJPipelineDescription parsed = CLIJPipelineDescription.fromJSON(description.toJSON());
+
+        assertEquals(description.getInputs(), parsed.getInputs());
+        assertEquals(description.getOutputs(), parsed.getOutputs());
+        assertEquals(3, parsed.getOperations().size());
+        for (int o = 0; o < 3; o++) {
+            assertEquals(description.getOperations().get(o).getMethod(), parsed.getOperations().get(o).getMethod());
+            assertArrayEquals(description.getOperations().get(o).getArguments(), parsed.getOperations().get(o).getArguments());
+        }
+        assertArrayEquals(new Object[]{"input", "blurred", 2.0, 2.5, 3.0}, parsed.getOperations().get(0).getArguments());
+        assertArrayEquals(new Object[]{"blurred", "mask \"1\"", 1.0}, parsed.getOperations().get(1).getArguments());
+        assertTrue(parsed.getOperations().get(2).isRelease());
+        assertEquals(parsed.toJSON(), description.toJSON());
+    }
+
+    @Test
+    public void handWrittenDescriptionsAreParsed() {
+        String json = "{ \"operations\" : [ { \"arguments\": [\"in\\u0070ut\", \"out\\tput\", -1.5e2, false], \"method\": \"CLIJ_addImageAndScalar\" } ],\n" +
+                "  \"outputs\": [\"out\\tput\"], \"inputs\": [\"input\"], \"version\": 1, \"comment\": null }";
+
+        CLIJPipelineDescription description = CLIJPipelineDescription.fromJSON(json);
+
+        assertEquals("input", description.getInputs().get(0));
+        assertEquals("out\tput", description.getOutputs().get(0));
+        assertArrayEquals(new Object[]{"input", "out\tput", -150.0, 0.0}, description.getOperations().get(0).getArguments());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedJSONIsRejected() {
+        CLIJPipelineDescription.fromJSON("{\"version\": 1, \"inputs\": [\"input\"");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void newerVersionsAreRejected() {
+        CLIJPipelineDescription.fromJSON("{\"version\": 2, \"inputs\": [], \"outputs\": [], \"operations\": []}");
+    }
+}
@@ -0,0 +1,188 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.CLIJ;
+import net.haesleinhuepf.clij.clearcl.ClearCLBuffer;
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+import net.haesleinhuepf.clij.macro.modules.AddImageAndScalar;
+import net.haesleinhuepf.clij.macro.modules.Blur2DFast;
+import net.haesleinhuepf.clij.macro.modules.Blur3DFast;
+import net.haesleinhuepf.clij.macro.modules.Flip2D;
+import net.haesleinhuepf.clij.macro.modules.Invert;
+import net.haesleinhuepf.clij.macro.modules.Mask;
+import net.haesleinhuepf.clij.macro.modules.Mean2DBox;
+import net.haesleinhuepf.clij.macro.modules.MultiplyImageAndScalar;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CLIJPipelineTest {
+
+    // executes steps one by one instead of fused and records what happens
+    private static class RecordingHandler extends CLIJHandler {
+        private final ArrayList<String> executed = new ArrayList<String>();
+        private final ArrayList<ClearCLBuffer> destinations = new ArrayList<ClearCLBuffer>();
+        private final ArrayList<ClearCLBuffer> released = new ArrayList<ClearCLBuffer>();
+        private int fusedCalls = 0;
+        private String failingPlugin = null;
+
+        private RecordingHandler() {
+            setPluginService(createPluginService(new Invert(), new AddImageAndScalar(), new MultiplyImageAndScalar(), new Mean2DBox()));
+        }
+
+        @Override
+        public synchronized boolean executeFusedOnBuffers(ClearCLBuffer input, List<CLIJPointwiseFusion.Step> steps, ClearCLBuffer output) {
+            fusedCalls++;
+            return false;
+        }
+
+        @Override
+        public synchronized void executeOnBuffers(CLIJMacroPlugin plugin, CLIJMacroPluginSignature signature, Object[] args) {
+            executed.add(plugin.getName());
+            destinations.add((ClearCLBuffer) args[1]);
+            if (plugin.getName().equals(failingPlugin)) {
+                throw new IllegalStateException(plugin.getName() + " failed");
+            }
+            super.executeOnBuffers(plugin, signature, args);
+        }
+
+        @Override
+        public synchronized void releaseBuffer(ClearCLBuffer buffer) {
+            released.add(buffer);
+            super.releaseBuffer(buffer);
+        }
+    }
+
+    private static CLIJMacroPluginService createPluginService(final CLIJMacroPlugin... plugins) {
+        return new CLIJMacroPluginService() {
+            @Override
+            public CLIJMacroPlugin getCLIJMacroPlugin(String name) {
+                for (CLIJMacroPlugin plugin : plugins) {
+                    if (plugin.getName().equals(name)) {
+                        return plugin;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static CLIJHandler createHandler(CLIJMacroPlugin... plugins) {
+        CLIJHandler handler = new CLIJHandler();
+        handler.setPluginService(createPluginService(plugins));
+        return handler;
+    }
+
+    @Test
+    public void consecutivePointwiseStepsAreGrouped() {
+        CLIJHandler handler = createHandler(new Invert(), new AddImageAndScalar(), new MultiplyImageAndScalar(), new Mean2DBox());
+        CLIJPipeline pipeline = new CLIJPipeline(handler, null)
+                .invert()
+                .addScalar(1)
+                .then("mean2DBox", 1, 1)
+                .multiplyScalar(2)
+                .invert()
+                .addScalar(3);
+
+        assertEquals(6, pipeline.getNumberOfSteps());
+        assertEquals(2, pipeline.getGroupEnd(0));
+        // neighborhood operations are executed on their own
+        assertEquals(3, pipeline.getGroupEnd(2));
+        assertEquals(6, pipeline.getGroupEnd(3));
+        assertEquals(6, pipeline.getGroupEnd(5));
+    }
+
+    @Test
+    public void parametersAreConvertedToDouble() {
+        CLIJHandler handler = createHandler(new AddImageAndScalar(), new Flip2D());
+        CLIJPipeline pipeline = new CLIJPipeline(handler, null)
+                .then("addImageAndScalar", 2)
+                .then("CLIJ_flip2D", true, false);
+
+        assertArrayEquals(new Object[]{2.0}, pipeline.getParameters(0));
+        // as handed over by the macro interpreter
+        assertArrayEquals(new Object[]{1.0, 0.0}, pipeline.getParameters(1));
+    }
+
+    @Test
+    public void fastBlursAreTwoOrThreeDimensional() {
+        CLIJPipeline pipeline = new CLIJPipeline(createHandler(new Blur2DFast()), null).blurFast2D(2, 3);
+        assertArrayEquals(new Object[]{2.0, 3.0}, pipeline.getParameters(0));
+
+        pipeline = new CLIJPipeline(createHandler(new Blur3DFast()), null).blurFast3D(2, 3, 4);
+        assertArrayEquals(new Object[]{2.0, 3.0, 4.0}, pipeline.getParameters(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void imageParametersMustBeBuffers() {
+        new CLIJPipeline(createHandler(new Mask()), null).then("mask", "mask.tif");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongNumbersOfParametersAreRejected() {
+        new CLIJPipeline(createHandler(new AddImageAndScalar()), null).then("addImageAndScalar");
+    }
+
+    @Test
+    public void stepsAreExecutedOneByOneIfFusionFails() {
+        CLIJ clij = CLIJ.getInstance();
+        ClearCLBuffer input = clij.create(new long[]{8, 8}, NativeTypeEnum.Float);
+        RecordingHandler handler = new RecordingHandler();
+
+        ClearCLBuffer result = new CLIJPipeline(handler, input).invert().addScalar(1).run();
+
+        assertEquals(1, handler.fusedCalls);
+        assertEquals(Arrays.asList("CLIJ_invert", "CLIJ_addImageAndScalar"), handler.executed);
+        assertSame(result, handler.destinations.get(1));
+        // the result of invert was read by the next step and handed back
+        assertTrue(handler.released.contains(handler.destinations.get(0)));
+        assertFalse(handler.released.contains(result));
+        assertFalse(handler.released.contains(input));
+
+        result.close();
+        input.close();
+        clij.close();
+    }
+
+    @Test
+    public void intermediatesAreReleasedIfAStepFails() {
+        CLIJ clij = CLIJ.getInstance();
+        ClearCLBuffer input = clij.create(new long[]{8, 8}, NativeTypeEnum.Float);
+        ClearCLBuffer destination = clij.create(new long[]{8, 8}, NativeTypeEnum.Float);
+        RecordingHandler handler = new RecordingHandler();
+        handler.failingPlugin = "CLIJ_mean2DBox";
+
+        try {
+            new CLIJPipeline(handler, input).invert().then("mean2DBox", 1, 1).invert().run();
+            fail("The failing step wasn't reported");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(Arrays.asList("CLIJ_invert", "CLIJ_mean2DBox"), handler.executed);
+        assertTrue(handler.released.contains(handler.destinations.get(0)));
+        assertTrue(handler.released.contains(handler.destinations.get(1)));
+        assertFalse(handler.released.contains(input));
+
+        // the destination belongs to the caller, even if the last step fails
+        handler.executed.clear();
+        handler.destinations.clear();
+        handler.released.clear();
+        try {
+            new CLIJPipeline(handler, input).invert().then("mean2DBox", 1, 1).run(destination);
+            fail("The failing step wasn't reported");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertSame(destination, handler.destinations.get(1));
+        assertTrue(handler.released.contains(handler.destinations.get(0)));
+        assertFalse(handler.released.contains(destination));
+        assertFalse(handler.released.contains(input));
+
+        destination.close();
+        input.close();
+        clij.close();
+    }
+}
@@ -0,0 +1,38 @@
+package net.haesleinhuepf.clij.macro;
+
+import net.haesleinhuepf.clij.coremem.enums.NativeTypeEnum;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CLIJPointwiseFusionTest {
+    @Test
+    public void generatedKernelReadsOnceAndSkipsUnneededIntermediates() {
+        ArrayList<CLIJPointwiseFusion.Step> steps = new ArrayList<CLIJPointwiseFusion.Step>();
+        steps.add(new CLIJPointwiseFusion.Step("CLIJ_multiplyImageAndScalar", "x * p0", new float[]{2}, NativeTypeEnum.UnsignedByte, false));
+        steps.add(new CLIJPointwiseFusion.Step("CLIJ_absolute", "fabs(x)", new float[0], NativeTypeEnum.UnsignedByte, false));
+        steps.add(new CLIJPointwiseFusion.Step("CLIJ_thresholdIJ", "(x >= p0) ? 1.0f : 0.0f", new float[]{100}, NativeTypeEnum.Float, true));
+
+        String source = CLIJPointwiseFusion.generateSource(NativeTypeEnum.UnsignedByte, steps);
+
+        assertTrue(source.contains("__global const uchar* src"));
+        assertTrue(source.contains("const float p0_0"));
+        assertTrue(source.contains("const float p2_0"));
+        assertTrue(source.contains("__global float* dst2"));
+        assertFalse(source.contains("dst0"));
+        assertFalse(source.contains("dst1"));
+        // intermediate results saturate like the unfused operations would
+        assertTrue(source.contains("x = (float) convert_uchar_sat((x * p0));"));
+        assertTrue(source.contains("dst2[i] = (float)x;"));
+    }
+
+    @Test
+    public void onlyPlainPixelTypesAreSupported() {
+        assertTrue(CLIJPointwiseFusion.isSupported(NativeTypeEnum.UnsignedShort));
+        assertTrue(CLIJPointwiseFusion.isSupported(NativeTypeEnum.Float));
+        assertFalse(CLIJPointwiseFusion.isSupported(NativeTypeEnum.HalfFloat));
+        assertFalse(CLIJPointwiseFusion.isSupported(null));
+    }
+}
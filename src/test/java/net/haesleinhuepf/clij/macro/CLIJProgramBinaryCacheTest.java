@@ -0,0 +1,54 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CLIJProgramBinaryCacheTest {
+
+    @Test
+    public void storedBinariesAreLoadedUntilTheDriverChanges() throws IOException {
+        File directory = Files.createTempDirectory("clij-programs").toFile();
+        CLIJProgramBinaryCache cache = new CLIJProgramBinaryCache(directory);
+        String key = CLIJProgramBinaryCache.createKey("__kernel void k() {}", "", "GPU 1.0");
+        byte[] binary = new byte[]{1, 2, 3, 4, 5};
+
+        assertNull(cache.load("GPU", "1.0", key));
+        cache.store("GPU", "1.0", key, binary);
+        assertArrayEquals(binary, new CLIJProgramBinaryCache(directory).load("GPU", "1.0", key));
+
+        // a new driver compiles differently
+        assertNull(cache.load("GPU", "2.0", key));
+        assertNull(cache.load("GPU", "1.0", key));
+    }
+
+    @Test
+    public void damagedBinariesAreDeleted() throws IOException {
+        File directory = Files.createTempDirectory("clij-programs").toFile();
+        CLIJProgramBinaryCache cache = new CLIJProgramBinaryCache(directory);
+        String key = CLIJProgramBinaryCache.createKey("__kernel void k() {}", "", "GPU 1.0");
+        cache.store("GPU", "1.0", key, new byte[]{1, 2, 3, 4, 5});
+
+        File deviceDirectory = directory.listFiles()[0];
+        File file = new File(deviceDirectory, key + ".clbin");
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 2));
+
+        assertNull(cache.load("GPU", "1.0", key));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void keysDependOnSourceOptionsAndDevice() {
+        String key = CLIJProgramBinaryCache.createKey("source", "-DDTYPE=float", "GPU 1.0");
+        assertEquals(key, CLIJProgramBinaryCache.createKey("source", "-DDTYPE=float", "GPU 1.0"));
+        assertNotEquals(key, CLIJProgramBinaryCache.createKey("source", "-DDTYPE=uchar", "GPU 1.0"));
+        assertNotEquals(key, CLIJProgramBinaryCache.createKey("source ", "-DDTYPE=float", "GPU 1.0"));
+        assertNotEquals(key, CLIJProgramBinaryCache.createKey("source", "-DDTYPE=float", "GPU 1.1"));
+    }
+}
@@ -0,0 +1,89 @@
+package net.haesleinhuepf.clij.macro;
+
+import ij.ImageStack;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class CLIJTiledExecutorTest {
+
+    @Test
+    public void bricksAreCroppedToTheImage() {
+        int[] size = new int[]{10, 7, 1};
+        ArrayList<CLIJTiledExecutor.Brick> bricks = CLIJTiledExecutor.createBricks(size, new int[]{4, 4, 0}, new int[]{2, 2, 0});
+        assertEquals(6, bricks.size());
+
+        // top left: the halo is cropped at the left and top border only
+        CLIJTiledExecutor.Brick first = bricks.get(0);
+        assertEquals(0, first.x);
+        assertEquals(0, first.y);
+        assertEquals(6, first.width);
+        assertEquals(6, first.height);
+        assertEquals(4, first.innerWidth);
+        assertEquals(4, first.innerHeight);
+
+        // bottom right: the inner region ends at the image border, and so does the halo
+        CLIJTiledExecutor.Brick last = bricks.get(5);
+        assertEquals(8, last.innerX);
+        assertEquals(4, last.innerY);
+        assertEquals(2, last.innerWidth);
+        assertEquals(3, last.innerHeight);
+        assertEquals(6, last.x);
+        assertEquals(2, last.y);
+        assertEquals(4, last.width);
+        assertEquals(5, last.height);
+        assertEquals(1, last.depth);
+    }
+
+    @Test
+    public void innerRegionsCoverTheImageOnce() {
+        int[] size = new int[]{9, 5, 4};
+        int[][] covered = new int[size[2]][size[0] * size[1]];
+        for (CLIJTiledExecutor.Brick brick : CLIJTiledExecutor.createBricks(size, new int[]{4, 0, 3}, new int[]{1, 1, 1})) {
+            assertTrue(brick.x >= 0 && brick.x + brick.width <= size[0]);
+            assertTrue(brick.y >= 0 && brick.y + brick.height <= size[1]);
+            assertTrue(brick.z >= 0 && brick.z + brick.depth <= size[2]);
+            for (int z = brick.innerZ; z < brick.innerZ + brick.innerDepth; z++) {
+                for (int y = brick.innerY; y < brick.innerY + brick.innerHeight; y++) {
+                    for (int x = brick.innerX; x < brick.innerX + brick.innerWidth; x++) {
+                        covered[z][y * size[0] + x]++;
+                    }
+                }
+            }
+        }
+        for (int[] slice : covered) {
+            for (int count : slice) {
+                assertEquals(1, count);
+            }
+        }
+    }
+
+    @Test
+    public void stitchingInnerRegionsRestoresTheImage() throws Exception {
+        int[] size = new int[]{7, 6, 3};
+        ImageStack source = new ImageStack(size[0], size[1]);
+        ImageStack result = new ImageStack(size[0], size[1]);
+        for (int z = 0; z < size[2]; z++) {
+            short[] pixels = new short[size[0] * size[1]];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = (short) (z * 1000 + i);
+            }
+            source.addSlice("", pixels);
+            result.addSlice("", new short[pixels.length]);
+        }
+
+        ByteBuffer staging = ByteBuffer.allocateDirect(size[0] * size[1] * size[2] * 2).order(ByteOrder.nativeOrder());
+        for (CLIJTiledExecutor.Brick brick : CLIJTiledExecutor.createBricks(size, new int[]{3, 4, 2}, new int[]{2, 1, 1})) {
+            // an operation which doesn't change anything; the halo must not end up in the result
+            CLIJTiledExecutor.read(source, size, brick, staging, 2).call();
+            CLIJTiledExecutor.stitch(result, size, brick, staging, 2).call();
+        }
+        for (int z = 0; z < size[2]; z++) {
+            assertArrayEquals((short[]) source.getPixels(z + 1), (short[]) result.getPixels(z + 1));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.haesleinhuepf.clij.macro;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CLIJWarmUpTest {
+
+    @Test
+    public void methodNamesAreFoundInTheOrderOfTheirFirstCall() {
+        String macro = "run(\"CLIJ Macro Extensions\", \"cl_device=\");\n" +
+                "Ext.CLIJ_push(input);\n" +
+                "Ext.CLIJ_blur2D(input, blurred, 2, 2);\n" +
+                "// Ext.CLIJ_mean2DBox is mentioned without being called\n" +
+                "Ext.CLIJ_push(other);\n" +
+                "Ext.CLIJ_addImages (blurred, other, sum);\n" +
+                "Ext.CLIJ_pull(sum);\n";
+
+        ArrayList<String> names = new ArrayList<String>(CLIJWarmUp.findMethodNames(macro));
+        assertEquals(Arrays.asList("CLIJ_push", "CLIJ_blur2D", "CLIJ_addImages", "CLIJ_pull"), names);
+    }
+
+    @Test
+    public void onlyImageProcessingWithoutStringsIsWarmedUp() {
+        assertTrue(CLIJWarmUp.isWarmable(CLIJMacroPluginSignature.parse("Image source, Image destination, Number sigmaX, Number sigmaY")));
+        assertTrue(CLIJWarmUp.isWarmable(CLIJMacroPluginSignature.parse("Image summand1, Image summand2, Image destination")));
+        // pushing and pulling images don't compile anything
+        assertFalse(CLIJWarmUp.isWarmable(CLIJMacroPluginSignature.parse("String image")));
+        assertFalse(CLIJWarmUp.isWarmable(CLIJMacroPluginSignature.parse("Image source, Image destination, String method")));
+        assertFalse(CLIJWarmUp.isWarmable(CLIJMacroPluginSignature.parse("Image destination, Number value")));
+        assertFalse(CLIJWarmUp.isWarmable(null));
+    }
+}
@@ -0,0 +1,33 @@
+package net.haesleinhuepf.clij.macro.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CLIJMetricsTest {
+    @Test
+    public void recordsOnlyWhenEnabled() {
+        CLIJMetrics metrics = new CLIJMetrics();
+        metrics.record("CLIJ_blur3D", 1000);
+        assertNull(metrics.getOperationMetrics("CLIJ_blur3D"));
+
+        metrics.setEnabled(true);
+        metrics.record("CLIJ_blur3D", 1000);
+        metrics.record("CLIJ_blur3D", 3000);
+        metrics.record("CLIJ_blur3D", 100000);
+
+        OperationMetrics blur = metrics.getOperationMetrics("CLIJ_blur3D");
+        assertEquals(3, blur.getCount());
+        assertEquals(104000, blur.getTotalNanos());
+        assertEquals(1000, blur.getMinimumNanos());
+        assertEquals(100000, blur.getMaximumNanos());
+
+        // percentiles are upper bounds with power-of-two resolution
+        assertTrue(blur.getPercentileNanos(50) >= 3000);
+        assertTrue(blur.getPercentileNanos(50) < 6000);
+        assertEquals(100000, blur.getPercentileNanos(100));
+
+        metrics.reset();
+        assertEquals(0, metrics.getOperationNames().size());
+    }
+}